@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2015 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package com.couchbase.client.jcache;
+
+import java.util.Map;
+import java.util.Set;
+
+import javax.cache.Cache;
+import javax.cache.processor.EntryProcessor;
+
+import rx.Observable;
+
+/**
+ * The non-blocking API of a {@link CouchbaseCache}, obtained through {@link CouchbaseCache#async()} or
+ * {@link CouchbaseCache#unwrap(Class) unwrap(AsyncCouchbaseCache.class)}.
+ *
+ * Each operation behaves like its blocking counterpart in the {@link javax.cache.Cache} API (expiry, events and
+ * statistics) but returns a cold {@link Observable}: nothing happens until it is subscribed to. Events are
+ * dispatched to the listeners on the {@link rx.schedulers.Schedulers#io() io scheduler}, before the Observable
+ * completes. Errors are signalled as
+ * {@link javax.cache.CacheException CacheExceptions}, except for invalid arguments which are thrown directly.
+ *
+ * Operations that may call the {@link javax.cache.integration.CacheLoader} or an
+ * {@link EntryProcessor}, which are blocking by nature, do so on the {@link rx.schedulers.Schedulers#io() io
+ * scheduler} so that the SDK's threads are never blocked.
+ *
+ * @since 1.0
+ */
+public class AsyncCouchbaseCache<K, V> {
+
+    private final CouchbaseCache<K, V> cache;
+
+    AsyncCouchbaseCache(CouchbaseCache<K, V> cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * @return the blocking {@link CouchbaseCache} this is a view of.
+     */
+    public CouchbaseCache<K, V> sync() {
+        return cache;
+    }
+
+    /**
+     * Gets a value from the cache, applying read-through if it is configured.
+     *
+     * @param key the key to get.
+     * @return an Observable of the value, empty if there is none.
+     * @see javax.cache.Cache#get(Object)
+     */
+    public Observable<V> getAsync(K key) {
+        return cache.getAsync(key);
+    }
+
+    /**
+     * Gets several values from the cache, applying read-through for the missing keys if it is configured.
+     *
+     * @param keys the keys to get.
+     * @return an Observable of a single map of the values that were found, by key.
+     * @see javax.cache.Cache#getAll(Set)
+     */
+    public Observable<Map<K, V>> getAllAsync(Set<? extends K> keys) {
+        return cache.getAllAsync(keys);
+    }
+
+    /**
+     * Gets the values of a stream of keys. This supports backpressure: keys are requested from the source only as
+     * entries are requested downstream, with a bounded number of keys processed at a time (see
+     * {@link CouchbaseConfiguration#getBulkConcurrency()}), so that arbitrarily large key sets can be streamed.
+     *
+     * @param keys the keys to get.
+     * @return an Observable of the entries that were found, in no particular order.
+     * @see javax.cache.Cache#getAll(Set)
+     */
+    public Observable<Cache.Entry<K, V>> getAllAsync(Observable<? extends K> keys) {
+        return cache.getAllAsync(keys);
+    }
+
+    /**
+     * Associates a value with a key in the cache.
+     *
+     * @param key the key.
+     * @param value the value.
+     * @return an Observable that completes once the value is stored.
+     * @see javax.cache.Cache#put(Object, Object)
+     */
+    public Observable<Void> putAsync(K key, V value) {
+        return cache.putAsync(key, value);
+    }
+
+    /**
+     * Stores a stream of entries. This supports backpressure: entries are requested from the source only as the
+     * stored keys are requested downstream, with a bounded number of writes in flight (see
+     * {@link CouchbaseConfiguration#getBulkConcurrency()}). Events are dispatched as each entry is stored.
+     *
+     * @param entries the entries to store.
+     * @return an Observable of the keys that were stored, in no particular order.
+     * @see javax.cache.Cache#putAll(Map)
+     */
+    public Observable<K> putAllAsync(Observable<? extends Map.Entry<? extends K, ? extends V>> entries) {
+        return cache.putAllAsync(entries);
+    }
+
+    /**
+     * Removes a key from the cache.
+     *
+     * @param key the key to remove.
+     * @return an Observable of a single boolean, true if the key was removed, false if it wasn't in the cache.
+     * @see javax.cache.Cache#remove(Object)
+     */
+    public Observable<Boolean> removeAsync(K key) {
+        return cache.removeAsync(key);
+    }
+
+    /**
+     * Removes a stream of keys. This supports backpressure: keys are requested from the source only as the removed
+     * keys are requested downstream, with a bounded number of removals in flight (see
+     * {@link CouchbaseConfiguration#getBulkConcurrency()}). Events are dispatched as each key is removed.
+     *
+     * @param keys the keys to remove.
+     * @return an Observable of the keys that were removed (ie. that were in the cache), in no particular order.
+     * @see javax.cache.Cache#removeAll(Set)
+     */
+    public Observable<K> removeAllAsync(Observable<? extends K> keys) {
+        return cache.removeAllAsync(keys);
+    }
+
+    /**
+     * Replaces the value of a key, only if the key is already in the cache.
+     *
+     * @param key the key.
+     * @param value the new value.
+     * @return an Observable of a single boolean, true if the value was replaced, false if the key wasn't in the cache.
+     * @see javax.cache.Cache#replace(Object, Object)
+     */
+    public Observable<Boolean> replaceAsync(K key, V value) {
+        return cache.replaceAsync(key, value);
+    }
+
+    /**
+     * Applies an {@link EntryProcessor} to the entry of a key.
+     *
+     * @param key the key of the entry to process.
+     * @param entryProcessor the processor to apply.
+     * @param arguments additional arguments to pass to the processor.
+     * @return an Observable of the result of the processing, empty if the processor returned null.
+     * @see javax.cache.Cache#invoke(Object, EntryProcessor, Object...)
+     */
+    public <T> Observable<T> invokeAsync(K key, EntryProcessor<K, V, T> entryProcessor, Object... arguments) {
+        return cache.invokeAsync(key, entryProcessor, arguments);
+    }
+}
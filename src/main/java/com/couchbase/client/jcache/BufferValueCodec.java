@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2015 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package com.couchbase.client.jcache;
+
+import com.couchbase.client.deps.io.netty.buffer.ByteBuf;
+
+/**
+ * A {@link ValueCodec} able to encode directly into, and decode directly from, the buffers exchanged with
+ * Couchbase. Values are then encoded in pooled buffers and decoded from the received buffers without intermediate
+ * byte arrays. All the built-in {@link ValueCodecs} implement it.
+ *
+ * Buffers are owned by the cache: a codec must neither release them nor keep references to them (or to slices of
+ * them) once the call returns.
+ *
+ * @since 1.0
+ */
+public interface BufferValueCodec<V> extends ValueCodec<V> {
+
+    /**
+     * Encodes a value by writing it to a buffer.
+     *
+     * @param value the value to encode, never null.
+     * @param out the buffer to write the encoded value to.
+     */
+    void encode(V value, ByteBuf out);
+
+    /**
+     * Decodes a value.
+     *
+     * @param in the buffer whose readable bytes are the encoded value.
+     * @return the decoded value.
+     */
+    V decode(ByteBuf in);
+}
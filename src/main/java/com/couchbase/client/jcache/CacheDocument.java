@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2015 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package com.couchbase.client.jcache;
+
+import com.couchbase.client.java.document.AbstractDocument;
+
+/**
+ * The document in which a {@link CouchbaseCache} stores an entry. Its content is the cached value (or a
+ * {@link TimedValue} envelope around it), encoded by the {@link CacheTranscoder} of the cache that
+ * created it.
+ *
+ * @since 1.0
+ */
+public class CacheDocument extends AbstractDocument<Object> {
+
+    private final String originalId;
+    private final CacheTranscoder transcoder;
+
+    /**
+     * Creates a {@link CacheDocument} with the id and content.
+     *
+     * @param id the per-bucket unique document id.
+     * @param content the content of the document.
+     * @return a {@link CacheDocument}.
+     */
+    public static CacheDocument create(String id, Object content) {
+        return new CacheDocument(id, 0, content, 0L);
+    }
+
+    /**
+     * Creates a {@link CacheDocument} with the id, content and CAS value.
+     *
+     * @param id the per-bucket unique document id.
+     * @param content the content of the document.
+     * @param cas the CAS (compare and swap) value for optimistic concurrency.
+     * @return a {@link CacheDocument}.
+     */
+    public static CacheDocument create(String id, Object content, long cas) {
+        return new CacheDocument(id, 0, content, cas);
+    }
+
+    /**
+     * Creates a {@link CacheDocument} with the id, expiry, content and CAS value.
+     *
+     * @param id the per-bucket unique document id.
+     * @param expiry the expiration time of the document.
+     * @param content the content of the document.
+     * @param cas the CAS (compare and swap) value for optimistic concurrency.
+     * @return a {@link CacheDocument}.
+     */
+    public static CacheDocument create(String id, int expiry, Object content, long cas) {
+        return new CacheDocument(id, expiry, content, cas);
+    }
+
+    /**
+     * Creates a {@link CacheDocument} stored under a compacted key.
+     *
+     * @param id the per-bucket unique document id.
+     * @param expiry the expiration time of the document.
+     * @param content the content of the document.
+     * @param cas the CAS (compare and swap) value for optimistic concurrency.
+     * @param originalId the internal key the id was compacted from, or null if it wasn't.
+     * @return a {@link CacheDocument}.
+     * @see KeyCompactor
+     */
+    static CacheDocument create(String id, int expiry, Object content, long cas, String originalId) {
+        return new CacheDocument(id, expiry, content, cas, originalId, null);
+    }
+
+    /**
+     * Creates a {@link CacheDocument} to be written with the value codec and compression settings of a cache.
+     *
+     * @param id the per-bucket unique document id.
+     * @param expiry the expiration time of the document.
+     * @param content the content of the document.
+     * @param cas the CAS (compare and swap) value for optimistic concurrency.
+     * @param originalId the internal key the id was compacted from, or null if it wasn't.
+     * @param transcoder the transcoder of the cache, to encode the content with.
+     * @return a {@link CacheDocument}.
+     */
+    static CacheDocument create(String id, int expiry, Object content, long cas, String originalId,
+            CacheTranscoder transcoder) {
+        return new CacheDocument(id, expiry, content, cas, originalId, transcoder);
+    }
+
+    private CacheDocument(String id, int expiry, Object content, long cas) {
+        this(id, expiry, content, cas, null, null);
+    }
+
+    private CacheDocument(String id, int expiry, Object content, long cas, String originalId,
+            CacheTranscoder transcoder) {
+        super(id, expiry, content, cas);
+        this.originalId = originalId;
+        this.transcoder = transcoder;
+    }
+
+    /**
+     * @return the internal key the id was compacted from, or null if the id is not compacted.
+     */
+    String originalId() {
+        return originalId;
+    }
+
+    /**
+     * @return the internal key of the entry held by this document, which is its id unless it is compacted.
+     */
+    String internalKey() {
+        return originalId == null ? id() : originalId;
+    }
+
+    /**
+     * @return the transcoder of the cache that created this document, or null to encode it with Java serialization.
+     */
+    CacheTranscoder transcoder() {
+        return transcoder;
+    }
+}
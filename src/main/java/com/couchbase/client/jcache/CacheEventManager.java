@@ -14,6 +14,7 @@
 package com.couchbase.client.jcache;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -75,16 +76,26 @@ public class CacheEventManager<K, V> {
                 throw new IllegalArgumentException("Unknown event type " + event.getEventType());
         }
 
-        List<CacheEntryEvent<K, V>> queue;
         synchronized (this) {
-            queue = eventQueues.get(listenerClass);
+            List<CacheEntryEvent<K, V>> queue = eventQueues.get(listenerClass);
             if (queue == null) {
                 queue = new ArrayList<CacheEntryEvent<K, V>>();
                 eventQueues.put(listenerClass, queue);
             }
+            queue.add(event);
         }
+    }
 
-        queue.add(event);
+    /**
+     * Takes all the events queued so far, so that each event is dispatched only once.
+     *
+     * @return the queued events, by type of listener.
+     */
+    private synchronized Map<Class<? extends CacheEntryListener>, List<CacheEntryEvent<K, V>>> drainEvents() {
+        Map<Class<? extends CacheEntryListener>, List<CacheEntryEvent<K, V>>> events =
+                new HashMap<Class<? extends CacheEntryListener>, List<CacheEntryEvent<K, V>>>(eventQueues);
+        eventQueues.clear();
+        return events;
     }
 
     private Iterable<CacheEntryEvent<K, V>> filterEvents(ListenerEntry<K, V> listenerEntry,
@@ -104,8 +115,7 @@ public class CacheEventManager<K, V> {
         return filteredEvents;
     }
 
-    protected void dispatchForCreate() {
-        List<CacheEntryEvent<K, V>> events = eventQueues.get(CacheEntryCreatedListener.class);
+    protected void dispatchForCreate(List<CacheEntryEvent<K, V>> events) {
         if (events == null) {
             return;
         }
@@ -117,8 +127,7 @@ public class CacheEventManager<K, V> {
         }
     }
 
-    protected void dispatchForUpdate() {
-        List<CacheEntryEvent<K, V>> events = eventQueues.get(CacheEntryUpdatedListener.class);
+    protected void dispatchForUpdate(List<CacheEntryEvent<K, V>> events) {
         if (events == null) {
             return;
         }
@@ -130,8 +139,7 @@ public class CacheEventManager<K, V> {
         }
     }
 
-    protected void dispatchForRemove() {
-        List<CacheEntryEvent<K, V>> events = eventQueues.get(CacheEntryRemovedListener.class);
+    protected void dispatchForRemove(List<CacheEntryEvent<K, V>> events) {
         if (events == null) {
             return;
         }
@@ -143,8 +151,7 @@ public class CacheEventManager<K, V> {
         }
     }
 
-    protected void dispatchForExpiry() {
-        List<CacheEntryEvent<K, V>> events = eventQueues.get(CacheEntryExpiredListener.class);
+    protected void dispatchForExpiry(List<CacheEntryEvent<K, V>> events) {
         if (events == null) {
             return;
         }
@@ -157,14 +164,18 @@ public class CacheEventManager<K, V> {
     }
 
     /**
-     * Dispatches the queued events to the registered listeners.
+     * Dispatches the queued events to the registered listeners. Dispatched events are removed from the queues.
      */
     public void dispatch() {
+        Map<Class<? extends CacheEntryListener>, List<CacheEntryEvent<K, V>>> events = drainEvents();
+        if (events.isEmpty()) {
+            return;
+        }
         try {
-            dispatchForExpiry();
-            dispatchForCreate();
-            dispatchForUpdate();
-            dispatchForRemove();
+            dispatchForExpiry(events.get(CacheEntryExpiredListener.class));
+            dispatchForCreate(events.get(CacheEntryCreatedListener.class));
+            dispatchForUpdate(events.get(CacheEntryUpdatedListener.class));
+            dispatchForRemove(events.get(CacheEntryRemovedListener.class));
         } catch (Exception e) {
             if (e instanceof CacheEntryListenerException) {
                 throw (CacheEntryListenerException) e;
@@ -203,6 +214,51 @@ public class CacheEventManager<K, V> {
         dispatch();
     }
 
+    /**
+     * Checks if at least one registered listener is interested in events of the given type.
+     *
+     * @param type the type of event.
+     * @return true if events of this type would be dispatched to a listener, false otherwise.
+     */
+    public boolean hasListenerFor(EventType type) {
+        for (ListenerEntry<K, V> entry : entries) {
+            if (isListenerFor(entry, type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if at least one registered listener interested in events of the given type requires the old value.
+     *
+     * @param type the type of event.
+     * @return true if events of this type must carry the old value, false otherwise.
+     */
+    public boolean isOldValueRequired(EventType type) {
+        for (ListenerEntry<K, V> entry : entries) {
+            if (entry.isOldValueRequired() && isListenerFor(entry, type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isListenerFor(ListenerEntry<?, ?> entry, EventType type) {
+        switch (type) {
+            case CREATED:
+                return entry.getListener() instanceof CacheEntryCreatedListener;
+            case UPDATED:
+                return entry.getListener() instanceof CacheEntryUpdatedListener;
+            case REMOVED:
+                return entry.getListener() instanceof CacheEntryRemovedListener;
+            case EXPIRED:
+                return entry.getListener() instanceof CacheEntryExpiredListener;
+            default:
+                return false;
+        }
+    }
+
     /**
      * Register a new listener using the given configuration.
      *
@@ -0,0 +1,452 @@
+/*
+ * Copyright (c) 2015 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package com.couchbase.client.jcache;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.couchbase.client.core.lang.Tuple;
+import com.couchbase.client.core.lang.Tuple2;
+import com.couchbase.client.core.message.ResponseStatus;
+import com.couchbase.client.deps.io.netty.buffer.ByteBuf;
+import com.couchbase.client.deps.io.netty.buffer.ByteBufAllocator;
+import com.couchbase.client.deps.io.netty.buffer.PooledByteBufAllocator;
+import com.couchbase.client.java.document.Document;
+import com.couchbase.client.java.error.TranscodingException;
+import com.couchbase.client.java.transcoder.AbstractTranscoder;
+import com.couchbase.client.java.transcoder.Transcoder;
+
+/**
+ * The transcoder of {@link CacheDocument CacheDocuments}, encoding values with the {@link ValueCodec} of a cache.
+ *
+ * The way a document was encoded is recorded in its flags:
+ * <ul>
+ *     <li>documents without the {@link #CODEC_FLAG} are Java serialized, as the SDK's SerializableDocument. This is
+ *     also how values are encoded when no codec is configured, so such caches are unchanged on the wire.</li>
+ *     <li>otherwise the identifier of the codec is in bits 8 to 15 and the {@link #TIMED_FLAG} indicates that the
+ *     encoded value is preceded by the header of a {@link TimedValue}.</li>
+ *     <li>the {@link #KEYED_FLAG} indicates that the document id is a {@link KeyCompactor compacted key}, and
+ *     that the content starts with the original key: its length in UTF-8 bytes as an unsigned short, then its UTF-8
+ *     bytes. The key is never compressed, so that it can be read without decoding the value. Such documents are
+ *     always flagged as codec-encoded.</li>
+ *     <li>the {@link #COMPRESSED_FLAG} indicates that the content (after the original key, if any) is deflated and
+ *     preceded by its uncompressed length. Compressed documents are always flagged as codec-encoded, with the Java
+ *     serialization codec if no codec is configured.</li>
+ * </ul>
+ * Values are encoded in pooled heap buffers, whose ownership passes to the SDK which releases them once written,
+ * and decoded directly from the received buffers by {@link BufferValueCodec BufferValueCodecs}. The temporary
+ * buffers used for compression are released before returning.
+ *
+ * Documents written with any built-in codec (or with the cache's codec) can be decoded whatever the codec
+ * currently configured, so that a cache can be migrated from one codec to another incrementally.
+ *
+ * Transcoders are registered per bucket and per document class, while caches sharing a bucket each have their own
+ * codec and compression settings. The bucket is therefore opened with the {@link #BUCKET_TRANSCODERS}, which hold
+ * no settings: documents are encoded by the transcoder of the cache that {@link CacheDocument#transcoder() created}
+ * them, and values that need the codec of a cache are left {@link LazyValue encoded} for the cache to decode (see
+ * {@link #decoded(CacheDocument)}).
+ *
+ * @since 1.0
+ */
+class CacheTranscoder extends AbstractTranscoder<CacheDocument, Object> {
+
+    /** The flags of Java serialized documents, as written by the SDK (private common format + legacy flag) */
+    static final int SERIALIZED_FLAGS = (1 << 24) | 1;
+    /** The common format of documents encoded by a codec (private) */
+    static final int PRIVATE_FORMAT = 1 << 24;
+    /** Marks a document encoded by a {@link ValueCodec} */
+    static final int CODEC_FLAG = 1 << 16;
+    /** Marks a value preceded by a {@link TimedValue} header */
+    static final int TIMED_FLAG = 1 << 1;
+    /** Marks a deflated content */
+    static final int COMPRESSED_FLAG = 1 << 2;
+    /** Marks a content preceded by the original key of a compacted document id */
+    static final int KEYED_FLAG = 1 << 3;
+
+    /** The transcoder registered with buckets, without codec nor compression */
+    static final CacheTranscoder SHARED = new CacheTranscoder(null);
+    /** The transcoders to open the bucket of any cache with, identical whatever the settings of the cache */
+    static final List<Transcoder<? extends Document, ?>> BUCKET_TRANSCODERS = Collections.unmodifiableList(
+            Arrays.<Transcoder<? extends Document, ?>>asList(SHARED, new LazyCacheTranscoder(SHARED)));
+
+    /** created millis (long), ttl seconds (int), load cost nanos (long) */
+    private static final int TIMED_HEADER_SIZE = 8 + 4 + 8;
+
+    /** Encoded values are written to pooled buffers, released by the SDK once sent */
+    private static final ByteBufAllocator ALLOCATOR = PooledByteBufAllocator.DEFAULT;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ValueCodec<Object> codec;
+    private final int compressionThreshold;
+    private final int compressionLevel;
+
+    /**
+     * @param codec the codec to encode values with, or null to use Java serialization as the SDK does.
+     */
+    public CacheTranscoder(ValueCodec<?> codec) {
+        this(codec, 0, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param codec the codec to encode values with, or null to use Java serialization as the SDK does.
+     * @param compressionThreshold the minimum size in bytes of an encoded value for it to be compressed, or 0 to
+     *  never compress values.
+     * @param compressionLevel the {@link Deflater} level to compress values with.
+     */
+    @SuppressWarnings("unchecked")
+    public CacheTranscoder(ValueCodec<?> codec, int compressionThreshold, int compressionLevel) {
+        this.codec = (ValueCodec<Object>) codec;
+        this.compressionThreshold = compressionThreshold;
+        this.compressionLevel = compressionLevel;
+    }
+
+    @Override
+    protected CacheDocument doDecode(String id, ByteBuf content, long cas, int expiry, int flags,
+            ResponseStatus status) throws Exception {
+        Object value = canDecode(flags)
+                ? decodeContent(id, content, flags)
+                : LazyValue.encoded(this, id, bytesOf(content), flags);
+        return CacheDocument.create(id, expiry, value, cas, originalId(id, content, flags));
+    }
+
+    /**
+     * Decodes the value of a document that was received by a transcoder which couldn't decode it, like the
+     * {@link #SHARED} one for values encoded by a custom codec.
+     *
+     * @param document the received document, or null.
+     * @return the document with its value decoded by this transcoder, or the document itself if it was already
+     *  decoded.
+     */
+    CacheDocument decoded(CacheDocument document) {
+        if (document == null || !(document.content() instanceof LazyValue)) {
+            return document;
+        }
+        Object value = ((LazyValue) document.content()).boundTo(this).get();
+        return CacheDocument.create(document.id(), document.expiry(), value, document.cas(), document.originalId());
+    }
+
+    /**
+     * @param flags the flags of a document.
+     * @return true if this transcoder knows the codec the document was encoded with.
+     */
+    private boolean canDecode(int flags) {
+        return (flags & CODEC_FLAG) == 0 || findCodec((flags >>> 8) & 0xFF) != null;
+    }
+
+    /**
+     * Copies the content of a received buffer, which doesn't outlive the decoding.
+     *
+     * @param content the received content, which is left untouched.
+     * @return the bytes of the content.
+     */
+    static byte[] bytesOf(ByteBuf content) {
+        byte[] bytes = new byte[content.readableBytes()];
+        content.getBytes(content.readerIndex(), bytes);
+        return bytes;
+    }
+
+    /**
+     * Reads the original key of a document stored under a {@link KeyCompactor compacted key}, without decoding (nor
+     * decompressing) its value.
+     *
+     * @param id the id of the document.
+     * @param content the encoded content, which is left untouched.
+     * @param flags the flags of the document.
+     * @return the original key, or null if the id of the document is not compacted.
+     */
+    String originalId(String id, ByteBuf content, int flags) {
+        if ((flags & KEYED_FLAG) == 0) {
+            return null;
+        }
+        int index = content.readerIndex();
+        return content.toString(index + 2, content.getUnsignedShort(index), UTF_8);
+    }
+
+    /**
+     * Decodes the content of a document according to its flags.
+     *
+     * @param id the id of the document, for error messages.
+     * @param content the encoded content, which is left untouched.
+     * @param flags the flags of the document.
+     * @return the decoded value, or {@link TimedValue}.
+     */
+    Object decodeContent(String id, ByteBuf content, int flags) {
+        ByteBuf inflated = null;
+        try {
+            ByteBuf source = content;
+            int index = source.readerIndex();
+            int end = index + source.readableBytes();
+            if ((flags & KEYED_FLAG) != 0) {
+                index += 2 + source.getUnsignedShort(index);
+            }
+            if ((flags & COMPRESSED_FLAG) != 0) {
+                inflated = inflate(source.slice(index, end - index), id);
+                source = inflated;
+                index = source.readerIndex();
+                end = index + source.readableBytes();
+            }
+            if ((flags & CODEC_FLAG) == 0) {
+                return ValueCodecs.deserialize(source.slice(index, end - index));
+            }
+            ValueCodec<?> valueCodec = codecFor((flags >>> 8) & 0xFF, id);
+            if ((flags & TIMED_FLAG) == 0) {
+                return decode(valueCodec, source.slice(index, end - index));
+            }
+            long createdMillis = source.getLong(index);
+            int ttlSeconds = source.getInt(index + 8);
+            long loadCostNanos = source.getLong(index + 12);
+            ByteBuf encoded = source.slice(index + TIMED_HEADER_SIZE, end - index - TIMED_HEADER_SIZE);
+            return new TimedValue(decode(valueCodec, encoded), createdMillis, ttlSeconds, loadCostNanos);
+        } finally {
+            if (inflated != null) {
+                inflated.release();
+            }
+        }
+    }
+
+    /**
+     * Copies a value by encoding and decoding it, the way it would be stored and read back. Values of well-known
+     * immutable types are not copied.
+     *
+     * @param id the id of the document holding the value, for error messages.
+     * @param value the value to copy.
+     * @return a copy of the value, or the value itself if it is immutable.
+     * @throws Exception if the value can't be encoded or decoded.
+     */
+    Object copy(String id, Object value) throws Exception {
+        if (isImmutable(value)) {
+            return value;
+        }
+        Tuple2<ByteBuf, Integer> encoded = doEncode(CacheDocument.create(id, 0, value, 0L, null, this));
+        try {
+            return decodeContent(id, encoded.value1(), encoded.value2());
+        } finally {
+            encoded.value1().release();
+        }
+    }
+
+    private static boolean isImmutable(Object value) {
+        return value == null || value instanceof String || value instanceof Number && isImmutableNumber(value)
+                || value instanceof Boolean || value instanceof Character || value instanceof Enum;
+    }
+
+    private static boolean isImmutableNumber(Object value) {
+        return value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte
+                || value instanceof Double || value instanceof Float
+                || value.getClass() == BigInteger.class || value.getClass() == BigDecimal.class;
+    }
+
+    @Override
+    protected Tuple2<ByteBuf, Integer> doEncode(CacheDocument document) throws Exception {
+        CacheTranscoder owner = document.transcoder();
+        if (owner != null && owner != this) {
+            return owner.doEncode(document);
+        }
+        Object content = document.content();
+        String originalId = document.originalId();
+        ByteBuf encoded = ALLOCATOR.heapBuffer();
+        boolean release = true;
+        try {
+            int flags = 0;
+            int keyLength = 0;
+            if (originalId != null) {
+                byte[] key = originalId.getBytes(UTF_8);
+                encoded.writeShort(key.length).writeBytes(key);
+                keyLength = encoded.readableBytes();
+                flags = KEYED_FLAG;
+            }
+            if (codec == null) {
+                ValueCodecs.serialize(content, encoded);
+                if (originalId == null && !shouldCompress(encoded.readableBytes())) {
+                    release = false;
+                    return Tuple.create(encoded, SERIALIZED_FLAGS);
+                }
+                flags |= PRIVATE_FORMAT | CODEC_FLAG | (ValueCodecs.JAVA_SERIALIZATION_ID << 8);
+            } else if (content instanceof TimedValue) {
+                TimedValue timedValue = (TimedValue) content;
+                encoded.writeLong(timedValue.createdMillis())
+                        .writeInt(timedValue.ttlSeconds())
+                        .writeLong(timedValue.loadCostNanos());
+                encode(codec, timedValue.value(), encoded);
+                flags |= PRIVATE_FORMAT | CODEC_FLAG | (codec.id() << 8) | TIMED_FLAG;
+            } else {
+                encode(codec, content, encoded);
+                flags |= PRIVATE_FORMAT | CODEC_FLAG | (codec.id() << 8);
+            }
+
+            if (shouldCompress(encoded.readableBytes() - keyLength)) {
+                ByteBuf compressed = deflate(encoded, keyLength);
+                if (compressed != null) {
+                    return Tuple.create(compressed, flags | COMPRESSED_FLAG);
+                }
+            }
+            release = false;
+            return Tuple.create(encoded, flags);
+        } finally {
+            if (release) {
+                encoded.release();
+            }
+        }
+    }
+
+    private static void encode(ValueCodec<Object> codec, Object value, ByteBuf out) {
+        if (codec instanceof BufferValueCodec) {
+            ((BufferValueCodec<Object>) codec).encode(value, out);
+        } else {
+            out.writeBytes(codec.encode(value));
+        }
+    }
+
+    private static Object decode(ValueCodec<?> codec, ByteBuf in) {
+        if (codec instanceof BufferValueCodec) {
+            return ((BufferValueCodec<?>) codec).decode(in);
+        } else if (in.hasArray()) {
+            return codec.decode(in.array(), in.arrayOffset() + in.readerIndex(), in.readableBytes());
+        } else {
+            byte[] bytes = new byte[in.readableBytes()];
+            in.getBytes(in.readerIndex(), bytes);
+            return codec.decode(bytes, 0, bytes.length);
+        }
+    }
+
+    private boolean shouldCompress(int encodedLength) {
+        return compressionThreshold > 0 && encodedLength >= compressionThreshold;
+    }
+
+    /**
+     * Deflates an encoded value, prefixing it with its uncompressed length. The header preceding the value is
+     * copied as is.
+     *
+     * @param encoded the encoded value, in a heap buffer.
+     * @param headerLength the number of bytes preceding the value, that are not compressed.
+     * @return the compressed content, or null if compressing doesn't make the value smaller.
+     */
+    private ByteBuf deflate(ByteBuf encoded, int headerLength) {
+        int length = encoded.readableBytes() - headerLength;
+        if (length <= 4) {
+            return null;
+        }
+        int capacity = headerLength + length;
+        ByteBuf out = ALLOCATOR.heapBuffer(capacity, capacity);
+        boolean release = true;
+        Deflater deflater = new Deflater(compressionLevel);
+        try {
+            deflater.setInput(encoded.array(), encoded.arrayOffset() + encoded.readerIndex() + headerLength, length);
+            deflater.finish();
+            out.writeBytes(encoded, encoded.readerIndex(), headerLength);
+            out.writeInt(length);
+            byte[] array = out.array();
+            int offset = out.arrayOffset();
+            int size = headerLength + 4;
+            while (!deflater.finished() && size < capacity) {
+                size += deflater.deflate(array, offset + size, capacity - size);
+            }
+            if (!deflater.finished()) {
+                return null;
+            }
+            out.writerIndex(size);
+            release = false;
+            return out;
+        } finally {
+            deflater.end();
+            if (release) {
+                out.release();
+            }
+        }
+    }
+
+    /**
+     * Inflates a compressed content.
+     *
+     * @param content the compressed content, prefixed with its uncompressed length.
+     * @param id the id of the document, for error messages.
+     * @return a heap buffer holding the uncompressed content, that the caller must release.
+     */
+    private static ByteBuf inflate(ByteBuf content, String id) {
+        int length = content.getInt(content.readerIndex());
+        int compressedLength = content.readableBytes() - 4;
+        ByteBuf input = null;
+        ByteBuf out = ALLOCATOR.heapBuffer(length, length);
+        boolean release = true;
+        Inflater inflater = new Inflater();
+        try {
+            if (content.hasArray()) {
+                inflater.setInput(content.array(), content.arrayOffset() + content.readerIndex() + 4,
+                        compressedLength);
+            } else {
+                input = ALLOCATOR.heapBuffer(compressedLength, compressedLength);
+                content.getBytes(content.readerIndex() + 4, input, compressedLength);
+                inflater.setInput(input.array(), input.arrayOffset(), compressedLength);
+            }
+            byte[] array = out.array();
+            int offset = out.arrayOffset();
+            int size = 0;
+            while (size < length) {
+                int inflated = inflater.inflate(array, offset + size, length - size);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                size += inflated;
+            }
+            if (size != length) {
+                throw new TranscodingException("Compressed document " + id + " is truncated");
+            }
+            out.writerIndex(length);
+            release = false;
+            return out;
+        } catch (DataFormatException e) {
+            throw new TranscodingException("Could not decompress document " + id, e);
+        } finally {
+            inflater.end();
+            if (input != null) {
+                input.release();
+            }
+            if (release) {
+                out.release();
+            }
+        }
+    }
+
+    @Override
+    public CacheDocument newDocument(String id, int expiry, Object content, long cas) {
+        return CacheDocument.create(id, expiry, content, cas);
+    }
+
+    @Override
+    public Class<CacheDocument> documentType() {
+        return CacheDocument.class;
+    }
+
+    private ValueCodec<?> codecFor(int codecId, String id) {
+        ValueCodec<?> found = findCodec(codecId);
+        if (found == null) {
+            throw new TranscodingException("Document " + id + " was encoded with unknown codec " + codecId);
+        }
+        return found;
+    }
+
+    private ValueCodec<?> findCodec(int codecId) {
+        if (codec != null && codec.id() == codecId) {
+            return codec;
+        }
+        return ValueCodecs.builtIn(codecId);
+    }
+}
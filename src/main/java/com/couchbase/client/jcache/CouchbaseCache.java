@@ -16,10 +16,16 @@ package com.couchbase.client.jcache;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -44,16 +50,14 @@ import com.couchbase.client.core.lang.Tuple2;
 import com.couchbase.client.core.lang.Tuple3;
 import com.couchbase.client.core.logging.CouchbaseLogger;
 import com.couchbase.client.core.logging.CouchbaseLoggerFactory;
+import com.couchbase.client.core.message.kv.ObserveRequest;
+import com.couchbase.client.core.message.kv.ObserveResponse;
 import com.couchbase.client.java.Bucket;
-import com.couchbase.client.java.document.SerializableDocument;
 import com.couchbase.client.java.error.CASMismatchException;
 import com.couchbase.client.java.error.DocumentAlreadyExistsException;
 import com.couchbase.client.java.error.DocumentDoesNotExistException;
-import com.couchbase.client.java.view.AsyncViewResult;
-import com.couchbase.client.java.view.AsyncViewRow;
 import com.couchbase.client.java.view.DesignDocument;
 import com.couchbase.client.java.view.View;
-import com.couchbase.client.java.view.ViewQuery;
 import com.couchbase.client.jcache.management.CouchbaseCacheMxBean;
 import com.couchbase.client.jcache.management.CouchbaseStatisticsMxBean;
 import com.couchbase.client.jcache.management.ManagementUtil;
@@ -61,11 +65,13 @@ import rx.Observable;
 import rx.functions.Action0;
 import rx.functions.Action1;
 import rx.functions.Actions;
+import rx.functions.Func0;
 import rx.functions.Func1;
 import rx.schedulers.Schedulers;
 
 /**
- * The Couchbase implementation of a @{link Cache}. Note that type V must be {@link Serializable}!
+ * The Couchbase implementation of a @{link Cache}. Note that type V must be {@link Serializable}, unless a
+ * {@link ValueCodec} is configured!
  *
  * @author Simon Baslé
  * @since 1.0
@@ -75,11 +81,33 @@ public class CouchbaseCache<K, V> implements Cache<K, V> {
     private static final CouchbaseLogger LOGGER = CouchbaseLoggerFactory.getInstance(CouchbaseCache.class);
 
     /** 30 days in seconds */
-    private static final long MAX_TTL = 30 * 24 * 60 * 60;
+    static final long MAX_TTL = 30 * 24 * 60 * 60;
     private static final int TTL_DONT_CHANGE = -2;
     private static final int TTL_EXPIRED = -1;
     private static final int TTL_NONE = 0;
 
+    /** Maximum number of times an entry processor is applied when its entry is concurrently modified */
+    private static final int INVOKE_MAX_ATTEMPTS = 10;
+    private static final long INVOKE_BACKOFF_MILLIS = 1L;
+    private static final long INVOKE_MAX_BACKOFF_MILLIS = 100L;
+
+    /** Maximum number of times a page of documents is scanned and removed when removing all documents */
+    private static final int CLEAR_MAX_ATTEMPTS = 3;
+
+    private static final Func1<String, String> IDENTITY = new Func1<String, String>() {
+        @Override
+        public String call(String id) {
+            return id;
+        }
+    };
+
+    private static final Action1<Throwable> LOG_BACKGROUND_ERROR = new Action1<Throwable>() {
+        @Override
+        public void call(Throwable throwable) {
+            LOGGER.debug("Background operation failed", throwable);
+        }
+    };
+
     private final CouchbaseCacheManager cacheManager;
     private final String name;
 
@@ -91,6 +119,39 @@ public class CouchbaseCache<K, V> implements Cache<K, V> {
     private final CouchbaseStatisticsMxBean statisticsMxBean;
     private final CacheEventManager<K, V> eventManager;
     private final KeyConverter<K> keyConverter;
+    private final NearCache<V> nearCache;
+    private final SingleFlight<V> inFlightLoads;
+    private final Set<String> pendingRefreshes;
+    private volatile KeyBloomFilter keyFilter;
+    /** The key filter replaced by a removal of all documents in progress, consulted until the removal completes */
+    private volatile KeyBloomFilter clearedKeyFilter;
+    private final KeyCompactor keyCompactor;
+    /** Encodes and decodes values with the codec and compression settings of this cache */
+    private final CacheTranscoder transcoder;
+    private final PartitionBatcher batcher;
+    private final AsyncCouchbaseCache<K, V> asyncCache;
+
+    private final Func1<K, String> internalKeyOfKey = new Func1<K, String>() {
+        @Override
+        public String call(K key) {
+            return toInternalKey(key);
+        }
+    };
+
+    private final Func1<CacheDocument, CacheDocument> decoder = new Func1<CacheDocument, CacheDocument>() {
+        @Override
+        public CacheDocument call(CacheDocument doc) {
+            return transcoder.decoded(doc);
+        }
+    };
+
+    private final Func1<Map.Entry<? extends K, ?>, String> internalKeyOfEntry =
+            new Func1<Map.Entry<? extends K, ?>, String>() {
+                @Override
+                public String call(Map.Entry<? extends K, ?> entry) {
+                    return toInternalKey(entry.getKey());
+                }
+            };
 
     private volatile boolean isClosed;
 
@@ -141,14 +202,36 @@ public class CouchbaseCache<K, V> implements Cache<K, V> {
         this.keyConverter = configuration.getCachePrefix() == null
                 ? configuration.getKeyConverter()
                 : new KeyConverter.PrefixedKeyConverter<K>(configuration.getKeyConverter(), keyPrefix);
+        this.keyCompactor = KeyCompactor.create(configuration);
+        this.transcoder = new CacheTranscoder(configuration.getValueCodec(),
+                configuration.getCompressionThreshold(), configuration.getCompressionLevel());
         this.bucket = cacheManager.getCluster().openBucket(configuration.getBucketName(),
-                configuration.getBucketPassword());
+                configuration.getBucketPassword(), CacheTranscoder.BUCKET_TRANSCODERS);
+        this.batcher = configuration.isNodeAwareBatchingEnabled()
+                ? new PartitionBatcher(this.bucket, configuration.getNodeConcurrency(),
+                        configuration.getBulkConcurrency())
+                : null;
+        this.nearCache = NearCache.create(configuration);
+        this.keyFilter = KeyBloomFilter.create(configuration);
+        this.inFlightLoads = new SingleFlight<V>();
+        this.pendingRefreshes = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        this.asyncCache = new AsyncCouchbaseCache<K, V>(this);
     }
 
     public KeyConverter<K> keyConverter() {
         return this.keyConverter;
     }
 
+    /**
+     * Gives access to the non-blocking API of this cache. This is also available through
+     * {@link #unwrap(Class) unwrap(AsyncCouchbaseCache.class)}.
+     *
+     * @return the {@link AsyncCouchbaseCache} view of this cache.
+     */
+    public AsyncCouchbaseCache<K, V> async() {
+        return asyncCache;
+    }
+
     /**
      * Allows to enable/disable statistics via JMX.
      * This will also update the configuration.
@@ -203,36 +286,22 @@ public class CouchbaseCache<K, V> implements Cache<K, V> {
         checkOpen();
         long start = (isStatisticsEnabled()) ? System.nanoTime() : 0;
         String cbKey = toInternalKey(key);
-        V result = null;
+        V result = getFromNearCache(cbKey);
 
-        SerializableDocument doc = bucket.get(cbKey, SerializableDocument.class);
-        try {
-            if (doc != null) {
-                //when an entry is found, just update its expiry if ACCESS warrants it
-                if (isStatisticsEnabled()) {
-                    statisticsMxBean.increaseCacheHits(1L);
-                }
-                touchIfNeeded(cbKey);
-                result = (V) doc.content();
-            } else {
-                //no entry found, still try to apply read-through
-                if (isStatisticsEnabled()) {
-                    statisticsMxBean.increaseCacheMisses(1L);
-                }
-                if (cacheLoader != null && configuration.isReadThrough()) {
-                    V loaded = cacheLoader.load(key);
-                    if (loaded != null && (doc = createDocument(key, loaded, Operation.CREATION)) != null) {
-                        try {
-                            bucket.insert(doc);
-                            result = loaded;
-                            //a successful read-through triggers a CREATED notification
-                            eventManager.queueAndDispatch(EventType.CREATED, key, loaded, this);
-                        } catch (DocumentAlreadyExistsException e) {
-                            //concurrent creation of document succeeded, abandon loading
-                        }
-                    }
-                }
+        if (result != null) {
+            //served locally, the expiry is still updated if ACCESS warrants it but without waiting for it
+            if (isStatisticsEnabled()) {
+                statisticsMxBean.increaseCacheHits(1L);
+                statisticsMxBean.addGetTimeNano(System.nanoTime() - start);
             }
+            touchInBackgroundIfNeeded(cbKey);
+            return result;
+        }
+
+        try {
+            //when an entry is found, its expiry is updated in the same operation if ACCESS warrants it
+            CacheDocument doc = fetch(key, cbKey, getDurationCode(Operation.ACCESS));
+            result = onFetched(key, cbKey, doc);
             if (isStatisticsEnabled()) {
                 statisticsMxBean.addGetTimeNano(System.nanoTime() - start);
             }
@@ -242,35 +311,677 @@ public class CouchbaseCache<K, V> implements Cache<K, V> {
         }
     }
 
+    /**
+     * Asynchronous version of {@link #get(Object)}. Loads from the {@link CacheLoader} are done on the
+     * {@link Schedulers#io() io scheduler}.
+     *
+     * @param key the key to get.
+     * @return an Observable of the value, empty if there is none.
+     * @see AsyncCouchbaseCache#getAsync(Object)
+     */
+    Observable<V> getAsync(final K key) {
+        checkOpen();
+        final String cbKey = toInternalKey(key);
+        return Observable.defer(new Func0<Observable<V>>() {
+            @Override
+            public Observable<V> call() {
+                final long start = isStatisticsEnabled() ? System.nanoTime() : 0;
+                V local = getFromNearCache(cbKey);
+                if (local != null) {
+                    if (isStatisticsEnabled()) {
+                        statisticsMxBean.increaseCacheHits(1L);
+                        statisticsMxBean.addGetTimeNano(System.nanoTime() - start);
+                    }
+                    touchInBackgroundIfNeeded(cbKey);
+                    return Observable.just(local);
+                }
+
+                return fetchAsync(key, getDurationCode(Operation.ACCESS))
+                        .flatMap(new Func1<Tuple3<K, CacheDocument, Long>, Observable<V>>() {
+                            @Override
+                            public Observable<V> call(Tuple3<K, CacheDocument, Long> keyDocTime) {
+                                final CacheDocument doc = keyDocTime.value2();
+                                Observable<V> result = Observable.defer(new Func0<Observable<V>>() {
+                                    @Override
+                                    public Observable<V> call() {
+                                        V value = onFetched(key, cbKey, doc);
+                                        if (isStatisticsEnabled()) {
+                                            statisticsMxBean.addGetTimeNano(System.nanoTime() - start);
+                                        }
+                                        return value == null ? Observable.<V>empty() : Observable.just(value);
+                                    }
+                                });
+                                //the CacheLoader is blocking, it must not be called from the SDK's threads
+                                return mayLoad(doc) ? result.subscribeOn(Schedulers.io()) : result;
+                            }
+                        });
+            }
+        }).onErrorResumeNext(this.<V>errorAs("Get " + key + " failed"));
+    }
+
+    /**
+     * Applies what follows the fetch of a document in {@link #get(Object)}: for a hit the near cache and
+     * refresh-ahead (or early recomputation) are applied, for a miss read-through is applied. Hits and misses are
+     * counted in the statistics.
+     *
+     * @param key the key that was fetched.
+     * @param cbKey the internal form of the key.
+     * @param doc the fetched document, or null if none was found.
+     * @return the value for the key, or null if there is none.
+     */
+    private V onFetched(K key, String cbKey, CacheDocument doc) {
+        V result;
+        if (doc != null) {
+            if (isStatisticsEnabled()) {
+                statisticsMxBean.increaseCacheHits(1L);
+            }
+            result = valueOf(doc);
+            if (shouldRecomputeEarly(doc)) {
+                V recomputed = reloadOnce(key, doc);
+                result = recomputed == null ? result : recomputed;
+            } else {
+                cacheLocally(cbKey, result, doc);
+                refreshAheadIfNeeded(key, doc);
+            }
+        } else {
+            //no entry found, still try to apply read-through
+            if (isStatisticsEnabled()) {
+                statisticsMxBean.increaseCacheMisses(1L);
+            }
+            result = loadThroughOnce(key, cbKey);
+        }
+        return result;
+    }
+
+    /**
+     * Checks if {@link #onFetched(Object, String, CacheDocument)} could call the {@link CacheLoader} for a
+     * fetched document.
+     *
+     * @param doc the fetched document, or null if none was found.
+     * @return true if the value could be loaded.
+     */
+    private boolean mayLoad(CacheDocument doc) {
+        if (cacheLoader == null) {
+            return false;
+        } else if (doc == null) {
+            return configuration.isReadThrough();
+        } else {
+            return configuration.isEarlyExpirationEnabled() && doc.content() instanceof TimedValue;
+        }
+    }
+
+    /**
+     * If refresh-ahead is enabled and the document is close enough to its expiry, reloads its value in the
+     * background. The caller is not blocked and keeps the current value.
+     *
+     * @param key the key of the document.
+     * @param doc the document that was just read.
+     * @see CouchbaseConfiguration#getRefreshAheadFactor()
+     */
+    private void refreshAheadIfNeeded(final K key, final CacheDocument doc) {
+        if (!configuration.isRefreshAheadEnabled() || cacheLoader == null
+                || !(doc.content() instanceof TimedValue)) {
+            return;
+        }
+        TimedValue timedValue = (TimedValue) doc.content();
+        if (!timedValue.expires()) {
+            return;
+        }
+        long remaining = timedValue.expiresMillis() - System.currentTimeMillis();
+        if (remaining > timedValue.ttlSeconds() * 1000L * configuration.getRefreshAheadFactor()) {
+            return;
+        }
+
+        final String cbKey = doc.id();
+        if (!pendingRefreshes.add(cbKey)) {
+            //a refresh is already scheduled for this key
+            return;
+        }
+        Observable.defer(new Func0<Observable<V>>() {
+            @Override
+            public Observable<V> call() {
+                try {
+                    V reloaded = reloadOnce(key, doc);
+                    return reloaded == null ? Observable.<V>empty() : Observable.just(reloaded);
+                } finally {
+                    pendingRefreshes.remove(cbKey);
+                }
+            }
+        }).subscribeOn(Schedulers.io()).subscribe(Actions.empty(), LOG_BACKGROUND_ERROR);
+    }
+
+    /**
+     * Decides if a reader should recompute an entry before its expiry, following the XFetch rule: the entry is
+     * recomputed if <code>now - loadCost * beta * ln(random())</code> is past its expiry.
+     *
+     * @param doc the document that was just read.
+     * @return true if the reader should reload the value.
+     * @see CouchbaseConfiguration#getEarlyExpirationBeta()
+     */
+    private boolean shouldRecomputeEarly(CacheDocument doc) {
+        if (!configuration.isEarlyExpirationEnabled() || cacheLoader == null
+                || !(doc.content() instanceof TimedValue)) {
+            return false;
+        }
+        TimedValue timedValue = (TimedValue) doc.content();
+        if (!timedValue.expires()) {
+            return false;
+        }
+        if (timedValue.loadCostNanos() <= 0L) {
+            //the value was not loaded (eg. put by the user), nothing to base the recomputation on
+            return false;
+        }
+        double loadCostMillis = timedValue.loadCostNanos() / 1000000d;
+        double gap = -loadCostMillis * configuration.getEarlyExpirationBeta() * Math.log(Math.random());
+        return System.currentTimeMillis() + gap >= timedValue.expiresMillis();
+    }
+
+    /**
+     * Reloads a document's value, sharing the load with any concurrent load of the same key in this JVM.
+     *
+     * @param key the key to reload.
+     * @param current the document currently holding the value.
+     * @return the reloaded value, or null if nothing was loaded or the document changed in the meantime.
+     * @see #reload(Object, CacheDocument)
+     */
+    private V reloadOnce(final K key, final CacheDocument current) {
+        return inFlightLoads.execute(current.id(), new Callable<V>() {
+            @Override
+            public V call() throws Exception {
+                return reload(key, current);
+            }
+        });
+    }
+
+    /**
+     * Reloads a value through the {@link CacheLoader} and replaces the given document with it, using the document's
+     * CAS so that a concurrent modification wins over the reload. As the value comes fresh from the loader, the
+     * CREATION expiry applies.
+     *
+     * @param key the key to reload.
+     * @param current the document currently holding the value.
+     * @return the reloaded value, or null if nothing was loaded or the document changed in the meantime.
+     */
+    private V reload(K key, CacheDocument current) {
+        long loadStart = System.nanoTime();
+        V loaded = cacheLoader.load(key);
+        long loadCost = System.nanoTime() - loadStart;
+        if (loaded == null) {
+            return null;
+        }
+        CacheDocument doc = createDocument(key, loaded, Operation.CREATION, current.cas(), loadCost);
+        if (doc == null) {
+            return null;
+        }
+        try {
+            CacheDocument replaced = bucket.replace(doc);
+            cacheLocally(replaced.id(), loaded, replaced);
+            eventManager.queueAndDispatch(EventType.UPDATED, key, loaded, valueOf(current), this);
+            return loaded;
+        } catch (CASMismatchException e) {
+            return null;
+        } catch (DocumentDoesNotExistException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Applies read-through for a key that wasn't found in the bucket, making sure that only one load per key is
+     * outstanding in this JVM: concurrent callers missing the same key wait for the ongoing load and get its result.
+     *
+     * @param key the key that was missed.
+     * @param cbKey the internal form of the key.
+     * @return the loaded value, or null if nothing was loaded (or a concurrent creation won).
+     * @see #loadThrough(Object, String)
+     */
+    private V loadThroughOnce(final K key, final String cbKey) {
+        if (cacheLoader == null || !configuration.isReadThrough()) {
+            return null;
+        }
+        return inFlightLoads.execute(cbKey, new Callable<V>() {
+            @Override
+            public V call() throws Exception {
+                return loadThrough(key, cbKey);
+            }
+        });
+    }
+
+    /**
+     * Applies read-through for a key that wasn't found in the bucket: if read-through is configured the value is
+     * loaded from the {@link CacheLoader}, inserted in the bucket and its creation is notified.
+     *
+     * @param key the key that was missed.
+     * @param cbKey the internal form of the key.
+     * @return the loaded value, or null if nothing was loaded (or a concurrent creation won).
+     */
+    private V loadThrough(K key, String cbKey) {
+        if (cacheLoader == null || !configuration.isReadThrough()) {
+            return null;
+        }
+        long loadStart = System.nanoTime();
+        V loaded = cacheLoader.load(key);
+        long loadCost = System.nanoTime() - loadStart;
+        CacheDocument doc;
+        if (loaded != null && (doc = createDocument(key, loaded, Operation.CREATION, 0L, loadCost)) != null) {
+            try {
+                CacheDocument inserted = bucket.insert(doc);
+                cacheLocally(cbKey, loaded, inserted);
+                //a successful read-through triggers a CREATED notification
+                eventManager.queueAndDispatch(EventType.CREATED, key, loaded, this);
+                return loaded;
+            } catch (DocumentAlreadyExistsException e) {
+                //concurrent creation of document succeeded, abandon loading
+            }
+        }
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Keys that are not served by the near cache are fetched asynchronously, with at most
+     * {@link CouchbaseConfiguration#getBulkConcurrency()} requests in flight. Statistics and access expiry are
+     * applied for each key, as in {@link #get(Object)}.
+     *
+     * When read-through is enabled, all the missed keys are loaded using {@link CacheLoader#loadAll(Iterable)}
+     * (by batches of {@link CouchbaseConfiguration#getReadThroughBatchSize()} keys) and inserted asynchronously.
+     */
     @Override
     public Map<K, V> getAll(Set<? extends K> keys) {
         checkOpen();
+        if (keys == null) {
+            throw new NullPointerException("Set of keys cannot be null");
+        }
         Map<K, V> result = new HashMap<K, V>(keys.size());
+        List<K> remoteKeys = getAllFromNearCache(keys, result);
+        if (remoteKeys.isEmpty()) {
+            return result;
+        }
+
+        try {
+            List<K> missedKeys = onAllFetched(fetchAllAsync(remoteKeys).toBlocking().toIterable(), result);
+            if (!missedKeys.isEmpty()) {
+                loadAllMissed(missedKeys, result);
+            }
+            return result;
+        } catch (Exception e) {
+            throw exception("GetAll of " + keys.size() + " keys failed", e);
+        }
+    }
+
+    /**
+     * Asynchronous version of {@link #getAll(Set)}. Loads from the {@link CacheLoader} are done on the
+     * {@link Schedulers#io() io scheduler}.
+     *
+     * @param keys the keys to get.
+     * @return an Observable of a single map of the values that were found, by key.
+     * @see AsyncCouchbaseCache#getAllAsync(Set)
+     */
+    Observable<Map<K, V>> getAllAsync(final Set<? extends K> keys) {
+        checkOpen();
+        if (keys == null) {
+            throw new NullPointerException("Set of keys cannot be null");
+        }
+        return Observable.defer(new Func0<Observable<Map<K, V>>>() {
+            @Override
+            public Observable<Map<K, V>> call() {
+                final Map<K, V> result = new HashMap<K, V>(keys.size());
+                List<K> remoteKeys = getAllFromNearCache(keys, result);
+                if (remoteKeys.isEmpty()) {
+                    return Observable.just(result);
+                }
+
+                return fetchAllAsync(remoteKeys)
+                        .toList()
+                        .flatMap(new Func1<List<Tuple3<K, CacheDocument, Long>>, Observable<Map<K, V>>>() {
+                            @Override
+                            public Observable<Map<K, V>> call(List<Tuple3<K, CacheDocument, Long>> fetched) {
+                                final List<K> missedKeys = onAllFetched(fetched, result);
+                                if (missedKeys.isEmpty() || cacheLoader == null || !configuration.isReadThrough()) {
+                                    return Observable.just(result);
+                                }
+                                //the CacheLoader is blocking, it must not be called from the SDK's threads
+                                return Observable.defer(new Func0<Observable<Map<K, V>>>() {
+                                    @Override
+                                    public Observable<Map<K, V>> call() {
+                                        loadAllMissed(missedKeys, result);
+                                        return Observable.just(result);
+                                    }
+                                }).subscribeOn(Schedulers.io());
+                            }
+                        });
+            }
+        }).onErrorResumeNext(this.<Map<K, V>>errorAs("GetAll of " + keys.size() + " keys failed"));
+    }
+
+    /**
+     * Streaming version of {@link #getAllAsync(Set)}. Keys are requested from the source as entries are requested
+     * downstream, with at most {@link CouchbaseConfiguration#getBulkConcurrency()} keys being processed at a time,
+     * so that neither the keys nor the entries need to be held in memory. Each key is processed as in
+     * {@link #getAsync(Object)}.
+     *
+     * @param keys the keys to get.
+     * @return an Observable of the entries that were found, in no particular order.
+     * @see AsyncCouchbaseCache#getAllAsync(Observable)
+     */
+    Observable<Entry<K, V>> getAllAsync(Observable<? extends K> keys) {
+        checkOpen();
+        if (keys == null) {
+            throw new NullPointerException("Keys cannot be null");
+        }
+        return Observable.merge(keys.map(new Func1<K, Observable<Entry<K, V>>>() {
+            @Override
+            public Observable<Entry<K, V>> call(final K key) {
+                return getAsync(key).map(new Func1<V, Entry<K, V>>() {
+                    @Override
+                    public Entry<K, V> call(V value) {
+                        return new CouchbaseCacheEntry<K, V>(key, value);
+                    }
+                });
+            }
+        }), configuration.getBulkConcurrency());
+    }
+
+    /**
+     * Serves the keys of a bulk get that are in the near cache, as {@link #getAll(Set)} does.
+     *
+     * @param keys the keys to get.
+     * @param result the map in which to put the values found locally.
+     * @return the keys that must be fetched from the bucket.
+     */
+    private List<K> getAllFromNearCache(Set<? extends K> keys, Map<K, V> result) {
+        List<K> remoteKeys = new ArrayList<K>(keys.size());
         for (K key : keys) {
-            //TODO optimize for bulk loads?
-            V value = get(key);
-            if (value != null) {
-                result.put(key, value);
+            long start = isStatisticsEnabled() ? System.nanoTime() : 0L;
+            String cbKey = toInternalKey(key);
+            V local = getFromNearCache(cbKey);
+            if (local == null) {
+                remoteKeys.add(key);
+            } else {
+                result.put(key, local);
+                touchInBackgroundIfNeeded(cbKey);
+                if (isStatisticsEnabled()) {
+                    statisticsMxBean.increaseCacheHits(1L);
+                    statisticsMxBean.addGetTimeNano(System.nanoTime() - start);
+                }
+            }
+        }
+        return remoteKeys;
+    }
+
+    /**
+     * Fetches the documents for several keys as a {@link #bulk(Iterable, Func1, Func1) bulk} operation.
+     *
+     * @param keys the keys to fetch.
+     * @return an Observable of the tuples of each key, its document (or null if not found) and fetch time.
+     * @see #fetchAsync(Object, int)
+     */
+    private Observable<Tuple3<K, CacheDocument, Long>> fetchAllAsync(List<K> keys) {
+        final int accessTtl = getDurationCode(Operation.ACCESS);
+        return bulk(keys, internalKeyOfKey, new Func1<K, Observable<Tuple3<K, CacheDocument, Long>>>() {
+            @Override
+            public Observable<Tuple3<K, CacheDocument, Long>> call(K key) {
+                return fetchAsync(key, accessTtl);
+            }
+        });
+    }
+
+    /**
+     * Applies an operation to each item of a bulk call, with at most
+     * {@link CouchbaseConfiguration#getBulkConcurrency()} operations in flight, or grouped by node if node-aware
+     * batching is enabled.
+     *
+     * @param items the items of the bulk call.
+     * @param idOf the function giving the internal key of an item.
+     * @param operation the operation to apply to each item.
+     * @return an Observable merging the results of all operations.
+     * @see PartitionBatcher
+     */
+    private <T, R> Observable<R> bulk(Iterable<? extends T> items, Func1<? super T, String> idOf,
+            Func1<? super T, Observable<R>> operation) {
+        if (batcher != null) {
+            return batcher.<T, R>dispatch(items, idOf, operation);
+        }
+        return Observable.merge(Observable.from(items).map(operation), configuration.getBulkConcurrency());
+    }
+
+    /**
+     * Collects the documents fetched by a bulk get, applying the near cache, refresh-ahead and statistics to each.
+     *
+     * @param fetched the tuples of each key, its document (or null if not found) and fetch time.
+     * @param result the map in which to put the values found.
+     * @return the keys that were not found.
+     */
+    private List<K> onAllFetched(Iterable<Tuple3<K, CacheDocument, Long>> fetched, Map<K, V> result) {
+        List<K> missedKeys = new ArrayList<K>();
+        for (Tuple3<K, CacheDocument, Long> keyDocTime : fetched) {
+            CacheDocument doc = keyDocTime.value2();
+            if (doc != null) {
+                V value = valueOf(doc);
+                result.put(keyDocTime.value1(), value);
+                cacheLocally(doc.id(), value, doc);
+                refreshAheadIfNeeded(keyDocTime.value1(), doc);
+            } else {
+                missedKeys.add(keyDocTime.value1());
+            }
+            if (isStatisticsEnabled()) {
+                if (doc != null) {
+                    statisticsMxBean.increaseCacheHits(1L);
+                } else {
+                    statisticsMxBean.increaseCacheMisses(1L);
+                }
+                statisticsMxBean.addGetTimeNano(keyDocTime.value3());
             }
         }
+        return missedKeys;
+    }
+
+    private void loadAllMissed(List<K> missedKeys, Map<K, V> result) {
+        long loadStart = isStatisticsEnabled() ? System.nanoTime() : 0L;
+        result.putAll(loadAllThrough(missedKeys));
+        if (isStatisticsEnabled()) {
+            statisticsMxBean.addGetTimeNano(System.nanoTime() - loadStart);
+        }
+    }
+
+    /**
+     * Applies read-through for several keys that weren't found in the bucket: if read-through is configured, the
+     * values are loaded using {@link CacheLoader#loadAll(Iterable)}, by batches of
+     * {@link CouchbaseConfiguration#getReadThroughBatchSize()} keys, then inserted asynchronously. All the
+     * creations are notified in a single dispatch.
+     *
+     * @param keys the keys that were missed.
+     * @return the values that were loaded and inserted, by key.
+     */
+    private Map<K, V> loadAllThrough(List<K> keys) {
+        if (cacheLoader == null || !configuration.isReadThrough()) {
+            return new HashMap<K, V>(0);
+        }
+
+        final Map<K, V> loaded = new HashMap<K, V>(keys.size());
+        final Map<K, Long> loadCosts = new HashMap<K, Long>(keys.size());
+        int batchSize = configuration.getReadThroughBatchSize();
+        for (int from = 0; from < keys.size(); from += batchSize) {
+            long loadStart = System.nanoTime();
+            Map<K, V> batch = cacheLoader.loadAll(keys.subList(from, Math.min(keys.size(), from + batchSize)));
+            //each key of the batch would cost at least as much to recompute on its own
+            Long loadCost = System.nanoTime() - loadStart;
+            if (batch != null) {
+                for (Map.Entry<K, V> entry : batch.entrySet()) {
+                    if (entry.getKey() != null && entry.getValue() != null) {
+                        loaded.put(entry.getKey(), entry.getValue());
+                        loadCosts.put(entry.getKey(), loadCost);
+                    }
+                }
+            }
+        }
+        if (loaded.isEmpty()) {
+            return loaded;
+        }
+
+        Iterable<Map.Entry<K, V>> inserted = this
+                .bulk(loaded.entrySet(), internalKeyOfEntry,
+                        new Func1<Map.Entry<K, V>, Observable<Map.Entry<K, V>>>() {
+                            @Override
+                            public Observable<Map.Entry<K, V>> call(Map.Entry<K, V> entry) {
+                                return insertAsync(entry, loadCosts.get(entry.getKey()));
+                            }
+                        })
+                .toBlocking()
+                .toIterable();
 
+        Map<K, V> result = new HashMap<K, V>(loaded.size());
+        try {
+            for (Map.Entry<K, V> entry : inserted) {
+                result.put(entry.getKey(), entry.getValue());
+                //a successful read-through triggers a CREATED notification
+                eventManager.queueEvent(new CouchbaseCacheEntryEvent<K, V>(EventType.CREATED, entry.getKey(),
+                        entry.getValue(), this));
+            }
+        } finally {
+            eventManager.dispatch();
+        }
         return result;
     }
 
+    /**
+     * Asynchronously inserts a loaded entry in the bucket, taking the CREATION expiry into account.
+     *
+     * @param entry the key and loaded value.
+     * @param loadCost the time it took to load the value, in nanoseconds.
+     * @return an Observable of the entry if it was inserted, empty if the expiry or a concurrent creation
+     *  prevented it.
+     */
+    private Observable<Map.Entry<K, V>> insertAsync(final Map.Entry<K, V> entry, long loadCost) {
+        final CacheDocument doc = createDocument(entry.getKey(), entry.getValue(), Operation.CREATION, 0L,
+                loadCost);
+        if (doc == null) {
+            return Observable.empty();
+        }
+        return bucket.async()
+                .insert(doc)
+                .map(new Func1<CacheDocument, Map.Entry<K, V>>() {
+                    @Override
+                    public Map.Entry<K, V> call(CacheDocument inserted) {
+                        cacheLocally(inserted.id(), entry.getValue(), inserted);
+                        return entry;
+                    }
+                })
+                .onErrorResumeNext(new Func1<Throwable, Observable<Map.Entry<K, V>>>() {
+                    @Override
+                    public Observable<Map.Entry<K, V>> call(Throwable throwable) {
+                        if (throwable instanceof DocumentAlreadyExistsException) {
+                            //concurrent creation of document succeeded, abandon loading
+                            return Observable.empty();
+                        }
+                        return Observable.error(throwable);
+                    }
+                });
+    }
+
+    /**
+     * Fetches the document for an internal key. If the ACCESS expiry warrants it, the document is fetched and touched
+     * in a single get-and-touch operation.
+     *
+     * @param cbKey the internal key to fetch.
+     * @param accessTtl the TTL code for ACCESS, as computed by {@link #getDurationCode(Operation)}.
+     * @return the document, or null if not found.
+     */
+    private CacheDocument fetch(K key, String cbKey, int accessTtl) {
+        if (accessTtl >= 0) {
+            return touched(decoded(key, bucket.getAndTouch(cbKey, accessTtl, CacheDocument.class)), accessTtl);
+        }
+        return decoded(key, bucket.get(cbKey, CacheDocument.class));
+    }
+
+    /**
+     * Reflects a get-and-touch in the {@link TimedValue} of the fetched document: whatever the stored envelope says,
+     * the document now expires after the ACCESS TTL, so that refresh-ahead and early recomputation are based on
+     * the actual expiry.
+     *
+     * @param doc the fetched document, or null if none was found.
+     * @param accessTtl the TTL the document was touched with.
+     * @return the document with an up to date envelope.
+     */
+    private static CacheDocument touched(CacheDocument doc, int accessTtl) {
+        if (doc == null || !(doc.content() instanceof TimedValue)) {
+            return doc;
+        }
+        TimedValue timedValue = ((TimedValue) doc.content()).touched(System.currentTimeMillis(), accessTtl);
+        return CacheDocument.create(doc.id(), accessTtl, timedValue, doc.cas(), doc.originalId());
+    }
+
+    /**
+     * Asynchronously fetches the document for a key. If the ACCESS expiry warrants it, the document is fetched and
+     * touched in a single get-and-touch operation.
+     *
+     * @param key the key to fetch.
+     * @param accessTtl the TTL code for ACCESS, as computed by {@link #getDurationCode(Operation)}.
+     * @return an Observable of a single tuple of the key, the document (or null if not found) and the time it
+     *  took to fetch it in nanoseconds.
+     */
+    private Observable<Tuple3<K, CacheDocument, Long>> fetchAsync(final K key, final int accessTtl) {
+        return Observable.defer(new Func0<Observable<Tuple3<K, CacheDocument, Long>>>() {
+            @Override
+            public Observable<Tuple3<K, CacheDocument, Long>> call() {
+                final long start = System.nanoTime();
+                String cbKey = toInternalKey(key);
+                Observable<CacheDocument> fetch;
+                if (accessTtl >= 0) {
+                    fetch = bucket.async().getAndTouch(cbKey, accessTtl, CacheDocument.class)
+                            .flatMap(decoderFor(key))
+                            .map(new Func1<CacheDocument, CacheDocument>() {
+                                @Override
+                                public CacheDocument call(CacheDocument doc) {
+                                    return touched(doc, accessTtl);
+                                }
+                            });
+                } else {
+                    fetch = bucket.async().get(cbKey, CacheDocument.class).flatMap(decoderFor(key));
+                }
+                return fetch
+                        .singleOrDefault(null)
+                        .map(new Func1<CacheDocument, Tuple3<K, CacheDocument, Long>>() {
+                            @Override
+                            public Tuple3<K, CacheDocument, Long> call(CacheDocument doc) {
+                                return Tuple.create(key, doc, System.nanoTime() - start);
+                            }
+                        });
+            }
+        });
+    }
+
     /**
      * {@inheritDoc}
      *
-     * Note that this implementation attempts a load of the document from couchbase.
-     * It is more efficient to directly attempt to retrieve the value with get than call containsKey then get in this
-     * cache implementation, unless you don't want to trigger statistics and/or read-through (if activated).
+     * Note that this implementation checks the existence of the document in couchbase without transferring its
+     * value. Definite misses are answered locally if a key bloom filter is configured, and keys held by the near
+     * cache are answered locally as well.
+     * It is still more efficient to directly attempt to retrieve the value with get than call containsKey then get
+     * in this cache implementation, unless you don't want to trigger statistics and/or read-through (if activated).
      *
      * @param key the key to check for
      * @return true if key is present in cache, false otherwise
+     * @see CouchbaseConfiguration.Builder#withKeyBloomFilter(long, double)
      */
     @Override
     public boolean containsKey(K key) {
         checkOpen();
-        return bucket.get(toInternalKey(key), SerializableDocument.class) != null;
+        String cbKey = toInternalKey(key);
+        if (isDefinitelyAbsent(cbKey)) {
+            return false;
+        }
+        if (nearCache != null) {
+            NearCache.Entry<V> local = nearCache.get(cbKey);
+            if (local != null && nearCache.isFresh(local)) {
+                return true;
+            }
+        }
+        if (keyCompactor != null) {
+            //the document must be read to check which key it holds
+            return verified(key, bucket.get(cbKey, CacheDocument.class)) != null;
+        }
+        return bucket.exists(cbKey);
     }
 
     @Override
@@ -311,47 +1022,48 @@ public class CouchbaseCache<K, V> implements Cache<K, V> {
                     }
                 })
                 //attempt a get to see if data is already in cache, keep the key, value and current value as tuple
-                .flatMap(new Func1<Map.Entry<K, V>, Observable<Tuple3<K, V, SerializableDocument>>>() {
+                .flatMap(new Func1<Map.Entry<K, V>, Observable<Tuple3<K, V, CacheDocument>>>() {
                     @Override
-                    public Observable<Tuple3<K, V, SerializableDocument>> call(final Map.Entry<K, V> kv) {
-                        return bucket.async().get(toInternalKey(kv.getKey()), SerializableDocument.class)
-                        .map(new Func1<SerializableDocument, Tuple3<K, V, SerializableDocument>>() {
+                    public Observable<Tuple3<K, V, CacheDocument>> call(final Map.Entry<K, V> kv) {
+                        return bucket.async().get(toInternalKey(kv.getKey()), CacheDocument.class)
+                        .flatMap(decoderFor(kv.getKey()))
+                        .map(new Func1<CacheDocument, Tuple3<K, V, CacheDocument>>() {
                             @Override
-                            public Tuple3<K, V, SerializableDocument> call(SerializableDocument doc) {
+                            public Tuple3<K, V, CacheDocument> call(CacheDocument doc) {
                                 return Tuple.create(kv.getKey(), kv.getValue(), doc);
                             }
                         });
                     }
                 })
                 //depending on if the value is already in cache or not, insert or replace. Keep track in tuple.
-                .flatMap(new Func1<Tuple3<K, V, SerializableDocument>, Observable<Tuple3<K, V, V>>>() {
+                .flatMap(new Func1<Tuple3<K, V, CacheDocument>, Observable<Tuple3<K, V, V>>>() {
                     @Override
-                    public Observable<Tuple3<K, V, V>> call(final Tuple3<K, V, SerializableDocument> kvd) {
+                    public Observable<Tuple3<K, V, V>> call(final Tuple3<K, V, CacheDocument> kvd) {
                         if (kvd.value3() == null) {
                             //no value in cache. take expiry into account to see if a creation is needed.
-                            SerializableDocument newDoc = createDocument(kvd.value1(), kvd.value2(), Operation.CREATION);
+                            CacheDocument newDoc = createDocument(kvd.value1(), kvd.value2(), Operation.CREATION);
                             if (newDoc == null) {
                                 return Observable.empty();
                             } else {
                                 return bucket.async().insert(newDoc)
-                                .map(new Func1<SerializableDocument, Tuple3<K, V, V>>() {
+                                .map(new Func1<CacheDocument, Tuple3<K, V, V>>() {
                                     @Override
-                                    public Tuple3<K, V, V> call(SerializableDocument serializableDocument) {
+                                    public Tuple3<K, V, V> call(CacheDocument cacheDocument) {
                                         return Tuple.create(kvd.value1(), kvd.value2(), null);
                                     }
                                 });
                             }
                         } else {
                             //value in cache, should we update it? (taking expiry into account)
-                            SerializableDocument updateDoc = createDocument(kvd.value1(), kvd.value2(), Operation.UPDATE);
-                            final V oldValue = (V) kvd.value3().content();
+                            CacheDocument updateDoc = createDocument(kvd.value1(), kvd.value2(), Operation.UPDATE);
+                            final V oldValue = valueOf(kvd.value3());
                             if (updateDoc == null || !replaceExistingValues) {
                                 return Observable.empty();
                             } else {
                                 return bucket.async().replace(updateDoc)
-                                .map(new Func1<SerializableDocument, Tuple3<K, V, V>>() {
+                                .map(new Func1<CacheDocument, Tuple3<K, V, V>>() {
                                     @Override
-                                    public Tuple3<K, V, V> call(SerializableDocument serializableDocument) {
+                                    public Tuple3<K, V, V> call(CacheDocument cacheDocument) {
                                          return Tuple.create(kvd.value1(), kvd.value2(), oldValue);
                                      }
                                 });
@@ -364,6 +1076,9 @@ public class CouchbaseCache<K, V> implements Cache<K, V> {
                         new Action1<Tuple3<K, V, V>>() {
                             @Override
                             public void call(Tuple3<K, V, V> kvOldValue) {
+                                String cbKey = toInternalKey(kvOldValue.value1());
+                                evictLocally(cbKey);
+                                rememberKey(cbKey);
                                 EventType type = EventType.CREATED;
                                 if (kvOldValue.value3() != null) {
                                     type = EventType.UPDATED;
@@ -394,6 +1109,14 @@ public class CouchbaseCache<K, V> implements Cache<K, V> {
                         });
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * Note that this implementation only fetches the previous value if a registered update listener requires it.
+     * Otherwise, if there are listeners for creations or updates, an insert is attempted first and the write falls
+     * back to an upsert if the key already existed, so that the correct event can be emitted without transferring the
+     * old value. If there are no such listeners at all, a single upsert is done.
+     */
     @Override
     public void put(K key, V value) {
         //TODO check expiry
@@ -401,68 +1124,354 @@ public class CouchbaseCache<K, V> implements Cache<K, V> {
         checkTypes(key, value);
         long start = configuration.isStatisticsEnabled() ? System.nanoTime() : 0;
 
-        try {
-            SerializableDocument oldDocument = bucket.get(toInternalKey(key), SerializableDocument.class);
-            SerializableDocument doc = createDocument(key, value, Operation.CREATION);
-            //Only do something if doc is not null (otherwise it means expiry was already set)
-            if (doc != null) {
-                bucket.upsert(doc);
-                if (oldDocument != null) {
-                    eventManager.queueAndDispatch(EventType.UPDATED, key, value, (V) oldDocument.content(), this);
+        try {
+            String cbKey = toInternalKey(key);
+            CacheDocument doc = createDocument(key, value, Operation.CREATION);
+            //Only do something if doc is not null (otherwise it means expiry was already set)
+            if (doc != null) {
+                if (eventManager.isOldValueRequired(EventType.UPDATED)) {
+                    CacheDocument oldDocument = decoded(key, bucket.get(cbKey, CacheDocument.class));
+                    CacheDocument stored = bucket.upsert(doc);
+                    cacheLocally(cbKey, value, stored);
+                    if (oldDocument != null) {
+                        eventManager.queueAndDispatch(EventType.UPDATED, key, value, valueOf(oldDocument), this);
+                    } else {
+                        eventManager.queueAndDispatch(EventType.CREATED, key, value, this);
+                    }
+                } else if (eventManager.hasListenerFor(EventType.CREATED)
+                        || eventManager.hasListenerFor(EventType.UPDATED)) {
+                    CacheDocument stored;
+                    EventType type;
+                    try {
+                        stored = bucket.insert(doc);
+                        type = EventType.CREATED;
+                    } catch (DocumentAlreadyExistsException e) {
+                        stored = bucket.upsert(doc);
+                        type = EventType.UPDATED;
+                    }
+                    cacheLocally(cbKey, value, stored);
+                    eventManager.queueAndDispatch(type, key, value, this);
+                } else {
+                    CacheDocument stored = bucket.upsert(doc);
+                    cacheLocally(cbKey, value, stored);
+                }
+                if (configuration.isStatisticsEnabled()) {
+                    statisticsMxBean.increaseCachePuts(1L);
+                    statisticsMxBean.addPutTimeNano(System.nanoTime() - start);
+                }
+            }
+        } catch (Exception e) {
+            throw new CacheException("Error during put of " + key, e);
+        }
+
+    }
+
+    /**
+     * Asynchronous version of {@link #put(Object, Object)}. Listeners are notified on the
+     * {@link Schedulers#io() io scheduler}, before the returned Observable completes.
+     *
+     * @param key the key.
+     * @param value the value.
+     * @return an Observable that completes once the value is stored.
+     * @see AsyncCouchbaseCache#putAsync(Object, Object)
+     */
+    Observable<Void> putAsync(final K key, final V value) {
+        checkOpen();
+        checkTypes(key, value);
+        boolean fetchOld = eventManager.isOldValueRequired(EventType.UPDATED);
+        boolean detectCreation = fetchOld || eventManager.hasListenerFor(EventType.CREATED)
+                || eventManager.hasListenerFor(EventType.UPDATED);
+        Observable<Tuple2<CouchbaseCacheEntryEvent<K, V>, Long>> stored = putAsync(key, value, fetchOld,
+                detectCreation);
+        if (detectCreation) {
+            //listeners may block, they must not run on the SDK's threads
+            stored = stored.observeOn(Schedulers.io());
+        }
+        return stored
+                .map(new Func1<Tuple2<CouchbaseCacheEntryEvent<K, V>, Long>, Void>() {
+                    @Override
+                    public Void call(Tuple2<CouchbaseCacheEntryEvent<K, V>, Long> eventAndTime) {
+                        if (eventAndTime.value1() != null) {
+                            eventManager.queueEvent(eventAndTime.value1());
+                            eventManager.dispatch();
+                        }
+                        if (isStatisticsEnabled()) {
+                            statisticsMxBean.increaseCachePuts(1L);
+                            statisticsMxBean.addPutTimeNano(eventAndTime.value2());
+                        }
+                        return null;
+                    }
+                })
+                .ignoreElements()
+                .onErrorResumeNext(this.<Void>errorAs("Error during put of " + key));
+    }
+
+    /**
+     * Streaming version of {@link #putAll(Map)}. Entries are requested from the source as the stored keys are
+     * requested downstream, with at most {@link CouchbaseConfiguration#getBulkConcurrency()} writes in flight.
+     * Each entry is stored as in {@link #putAsync(Object, Object)}, its events being dispatched as soon as it is
+     * stored. The first failure terminates the stream.
+     *
+     * @param entries the entries to store.
+     * @return an Observable of the keys that were stored, in no particular order.
+     * @see AsyncCouchbaseCache#putAllAsync(Observable)
+     */
+    Observable<K> putAllAsync(Observable<? extends Map.Entry<? extends K, ? extends V>> entries) {
+        checkOpen();
+        if (entries == null) {
+            throw new NullPointerException("Entries cannot be null");
+        }
+        return Observable.merge(entries.map(new Func1<Map.Entry<? extends K, ? extends V>, Observable<K>>() {
+            @Override
+            public Observable<K> call(Map.Entry<? extends K, ? extends V> entry) {
+                final K key = entry.getKey();
+                return putAsync(key, entry.getValue())
+                        .lastOrDefault(null)
+                        .map(new Func1<Void, K>() {
+                            @Override
+                            public K call(Void stored) {
+                                return key;
+                            }
+                        });
+            }
+        }), configuration.getBulkConcurrency());
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Note that this implementation reads the old document once, then writes the new value guarded by the CAS of
+     * what was read (an insert if there was no old document). If the document was concurrently modified, both steps
+     * are retried so that the returned old value is always the one that was actually replaced, backing off between
+     * attempts, up to {@link #INVOKE_MAX_ATTEMPTS} times.
+     */
+    @Override
+    public V getAndPut(K key, V value) {
+        //TODO expiry
+        checkOpen();
+        checkTypes(key, value);
+
+        long start = configuration.isStatisticsEnabled() ? System.nanoTime() : 0;
+        String internalKey = toInternalKey(key);
+
+        try {
+            CacheDocument oldDoc;
+            CacheDocument stored;
+            for (int attempt = 1; ; attempt++) {
+                //a document holding another compacted key is overwritten, but isn't the old value of this key
+                CacheDocument current = transcoder.decoded(bucket.get(internalKey, CacheDocument.class));
+                oldDoc = verified(key, current);
+                long cas = current == null ? 0L : current.cas();
+                CacheDocument newDoc = createDocument(key, value, Operation.CREATION, cas);
+                if (newDoc == null) {
+                    //expiry indicates no document to create
+                    stored = null;
+                    break;
+                }
+                Exception conflict;
+                try {
+                    stored = current == null ? bucket.insert(newDoc) : bucket.replace(newDoc);
+                    break;
+                } catch (DocumentAlreadyExistsException e) {
+                    conflict = e;
+                } catch (CASMismatchException e) {
+                    conflict = e;
+                } catch (DocumentDoesNotExistException e) {
+                    conflict = e;
+                }
+                if (attempt >= INVOKE_MAX_ATTEMPTS) {
+                    throw new CacheException("Couldn't getAndPut " + key + ", entry was concurrently modified during "
+                            + attempt + " attempts", conflict);
+                }
+                LOGGER.debug("Key " + internalKey + " modified concurrently during getAndPut, retrying");
+                backOff(attempt);
+            }
+
+            V old = oldDoc == null ? null : valueOf(oldDoc);
+            if (configuration.isStatisticsEnabled()) {
+                if (oldDoc == null) {
+                    statisticsMxBean.increaseCacheMisses(1L);
                 } else {
-                    eventManager.queueAndDispatch(EventType.CREATED, key, value, this);
+                    statisticsMxBean.increaseCacheHits(1L);
                 }
-                if (configuration.isStatisticsEnabled()) {
+                long time = System.nanoTime() - start;
+                statisticsMxBean.addGetTimeNano(time);
+                if (stored != null) {
                     statisticsMxBean.increaseCachePuts(1L);
-                    statisticsMxBean.addPutTimeNano(System.nanoTime() - start);
+                    statisticsMxBean.addPutTimeNano(time);
+                }
+            }
+
+            if (stored != null) {
+                cacheLocally(internalKey, value, stored);
+                if (oldDoc == null) {
+                    eventManager.queueAndDispatch(EventType.CREATED, key, value, this);
+                } else {
+                    eventManager.queueAndDispatch(EventType.UPDATED, key, value, old, this);
                 }
             }
+            return old;
         } catch (Exception e) {
-            throw new CacheException("Error during put of " + key, e);
+            throw exception("Error during getAndPut of " + key, e);
         }
-
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * Note that this implementation stores the entries asynchronously, keeping at most
+     * {@link CouchbaseConfiguration#getBulkConcurrency()} writes in flight, and dispatches the corresponding events
+     * once at the end. An entry that fails to be stored doesn't prevent the others from being stored: all failures
+     * are reported at the end in a single {@link CacheException} naming the keys that failed.
+     */
     @Override
-    public V getAndPut(K key, V value) {
-        //TODO expiry
+    public void putAll(Map<? extends K, ? extends V> map) {
         checkOpen();
-        checkTypes(key, value);
+        if (map == null) {
+            throw new NullPointerException("Map cannot be null");
+        }
+        List<Map.Entry<? extends K, ? extends V>> entries =
+                new ArrayList<Map.Entry<? extends K, ? extends V>>(map.size());
+        for (Map.Entry<? extends K, ? extends V> entry : map.entrySet()) {
+            checkTypes(entry.getKey(), entry.getValue());
+            entries.add(entry);
+        }
 
-        long start = configuration.isStatisticsEnabled() ? System.nanoTime() : 0;
+        final boolean fetchOld = eventManager.isOldValueRequired(EventType.UPDATED);
+        final boolean detectCreation = fetchOld || eventManager.hasListenerFor(EventType.CREATED)
+                || eventManager.hasListenerFor(EventType.UPDATED);
+        final Map<K, Throwable> failures = new ConcurrentHashMap<K, Throwable>();
 
-        String internalKey = toInternalKey(key);
-        SerializableDocument oldValue = bucket.get(internalKey, SerializableDocument.class);
+        Iterable<Tuple2<CouchbaseCacheEntryEvent<K, V>, Long>> stored = this
+                .bulk(entries, internalKeyOfEntry,
+                        new Func1<Map.Entry<? extends K, ? extends V>,
+                                Observable<Tuple2<CouchbaseCacheEntryEvent<K, V>, Long>>>() {
+                            @Override
+                            public Observable<Tuple2<CouchbaseCacheEntryEvent<K, V>, Long>> call(
+                                    final Map.Entry<? extends K, ? extends V> entry) {
+                                return putAsync(entry.getKey(), entry.getValue(), fetchOld, detectCreation)
+                                        .onErrorResumeNext(new Func1<Throwable,
+                                                Observable<Tuple2<CouchbaseCacheEntryEvent<K, V>, Long>>>() {
+                                            @Override
+                                            public Observable<Tuple2<CouchbaseCacheEntryEvent<K, V>, Long>> call(
+                                                    Throwable throwable) {
+                                                failures.put(entry.getKey(), throwable);
+                                                return Observable.empty();
+                                            }
+                                        });
+                            }
+                        })
+                .toBlocking()
+                .toIterable();
 
-        put(key, value);
-        if (configuration.isStatisticsEnabled()) {
-            statisticsMxBean.increaseCachePuts(1L);
-            if (oldValue == null) {
-                statisticsMxBean.increaseCacheMisses(1L);
-            } else {
-                statisticsMxBean.increaseCacheHits(1L);
+        try {
+            for (Tuple2<CouchbaseCacheEntryEvent<K, V>, Long> eventAndTime : stored) {
+                if (eventAndTime.value1() != null) {
+                    eventManager.queueEvent(eventAndTime.value1());
+                }
+                if (isStatisticsEnabled()) {
+                    statisticsMxBean.increaseCachePuts(1L);
+                    statisticsMxBean.addPutTimeNano(eventAndTime.value2());
+                }
             }
-            long time = System.nanoTime() - start;
-            statisticsMxBean.addGetTimeNano(time);
-            statisticsMxBean.addPutTimeNano(time);
+        } finally {
+            eventManager.dispatch();
         }
 
-        if (oldValue == null) {
-            eventManager.queueAndDispatch(EventType.CREATED, key, value, this);
-            return null;
-        } else {
-            V old = (V) oldValue.content();
-            eventManager.queueAndDispatch(EventType.UPDATED, key, value, old, this);
-            return old;
+        if (!failures.isEmpty()) {
+            throw new CacheException("Error during putAll of " + failures.size() + " keys: " + failures.keySet(),
+                    failures.values().iterator().next());
         }
     }
 
-    @Override
-    public void putAll(Map<? extends K, ? extends V> map) {
-        checkOpen();
-        for (Map.Entry<? extends K, ? extends V> entry : map.entrySet()) {
-            put(entry.getKey(), entry.getValue());
-        }
+    /**
+     * Asynchronously stores a value, the same way {@link #put(Object, Object)} does.
+     *
+     * @param key the key.
+     * @param value the value.
+     * @param fetchOld true to fetch the previous value first, for the UPDATED event.
+     * @param detectCreation true to attempt an insert first, in order to know which event to create.
+     * @return an Observable of a single tuple of the event to dispatch (null if no event was needed) and the time it
+     *  took to store the value in nanoseconds, or empty if the expiry prevented the storage.
+     */
+    private Observable<Tuple2<CouchbaseCacheEntryEvent<K, V>, Long>> putAsync(final K key, final V value,
+            final boolean fetchOld, final boolean detectCreation) {
+        return Observable.defer(new Func0<Observable<Tuple2<CouchbaseCacheEntryEvent<K, V>, Long>>>() {
+            @Override
+            public Observable<Tuple2<CouchbaseCacheEntryEvent<K, V>, Long>> call() {
+                final long start = System.nanoTime();
+                final String cbKey = toInternalKey(key);
+                final CacheDocument doc = createDocument(key, value, Operation.CREATION);
+                if (doc == null) {
+                    //expiry indicates no document to create
+                    return Observable.empty();
+                }
+
+                Observable<CouchbaseCacheEntryEvent<K, V>> events;
+                if (fetchOld) {
+                    events = bucket.async().get(cbKey, CacheDocument.class).flatMap(decoderFor(key))
+                            .singleOrDefault(null)
+                            .flatMap(new Func1<CacheDocument, Observable<CouchbaseCacheEntryEvent<K, V>>>() {
+                                @Override
+                                public Observable<CouchbaseCacheEntryEvent<K, V>> call(CacheDocument oldDoc) {
+                                    if (oldDoc == null) {
+                                        return bucket.async().upsert(doc)
+                                                .map(storedAs(EventType.CREATED, key, value, null));
+                                    }
+                                    return bucket.async().upsert(doc)
+                                            .map(storedAs(EventType.UPDATED, key, value, valueOf(oldDoc)));
+                                }
+                            });
+                } else if (detectCreation) {
+                    events = bucket.async().insert(doc)
+                            .map(storedAs(EventType.CREATED, key, value, null))
+                            .onErrorResumeNext(new Func1<Throwable, Observable<CouchbaseCacheEntryEvent<K, V>>>() {
+                                @Override
+                                public Observable<CouchbaseCacheEntryEvent<K, V>> call(Throwable throwable) {
+                                    if (throwable instanceof DocumentAlreadyExistsException) {
+                                        return bucket.async().upsert(doc)
+                                                .map(storedAs(EventType.UPDATED, key, value, null));
+                                    }
+                                    return Observable.error(throwable);
+                                }
+                            });
+                } else {
+                    events = bucket.async().upsert(doc)
+                            .map(storedAs(null, key, value, null));
+                }
+
+                return events.map(new Func1<CouchbaseCacheEntryEvent<K, V>,
+                        Tuple2<CouchbaseCacheEntryEvent<K, V>, Long>>() {
+                    @Override
+                    public Tuple2<CouchbaseCacheEntryEvent<K, V>, Long> call(CouchbaseCacheEntryEvent<K, V> event) {
+                        return Tuple.create(event, System.nanoTime() - start);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Creates a function that records a stored document locally and prepares the corresponding event.
+     *
+     * @param type the type of event to prepare, or null if no event is needed.
+     * @param key the key.
+     * @param value the value that was stored.
+     * @param oldValueOrNull the previous value, if known.
+     * @return the function, producing the event or null.
+     */
+    private Func1<CacheDocument, CouchbaseCacheEntryEvent<K, V>> storedAs(final EventType type, final K key,
+            final V value, final V oldValueOrNull) {
+        return new Func1<CacheDocument, CouchbaseCacheEntryEvent<K, V>>() {
+            @Override
+            public CouchbaseCacheEntryEvent<K, V> call(CacheDocument stored) {
+                cacheLocally(stored.id(), value, stored);
+                if (type == null) {
+                    return null;
+                }
+                return new CouchbaseCacheEntryEvent<K, V>(type, key, value, oldValueOrNull, CouchbaseCache.this);
+            }
+        };
     }
 
     @Override
@@ -473,18 +1482,21 @@ public class CouchbaseCache<K, V> implements Cache<K, V> {
         String internalKey = toInternalKey(key);
         long start = configuration.isStatisticsEnabled() ? System.nanoTime() : 0;
 
-        SerializableDocument oldDoc = bucket.get(internalKey, SerializableDocument.class);
+        //a document holding another compacted key also prevents the insertion
+        CacheDocument oldDoc = transcoder.decoded(bucket.get(internalKey, CacheDocument.class));
         if (oldDoc != null) {
+            rememberKey(internalKey);
             if (isStatisticsEnabled()) {
                 statisticsMxBean.increaseCacheHits(1L);
             }
             return false;
         } else {
             try {
-                SerializableDocument newDoc = createDocument(key, value, Operation.CREATION);
+                CacheDocument newDoc = createDocument(key, value, Operation.CREATION);
                 if (newDoc != null) {
                     try {
-                        bucket.insert(newDoc);
+                        CacheDocument inserted = bucket.insert(newDoc);
+                        cacheLocally(internalKey, value, inserted);
                         eventManager.queueAndDispatch(EventType.CREATED, key, value, this);
                         if (isStatisticsEnabled()) {
                             statisticsMxBean.increaseCacheMisses(1L);
@@ -522,7 +1534,7 @@ public class CouchbaseCache<K, V> implements Cache<K, V> {
         long start = configuration.isStatisticsEnabled() ? System.nanoTime() : 0;
 
         try {
-            SerializableDocument oldDoc = bucket.get(internalKey, SerializableDocument.class);
+            CacheDocument oldDoc = decoded(key, bucket.get(internalKey, CacheDocument.class));
             if (oldDoc == null) {
                 return false;
             } else {
@@ -531,7 +1543,8 @@ public class CouchbaseCache<K, V> implements Cache<K, V> {
                 } catch (DocumentDoesNotExistException e) {
                     //we consider it a success (another client competed to remove)
                 }
-                eventManager.queueAndDispatch(EventType.REMOVED, key, (V) oldDoc.content(), this);
+                evictLocally(internalKey);
+                eventManager.queueAndDispatch(EventType.REMOVED, key, valueOf(oldDoc), this);
                 if (isStatisticsEnabled()) {
                     statisticsMxBean.increaseCacheRemovals(1L);
                     statisticsMxBean.addRemoveTimeNano(System.nanoTime() - start);
@@ -543,6 +1556,76 @@ public class CouchbaseCache<K, V> implements Cache<K, V> {
         }
     }
 
+    /**
+     * Asynchronous version of {@link #remove(Object)}. Listeners are notified on the
+     * {@link Schedulers#io() io scheduler}, before the returned Observable completes.
+     *
+     * @param key the key to remove.
+     * @return an Observable of a single boolean, true if the key was removed, false if it wasn't in the cache.
+     * @see AsyncCouchbaseCache#removeAsync(Object)
+     */
+    Observable<Boolean> removeAsync(final K key) {
+        checkOpen();
+        if (key == null) {
+            throw new NullPointerException("Removed key cannot be null");
+        }
+        Observable<Tuple3<K, V, Long>> removed = removeAsync(key, true);
+        if (eventManager.hasListenerFor(EventType.REMOVED)) {
+            //listeners may block, they must not run on the SDK's threads
+            removed = removed.observeOn(Schedulers.io());
+        }
+        return removed
+                .map(new Func1<Tuple3<K, V, Long>, Boolean>() {
+                    @Override
+                    public Boolean call(Tuple3<K, V, Long> keyValueAndTime) {
+                        eventManager.queueAndDispatch(EventType.REMOVED, key, keyValueAndTime.value2(),
+                                CouchbaseCache.this);
+                        if (isStatisticsEnabled()) {
+                            statisticsMxBean.increaseCacheRemovals(1L);
+                            statisticsMxBean.addRemoveTimeNano(keyValueAndTime.value3());
+                        }
+                        return true;
+                    }
+                })
+                .defaultIfEmpty(false)
+                .onErrorResumeNext(this.<Boolean>errorAs("Couldn't remove " + key));
+    }
+
+    /**
+     * Streaming version of {@link #removeAll(Set)}. Keys are requested from the source as the removed keys are
+     * requested downstream, with at most {@link CouchbaseConfiguration#getBulkConcurrency()} removals in flight.
+     * Each key is removed as in {@link #removeAsync(Object)}, its event being dispatched as soon as it is removed.
+     * The first failure terminates the stream.
+     *
+     * @param keys the keys to remove.
+     * @return an Observable of the keys that were removed (ie. that were in the cache), in no particular order.
+     * @see AsyncCouchbaseCache#removeAllAsync(Observable)
+     */
+    Observable<K> removeAllAsync(Observable<? extends K> keys) {
+        checkOpen();
+        if (keys == null) {
+            throw new NullPointerException("Keys cannot be null");
+        }
+        return Observable.merge(keys.map(new Func1<K, Observable<K>>() {
+            @Override
+            public Observable<K> call(final K key) {
+                return removeAsync(key)
+                        .filter(new Func1<Boolean, Boolean>() {
+                            @Override
+                            public Boolean call(Boolean removed) {
+                                return removed;
+                            }
+                        })
+                        .map(new Func1<Boolean, K>() {
+                            @Override
+                            public K call(Boolean removed) {
+                                return key;
+                            }
+                        });
+            }
+        }), configuration.getBulkConcurrency());
+    }
+
     @Override
     public boolean remove(K key, V oldValue) {
         checkOpen();
@@ -551,18 +1634,20 @@ public class CouchbaseCache<K, V> implements Cache<K, V> {
 
         boolean result;
         try {
-            SerializableDocument currentDoc = bucket.get(cbKey, SerializableDocument.class);
-            V currentValue = currentDoc == null ? null : (V) currentDoc.content();
+            CacheDocument currentDoc = decoded(key, bucket.get(cbKey, CacheDocument.class));
+            V currentValue = currentDoc == null ? null : valueOf(currentDoc);
 
             if (currentValue == null || !currentValue.equals(oldValue)) {
                 result = false;
             } else {
                 try {
                     bucket.remove(currentDoc);
+                    evictLocally(cbKey);
                     eventManager.queueAndDispatch(EventType.REMOVED, key, currentValue, this);
                     result = true;
                 } catch (DocumentDoesNotExistException e) {
                     //another client competed to remove, still considered a success
+                    evictLocally(cbKey);
                     eventManager.queueAndDispatch(EventType.REMOVED, key, currentValue, this);
                     result = true;
                 } catch (CASMismatchException e) {
@@ -599,11 +1684,11 @@ public class CouchbaseCache<K, V> implements Cache<K, V> {
 
         //TODO expiry, better happen-before in case of CAS mismatch
         try {
-            SerializableDocument currentDoc = bucket.get(cbKey, SerializableDocument.class);
+            CacheDocument currentDoc = decoded(key, bucket.get(cbKey, CacheDocument.class));
             V currentValue = null;
 
             if (currentDoc != null) {
-                currentValue = (V) currentDoc.content();
+                currentValue = valueOf(currentDoc);
                 try {
                     //still remove and notify with known value even if cas mismatch
                     bucket.remove(cbKey);
@@ -611,6 +1696,7 @@ public class CouchbaseCache<K, V> implements Cache<K, V> {
                 } catch (DocumentDoesNotExistException e) {
                     currentValue = null;
                 }
+                evictLocally(cbKey);
             }
 
             if (configuration.isStatisticsEnabled()) {
@@ -642,17 +1728,13 @@ public class CouchbaseCache<K, V> implements Cache<K, V> {
         }
         long start = configuration.isStatisticsEnabled() ? System.nanoTime() : 0L;
 
-        //TODO expiry
         try {
             boolean result;
-            SerializableDocument currentDoc = bucket.get(cbKey, SerializableDocument.class);
-            V currentValue = currentDoc == null ? null : (V) currentDoc.content();
+            CacheDocument currentDoc = decoded(key, bucket.get(cbKey, CacheDocument.class));
+            V currentValue = currentDoc == null ? null : valueOf(currentDoc);
             if (currentValue != null && currentValue.equals(oldValue)) {
                 try {
-                    SerializableDocument newDoc = SerializableDocument.create(
-                            cbKey, toInternalValue(newValue), currentDoc.cas());
-                    bucket.replace(newDoc);
-                    eventManager.queueAndDispatch(EventType.UPDATED, key, newValue, currentValue, this);
+                    internalReplace(key, newValue, currentValue, cbKey, currentDoc);
                     result = true;
                 } catch (CASMismatchException e) {
                     result = false;
@@ -684,9 +1766,20 @@ public class CouchbaseCache<K, V> implements Cache<K, V> {
         }
     }
 
-    private void internalReplace(K key, V value, V oldValue, String cbKey, Serializable internalValue, long cas) {
-        SerializableDocument newDoc = SerializableDocument.create(cbKey, internalValue, cas);
-        bucket.replace(newDoc);
+    /**
+     * Replaces a document guarded by its CAS, applying the UPDATE expiry as described in
+     * {@link #replacementOf(Object, String, Object, CacheDocument)}, and notifies the update.
+     */
+    private void internalReplace(K key, V value, V oldValue, String cbKey, CacheDocument oldDoc) {
+        CacheDocument newDoc = replacementOf(key, cbKey, value, oldDoc);
+        if (newDoc == null) {
+            //expiry indicates that the new value expires right away
+            bucket.remove(oldDoc);
+            evictLocally(cbKey);
+            return;
+        }
+        CacheDocument replaced = bucket.replace(newDoc);
+        cacheLocally(cbKey, value, replaced);
         eventManager.queueAndDispatch(EventType.UPDATED, key, value, oldValue, this);
     }
 
@@ -694,28 +1787,28 @@ public class CouchbaseCache<K, V> implements Cache<K, V> {
     public boolean replace(K key, V value) {
         checkOpen();
         String cbKey = toInternalKey(key);
-        Serializable cbValue = toInternalValue(value);
+        //reject values that cannot be stored before reading the current one
+        toInternalValue(value);
         long start = configuration.isStatisticsEnabled() ? System.nanoTime() : 0L;
 
-        //TODO expiry
         try {
             boolean result;
-            SerializableDocument oldDoc = bucket.get(cbKey, SerializableDocument.class);
-            V oldValue = oldDoc == null ? null : (V) oldDoc.content();
+            CacheDocument oldDoc = decoded(key, bucket.get(cbKey, CacheDocument.class));
+            V oldValue = oldDoc == null ? null : valueOf(oldDoc);
             if (oldValue == null) {
                 result = false;
             } else {
                 try {
-                    internalReplace(key, value, oldValue, cbKey, cbValue, oldDoc.cas());
+                    internalReplace(key, value, oldValue, cbKey, oldDoc);
                     result = true;
                 } catch (CASMismatchException e) {
                     //retry to get the latest value and remove it, this time locking
-                    SerializableDocument latest = bucket.getAndLock(cbKey, 1, SerializableDocument.class);
-                    V latestValue = latest == null ? null : (V) latest.content();
+                    CacheDocument latest = decoded(key, bucket.getAndLock(cbKey, 1, CacheDocument.class));
+                    V latestValue = latest == null ? null : valueOf(latest);
                     if (latest == null) {
                         result = false;
                     } else {
-                        internalReplace(key, value, latestValue, cbKey, cbValue, latest.cas());
+                        internalReplace(key, value, latestValue, cbKey, latest);
                         result = true;
                     }
                 } catch (DocumentDoesNotExistException e) {
@@ -742,31 +1835,160 @@ public class CouchbaseCache<K, V> implements Cache<K, V> {
         }
     }
 
+    /**
+     * Asynchronous version of {@link #replace(Object, Object)}. Listeners are notified on the
+     * {@link Schedulers#io() io scheduler}, before the returned Observable completes.
+     *
+     * The UPDATE expiry is applied to the new value. If it doesn't change the expiry, the remaining TTL is kept when
+     * the current value records it (see {@link TimedValue}), otherwise the new value doesn't expire. If it expires
+     * the entry right away, the current value is removed instead.
+     *
+     * @param key the key.
+     * @param value the new value.
+     * @return an Observable of a single boolean, true if the value was replaced, false if the key wasn't in the cache.
+     * @see AsyncCouchbaseCache#replaceAsync(Object, Object)
+     */
+    Observable<Boolean> replaceAsync(final K key, final V value) {
+        checkOpen();
+        final String cbKey = toInternalKey(key);
+        //reject values that cannot be stored upon call rather than upon subscription
+        toInternalValue(value);
+
+        return Observable.defer(new Func0<Observable<Boolean>>() {
+            @Override
+            public Observable<Boolean> call() {
+                final long start = isStatisticsEnabled() ? System.nanoTime() : 0L;
+                return bucket.async().get(cbKey, CacheDocument.class).flatMap(decoderFor(key))
+                        .flatMap(new Func1<CacheDocument, Observable<Boolean>>() {
+                            @Override
+                            public Observable<Boolean> call(CacheDocument oldDoc) {
+                                return internalReplaceAsync(key, value, cbKey, oldDoc);
+                            }
+                        })
+                        .onErrorResumeNext(new Func1<Throwable, Observable<Boolean>>() {
+                            @Override
+                            public Observable<Boolean> call(Throwable throwable) {
+                                if (throwable instanceof CASMismatchException) {
+                                    //retry to get the latest value and replace it, this time locking
+                                    return bucket.async().getAndLock(cbKey, 1, CacheDocument.class)
+                                            .flatMap(decoderFor(key))
+                                            .flatMap(new Func1<CacheDocument, Observable<Boolean>>() {
+                                                @Override
+                                                public Observable<Boolean> call(CacheDocument latest) {
+                                                    return internalReplaceAsync(key, value, cbKey, latest);
+                                                }
+                                            });
+                                } else if (throwable instanceof DocumentDoesNotExistException) {
+                                    return Observable.empty();
+                                }
+                                return Observable.error(throwable);
+                            }
+                        })
+                        .defaultIfEmpty(false)
+                        .map(new Func1<Boolean, Boolean>() {
+                            @Override
+                            public Boolean call(Boolean result) {
+                                if (isStatisticsEnabled()) {
+                                    long time = System.nanoTime() - start;
+                                    statisticsMxBean.addGetTimeNano(time);
+                                    if (result) {
+                                        statisticsMxBean.addPutTimeNano(time);
+                                        statisticsMxBean.increaseCachePuts(1L);
+                                        statisticsMxBean.increaseCacheHits(1L);
+                                    } else {
+                                        statisticsMxBean.increaseCacheMisses(1L);
+                                    }
+                                }
+                                return result;
+                            }
+                        });
+            }
+        }).onErrorResumeNext(this.<Boolean>errorAs("Couldn't replace " + key));
+    }
+
+    private Observable<Boolean> internalReplaceAsync(final K key, final V value, final String cbKey,
+            CacheDocument oldDoc) {
+        final V oldValue = valueOf(oldDoc);
+        CacheDocument newDoc = replacementOf(key, cbKey, value, oldDoc);
+        if (newDoc == null) {
+            //expiry indicates that the new value expires right away
+            return bucket.async().remove(oldDoc)
+                    .map(new Func1<CacheDocument, Boolean>() {
+                        @Override
+                        public Boolean call(CacheDocument removed) {
+                            evictLocally(cbKey);
+                            return true;
+                        }
+                    });
+        }
+        Observable<CacheDocument> replaced = bucket.async().replace(newDoc);
+        if (eventManager.hasListenerFor(EventType.UPDATED)) {
+            //listeners may block, they must not run on the SDK's threads
+            replaced = replaced.observeOn(Schedulers.io());
+        }
+        return replaced
+                .map(new Func1<CacheDocument, Boolean>() {
+                    @Override
+                    public Boolean call(CacheDocument replaced) {
+                        cacheLocally(cbKey, value, replaced);
+                        eventManager.queueAndDispatch(EventType.UPDATED, key, value, oldValue, CouchbaseCache.this);
+                        return true;
+                    }
+                });
+    }
+
+    /**
+     * Creates the document replacing an existing one, applying the UPDATE expiry. If the expiry doesn't change, the
+     * remaining TTL of the existing document is kept when its {@link TimedValue} records it.
+     *
+     * @param key the key.
+     * @param cbKey the internal form of the key.
+     * @param value the new value.
+     * @param oldDoc the document to replace.
+     * @return the new document, guarded by the CAS of the old one, or null if the expiry indicates that the entry
+     *  expires right away.
+     */
+    private CacheDocument replacementOf(K key, String cbKey, V value, CacheDocument oldDoc) {
+        int ttlOrCode = getDurationCode(Operation.UPDATE);
+        if (ttlOrCode == TTL_EXPIRED) {
+            return null;
+        }
+        if (ttlOrCode == TTL_DONT_CHANGE && oldDoc.content() instanceof TimedValue) {
+            TimedValue old = (TimedValue) oldDoc.content();
+            long remainingMillis = old.expiresMillis() - System.currentTimeMillis();
+            if (old.ttlSeconds() > 0 && remainingMillis > 0L) {
+                TimedValue timedValue = new TimedValue(toInternalValue(value), old.createdMillis(), old.ttlSeconds(),
+                        old.loadCostNanos());
+                return newDocument(key, cbKey, (int) ((remainingMillis + 999L) / 1000L), timedValue, oldDoc.cas());
+            }
+        }
+        int ttl = ttlOrCode > 0 ? ttlOrCode : 0;
+        return newDocument(key, cbKey, ttl, toInternalValue(value, ttl, 0L), oldDoc.cas());
+    }
+
     @Override
     public V getAndReplace(K key, V value) {
         checkOpen();
         String cbKey = toInternalKey(key);
 
         long start = configuration.isStatisticsEnabled() ? System.nanoTime() : 0;
-        //TODO expiry
 
         try {
-            SerializableDocument oldDoc = bucket.get(cbKey, SerializableDocument.class);
-            V oldValue = oldDoc == null ? null : (V) oldDoc.content();
+            CacheDocument oldDoc = decoded(key, bucket.get(cbKey, CacheDocument.class));
+            V oldValue = oldDoc == null ? null : valueOf(oldDoc);
             if (oldValue != null) {
-                Serializable cbValue = toInternalValue(value);
                 try {
-                    internalReplace(key, value, oldValue, cbKey, cbValue, oldDoc.cas());
+                    internalReplace(key, value, oldValue, cbKey, oldDoc);
                 } catch (DocumentDoesNotExistException e) {
                     oldValue = null;
                 } catch (CASMismatchException e) {
                     //retry, this time locking
-                    SerializableDocument latestDoc = bucket.getAndLock(cbKey, 1, SerializableDocument.class);
+                    CacheDocument latestDoc = decoded(key, bucket.getAndLock(cbKey, 1, CacheDocument.class));
                     if (latestDoc == null) {
                         oldValue = null;
                     } else {
-                        V latestValue = (V) latestDoc.content();
-                        internalReplace(key, value, latestValue, cbKey, cbValue, latestDoc.cas());
+                        V latestValue = valueOf(latestDoc);
+                        internalReplace(key, value, latestValue, cbKey, latestDoc);
                         oldValue = latestValue;
                     }
                 }
@@ -791,58 +2013,440 @@ public class CouchbaseCache<K, V> implements Cache<K, V> {
     }
 
     @Override
-    public void removeAll(Set<? extends K> keys) {
+    public void removeAll(Set<? extends K> keys) {
+        if (keys == null) {
+            throw new NullPointerException("Set of keys cannot be null");
+        }
+        checkOpen();
+        for (K key : keys) {
+            if (key == null) {
+                throw new NullPointerException("Removed keys cannot include a null key");
+            }
+        }
+
+        //the old value is only needed for the REMOVED events
+        final boolean fetchOld = eventManager.hasListenerFor(EventType.REMOVED);
+        final Map<K, Throwable> failures = new ConcurrentHashMap<K, Throwable>();
+
+        Iterable<Tuple3<K, V, Long>> removed = this
+                .bulk(keys, internalKeyOfKey,
+                        new Func1<K, Observable<Tuple3<K, V, Long>>>() {
+                            @Override
+                            public Observable<Tuple3<K, V, Long>> call(final K key) {
+                                return removeAsync(key, fetchOld)
+                                        .onErrorResumeNext(new Func1<Throwable, Observable<Tuple3<K, V, Long>>>() {
+                                            @Override
+                                            public Observable<Tuple3<K, V, Long>> call(Throwable throwable) {
+                                                failures.put(key, throwable);
+                                                return Observable.empty();
+                                            }
+                                        });
+                            }
+                        })
+                .toBlocking()
+                .toIterable();
+
+        long removedCount = 0L;
+        long removeTime = 0L;
+        try {
+            for (Tuple3<K, V, Long> keyValueAndTime : removed) {
+                removedCount++;
+                removeTime += keyValueAndTime.value3();
+                if (fetchOld) {
+                    eventManager.queueEvent(new CouchbaseCacheEntryEvent<K, V>(EventType.REMOVED,
+                            keyValueAndTime.value1(), keyValueAndTime.value2(), this));
+                }
+            }
+        } finally {
+            eventManager.dispatch();
+            if (isStatisticsEnabled() && removedCount > 0L) {
+                statisticsMxBean.increaseCacheRemovals(removedCount);
+                statisticsMxBean.addRemoveTimeNano(removeTime);
+            }
+        }
+
+        if (!failures.isEmpty()) {
+            throw new CacheException("Error during removeAll of " + failures.size() + " keys: " + failures.keySet(),
+                    failures.values().iterator().next());
+        }
+    }
+
+    /**
+     * Asynchronously removes a key, the same way {@link #remove(Object)} does.
+     *
+     * @param key the key to remove.
+     * @param fetchOld true to fetch the removed value first, for the REMOVED event. Documents are always fetched
+     *  first if keys are compacted, so that a document holding another key isn't removed.
+     * @return an Observable of a single tuple of the key, the removed value (null if not fetched) and the time it
+     *  took to remove it in nanoseconds, or empty if the key wasn't in the cache.
+     */
+    private Observable<Tuple3<K, V, Long>> removeAsync(final K key, final boolean fetchOld) {
+        return Observable.defer(new Func0<Observable<Tuple3<K, V, Long>>>() {
+            @Override
+            public Observable<Tuple3<K, V, Long>> call() {
+                final long start = System.nanoTime();
+                final String cbKey = toInternalKey(key);
+                if (!fetchOld && keyCompactor == null) {
+                    return bucket.async().remove(cbKey)
+                            .map(removedAs(key, null, start))
+                            .onErrorResumeNext(new Func1<Throwable, Observable<Tuple3<K, V, Long>>>() {
+                                @Override
+                                public Observable<Tuple3<K, V, Long>> call(Throwable throwable) {
+                                    if (throwable instanceof DocumentDoesNotExistException) {
+                                        return Observable.empty();
+                                    }
+                                    return Observable.error(throwable);
+                                }
+                            });
+                }
+                return bucket.async().get(cbKey, CacheDocument.class).flatMap(decoderFor(key))
+                        .flatMap(new Func1<CacheDocument, Observable<Tuple3<K, V, Long>>>() {
+                            @Override
+                            public Observable<Tuple3<K, V, Long>> call(CacheDocument oldDoc) {
+                                final Func1<Object, Tuple3<K, V, Long>> removed =
+                                        removedAs(key, valueOf(oldDoc), start);
+                                //remove ignoring cas
+                                return bucket.async().remove(cbKey)
+                                        .map(removed)
+                                        .onErrorResumeNext(new Func1<Throwable, Observable<Tuple3<K, V, Long>>>() {
+                                            @Override
+                                            public Observable<Tuple3<K, V, Long>> call(Throwable throwable) {
+                                                if (throwable instanceof DocumentDoesNotExistException) {
+                                                    //we consider it a success (another client competed to remove)
+                                                    return Observable.just(removed.call(null));
+                                                }
+                                                return Observable.error(throwable);
+                                            }
+                                        });
+                            }
+                        });
+            }
+        });
+    }
+
+    /**
+     * Creates a function that forgets a removed key locally and describes the removal.
+     *
+     * @param key the removed key.
+     * @param oldValueOrNull the removed value, if known.
+     * @param start the time at which the removal started, in nanoseconds.
+     * @return the function, producing a tuple of the key, the removed value and the time the removal took.
+     */
+    private Func1<Object, Tuple3<K, V, Long>> removedAs(final K key, final V oldValueOrNull, final long start) {
+        return new Func1<Object, Tuple3<K, V, Long>>() {
+            @Override
+            public Tuple3<K, V, Long> call(Object removedDoc) {
+                evictLocally(toInternalKey(key));
+                return Tuple.create(key, oldValueOrNull, System.nanoTime() - start);
+            }
+        };
+    }
+
+    @Override
+    public void removeAll() {
+        checkOpen();
+        long start = configuration.isStatisticsEnabled() ? System.nanoTime() : 0;
+
+        //documents are only fetched (and their values only decoded if read) when there are listeners to notify
+        final boolean notify = eventManager.hasListenerFor(EventType.REMOVED);
+        final AtomicLong removedCount = new AtomicLong(0L);
+        internalClear(notify, new Action1<LazyCacheDocument>() {
+            @Override
+            public void call(LazyCacheDocument doc) {
+                removedCount.incrementAndGet();
+                if (notify) {
+                    K key = fromInternalKey(doc.internalKey());
+                    eventManager.queueEvent(CouchbaseCacheEntryEvent.<K, V>lazy(EventType.REMOVED, key,
+                            doc.content(), null, CouchbaseCache.this));
+                }
+            }
+        });
+        eventManager.dispatch();
+
+        if (configuration.isStatisticsEnabled() && removedCount.get() > 0L) {
+            statisticsMxBean.increaseCacheRemovals(removedCount.get());
+            //approximate remove time as an average
+            statisticsMxBean.addRemoveTimeNano((System.nanoTime() - start) / removedCount.get());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Note that this implementation applies the processor to the value that was fetched, then commits its changes
+     * with a single CAS-guarded replace, insert or remove. If the entry was concurrently modified, the whole processing
+     * is retried (up to {@value #INVOKE_MAX_ATTEMPTS} times, with an exponential backoff), so the processor must be
+     * free of side effects outside of the entry.
+     */
+    @Override
+    public <T> T invoke(K key, EntryProcessor<K, V, T> entryProcessor,
+            Object... arguments) throws EntryProcessorException {
+        checkOpen();
+        if (key == null) {
+            throw new NullPointerException("Key cannot be null");
+        }
+        if (entryProcessor == null) {
+            throw new NullPointerException("EntryProcessor cannot be null");
+        }
+
+        try {
+            return processAsync(key, entryProcessor, arguments, true, 1).toBlocking().single();
+        } catch (Exception e) {
+            throw exception("Couldn't process " + key, e);
+        }
+    }
+
+    /**
+     * Asynchronous version of {@link #invoke(Object, EntryProcessor, Object...)}. The entry processor is executed on
+     * the {@link Schedulers#io() io scheduler}.
+     *
+     * @param key the key of the entry to process.
+     * @param entryProcessor the processor to apply.
+     * @param arguments additional arguments to pass to the processor.
+     * @return an Observable of the result of the processing, empty if the processor returned null.
+     * @see AsyncCouchbaseCache#invokeAsync(Object, EntryProcessor, Object...)
+     */
+    <T> Observable<T> invokeAsync(final K key, final EntryProcessor<K, V, T> entryProcessor,
+            final Object... arguments) {
+        checkOpen();
+        if (key == null) {
+            throw new NullPointerException("Key cannot be null");
+        }
+        if (entryProcessor == null) {
+            throw new NullPointerException("EntryProcessor cannot be null");
+        }
+        return processAsync(key, entryProcessor, arguments, true, 1)
+                .filter(new Func1<T, Boolean>() {
+                    @Override
+                    public Boolean call(T result) {
+                        return result != null;
+                    }
+                })
+                .onErrorResumeNext(this.<T>errorAs("Couldn't process " + key));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Note that this implementation processes the keys concurrently, with at most
+     * {@link CouchbaseConfiguration#getBulkConcurrency()} keys in flight, each one as in
+     * {@link #invoke(Object, EntryProcessor, Object...)}. The events are dispatched once all keys are processed.
+     */
+    @Override
+    public <T> Map<K, EntryProcessorResult<T>> invokeAll(Set<? extends K> keys,
+            final EntryProcessor<K, V, T> entryProcessor, final Object... arguments) {
+        checkOpen();
         if (keys == null) {
             throw new NullPointerException("Set of keys cannot be null");
         }
-        checkOpen();
+        if (entryProcessor == null) {
+            throw new NullPointerException("EntryProcessor cannot be null");
+        }
         for (K key : keys) {
-            remove(key);
+            if (key == null) {
+                throw new NullPointerException("Keys cannot include a null key");
+            }
         }
-    }
 
-    @Override
-    public void removeAll() {
-        checkOpen();
-        long start = configuration.isStatisticsEnabled() ? System.nanoTime() : 0;
+        Iterable<Tuple2<K, EntryProcessorResult<T>>> processed = this
+                .bulk(keys, internalKeyOfKey,
+                        new Func1<K, Observable<Tuple2<K, EntryProcessorResult<T>>>>() {
+                            @Override
+                            public Observable<Tuple2<K, EntryProcessorResult<T>>> call(final K key) {
+                                return processAsync(key, entryProcessor, arguments, false, 1)
+                                        .map(new Func1<T, Tuple2<K, EntryProcessorResult<T>>>() {
+                                            @Override
+                                            public Tuple2<K, EntryProcessorResult<T>> call(T result) {
+                                                return Tuple.<K, EntryProcessorResult<T>>create(key,
+                                                        result == null ? null : ProcessorResult.success(result));
+                                            }
+                                        })
+                                        .onErrorResumeNext(
+                                                new Func1<Throwable, Observable<Tuple2<K, EntryProcessorResult<T>>>>() {
+                                            @Override
+                                            public Observable<Tuple2<K, EntryProcessorResult<T>>> call(
+                                                    Throwable throwable) {
+                                                return Observable.just(Tuple.<K, EntryProcessorResult<T>>create(key,
+                                                        ProcessorResult.<T>failure(throwable)));
+                                            }
+                                        });
+                            }
+                        })
+                .toBlocking()
+                .toIterable();
 
-        final AtomicLong removedCount = new AtomicLong(0L);
-        internalClear(new Action1<SerializableDocument>() {
-            @Override
-            public void call(SerializableDocument serializableDocument) {
-                K key = fromInternalKey(serializableDocument.id());
-                V value = (V) serializableDocument.content();
-                eventManager.queueEvent(new CouchbaseCacheEntryEvent<K, V>(EventType.REMOVED, key, value,
-                        CouchbaseCache.this));
+        Map<K, EntryProcessorResult<T>> results = new HashMap<K, EntryProcessorResult<T>>(keys.size());
+        try {
+            for (Tuple2<K, EntryProcessorResult<T>> keyAndResult : processed) {
+                //no result nor exception means no entry in the map
+                if (keyAndResult.value2() != null) {
+                    results.put(keyAndResult.value1(), keyAndResult.value2());
+                }
             }
-        });
-        eventManager.dispatch();
-
-        if (configuration.isStatisticsEnabled() && removedCount.get() > 0L) {
-            statisticsMxBean.increaseCacheRemovals(removedCount.get());
-            //approximate remove time as an average
-            statisticsMxBean.addRemoveTimeNano((System.nanoTime() - start) / removedCount.get());
+        } finally {
+            eventManager.dispatch();
         }
+        return results;
     }
 
-    @Override
-    public <T> T invoke(K key, EntryProcessor<K, V, T> entryProcessor,
-            Object... arguments) throws EntryProcessorException {
-        checkOpen();
-        //TODO stats: puts if setValue called, removals if remove called, hits and misses
-        //TODO dispatch correct events
-
-        throw new UnsupportedOperationException();
+    /**
+     * Applies an {@link EntryProcessor} to the current value of a key and commits its changes, guarded by the CAS of
+     * the document that was read. On a concurrent modification, the processing is retried after a backoff.
+     *
+     * @param key the key of the entry to process.
+     * @param entryProcessor the processor to apply.
+     * @param arguments additional arguments to pass to the processor.
+     * @param dispatch true to dispatch the event of the processing immediately, false to only queue it.
+     * @param attempt the number of this attempt, starting at 1.
+     * @return an Observable of a single item, the result of the processor (which can be null).
+     */
+    private <T> Observable<T> processAsync(final K key, final EntryProcessor<K, V, T> entryProcessor,
+            final Object[] arguments, final boolean dispatch, final int attempt) {
+        final String cbKey = toInternalKey(key);
+        return Observable.defer(new Func0<Observable<T>>() {
+            @Override
+            public Observable<T> call() {
+                final long start = System.nanoTime();
+                return bucket.async().get(cbKey, CacheDocument.class).map(decoder)
+                        .singleOrDefault(null)
+                        //the processor (and the loader) may block, they must not run on the SDK's threads
+                        .observeOn(Schedulers.io())
+                        .flatMap(new Func1<CacheDocument, Observable<T>>() {
+                            @Override
+                            public Observable<T> call(CacheDocument current) {
+                                final long currentCas = current == null ? 0L : current.cas();
+                                final CacheDocument doc = verified(key, current);
+                                CacheLoader<K, V> loader = configuration.isReadThrough() ? cacheLoader : null;
+                                final CouchbaseMutableEntry<K, V> entry = new CouchbaseMutableEntry<K, V>(key,
+                                        doc == null ? null : valueOf(doc), loader);
+                                final T result;
+                                try {
+                                    result = entryProcessor.process(entry, arguments);
+                                } catch (EntryProcessorException e) {
+                                    return Observable.error(e);
+                                } catch (Exception e) {
+                                    return Observable.error(new EntryProcessorException(e));
+                                }
+                                return commitAsync(entry, doc, currentCas)
+                                        .map(new Func1<CouchbaseCacheEntryEvent<K, V>, T>() {
+                                            @Override
+                                            public T call(CouchbaseCacheEntryEvent<K, V> event) {
+                                                onProcessed(entry, event, System.nanoTime() - start, dispatch);
+                                                return result;
+                                            }
+                                        });
+                            }
+                        });
+            }
+        }).onErrorResumeNext(new Func1<Throwable, Observable<T>>() {
+            @Override
+            public Observable<T> call(Throwable throwable) {
+                boolean conflict = throwable instanceof CASMismatchException
+                        || throwable instanceof DocumentAlreadyExistsException
+                        || throwable instanceof DocumentDoesNotExistException;
+                if (!conflict) {
+                    return Observable.error(throwable);
+                } else if (attempt >= INVOKE_MAX_ATTEMPTS) {
+                    return Observable.error(new EntryProcessorException("Couldn't process " + key + ", entry was "
+                            + "concurrently modified during " + attempt + " attempts", throwable));
+                }
+                long backoff = Math.min(INVOKE_MAX_BACKOFF_MILLIS, INVOKE_BACKOFF_MILLIS << (attempt - 1));
+                return Observable.timer(backoff, TimeUnit.MILLISECONDS)
+                        .flatMap(new Func1<Long, Observable<T>>() {
+                            @Override
+                            public Observable<T> call(Long tick) {
+                                return processAsync(key, entryProcessor, arguments, dispatch, attempt + 1);
+                            }
+                        });
+            }
+        });
     }
 
-    @Override
-    public <T> Map<K, EntryProcessorResult<T>> invokeAll(Set<? extends K> keys, EntryProcessor<K, V, T> entryProcessor,
-            Object... arguments) {
-        checkOpen();
-        //TODO stats, per key: puts if setValue called, removals if remove called, hits and misses
-        //TODO dispatch correct events
+    /**
+     * Commits the changes made to an entry by an {@link EntryProcessor}, guarded by the CAS of the document it was
+     * built from.
+     *
+     * @param entry the processed entry.
+     * @param doc the document the entry was built from, or null if there was none.
+     * @param currentCas the CAS of the document stored under the id of the entry, which differs from the one the
+     *  entry was built from if it holds another compacted key, or 0 if there was none.
+     * @return an Observable of a single item, the event corresponding to the change or null if there was none.
+     */
+    private Observable<CouchbaseCacheEntryEvent<K, V>> commitAsync(final CouchbaseMutableEntry<K, V> entry,
+            CacheDocument doc, long currentCas) {
+        final K key = entry.getKey();
+        switch (entry.state()) {
+            case LOADED:
+            case SET:
+                if (doc == null) {
+                    CacheDocument newDoc = createDocument(key, entry.value(), Operation.CREATION, currentCas);
+                    if (newDoc == null) {
+                        //expiry indicates no document to create
+                        return Observable.<CouchbaseCacheEntryEvent<K, V>>just(null);
+                    }
+                    Observable<CacheDocument> created = currentCas == 0L
+                            ? bucket.async().insert(newDoc)
+                            : bucket.async().replace(newDoc);
+                    return created.map(storedAs(EventType.CREATED, key, entry.value(), null));
+                }
+                final String cbKey = doc.id();
+                CacheDocument updateDoc = replacementOf(key, cbKey, entry.value(), doc);
+                if (updateDoc == null) {
+                    //expiry indicates that the new value expires right away
+                    return bucket.async().remove(doc)
+                            .map(new Func1<CacheDocument, CouchbaseCacheEntryEvent<K, V>>() {
+                                @Override
+                                public CouchbaseCacheEntryEvent<K, V> call(CacheDocument removed) {
+                                    evictLocally(cbKey);
+                                    return null;
+                                }
+                            });
+                }
+                return bucket.async().replace(updateDoc)
+                        .map(storedAs(EventType.UPDATED, key, entry.value(), entry.originalValue()));
+            case REMOVED:
+                if (doc == null) {
+                    return Observable.<CouchbaseCacheEntryEvent<K, V>>just(null);
+                }
+                return bucket.async().remove(doc)
+                        .map(new Func1<CacheDocument, CouchbaseCacheEntryEvent<K, V>>() {
+                            @Override
+                            public CouchbaseCacheEntryEvent<K, V> call(CacheDocument removed) {
+                                evictLocally(removed.id());
+                                return new CouchbaseCacheEntryEvent<K, V>(EventType.REMOVED, key,
+                                        entry.originalValue(), CouchbaseCache.this);
+                            }
+                        });
+            default:
+                return Observable.<CouchbaseCacheEntryEvent<K, V>>just(null);
+        }
+    }
 
-        throw new UnsupportedOperationException();
+    private void onProcessed(CouchbaseMutableEntry<K, V> entry, CouchbaseCacheEntryEvent<K, V> event, long time,
+            boolean dispatch) {
+        if (isStatisticsEnabled()) {
+            if (entry.isAccessed()) {
+                if (entry.originalValue() != null) {
+                    statisticsMxBean.increaseCacheHits(1L);
+                } else {
+                    statisticsMxBean.increaseCacheMisses(1L);
+                }
+                statisticsMxBean.addGetTimeNano(time);
+            }
+            if (event != null && entry.state() == CouchbaseMutableEntry.State.SET) {
+                statisticsMxBean.increaseCachePuts(1L);
+                statisticsMxBean.addPutTimeNano(time);
+            } else if (event != null && entry.state() == CouchbaseMutableEntry.State.REMOVED) {
+                statisticsMxBean.increaseCacheRemovals(1L);
+                statisticsMxBean.addRemoveTimeNano(time);
+            }
+        }
+        if (event != null) {
+            eventManager.queueEvent(event);
+            if (dispatch) {
+                eventManager.dispatch();
+            }
+        }
     }
 
     @Override
@@ -859,14 +2463,20 @@ public class CouchbaseCache<K, V> implements Cache<K, V> {
         this.configuration.removeCacheEntryListenerConfiguration(config);
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * Note that the returned iterator fetches documents ahead of the calls to {@link Iterator#next()}, and is also
+     * {@link java.io.Closeable}: an iterator that is abandoned before the end should be closed to cancel the pending
+     * fetches. Otherwise they are only cancelled once the iterator has been garbage collected.
+     */
     @Override
     public Iterator<Entry<K, V>> iterator() {
         checkOpen();
         CouchbaseCacheIterator.TimeAndDocHook visitAction = new CouchbaseCacheIterator.TimeAndDocHook() {
             @Override
-            public void call(Tuple2<Long, SerializableDocument> timeAndDoc) {
-                SerializableDocument serializableDocument = timeAndDoc.value2();
-                touchIfNeeded(serializableDocument.id());
+            public void call(Tuple2<Long, LazyCacheDocument> timeAndDoc) {
+                rememberKey(timeAndDoc.value2().id());
                 if (isStatisticsEnabled()) {
                     statisticsMxBean.increaseCacheHits(1L);
                     statisticsMxBean.addGetTimeNano(System.nanoTime() - timeAndDoc.value1());
@@ -875,12 +2485,15 @@ public class CouchbaseCache<K, V> implements Cache<K, V> {
         };
         CouchbaseCacheIterator.TimeAndDocHook removeAction = new CouchbaseCacheIterator.TimeAndDocHook() {
             @Override
-            public void call(Tuple2<Long, SerializableDocument> timeAndDoc) {
-                K key = keyConverter.fromString(timeAndDoc.value2().id());
-                V value = (V) timeAndDoc.value2().content();
+            public void call(Tuple2<Long, LazyCacheDocument> timeAndDoc) {
+                K key = keyConverter.fromString(timeAndDoc.value2().internalKey());
                 long start = timeAndDoc.value1();
+                evictLocally(timeAndDoc.value2().id());
 
-                eventManager.queueAndDispatch(EventType.REMOVED, key, value, CouchbaseCache.this);
+                //the removed value is only decoded if a listener reads it
+                eventManager.queueEvent(CouchbaseCacheEntryEvent.<K, V>lazy(EventType.REMOVED, key,
+                        timeAndDoc.value2().content(), null, CouchbaseCache.this));
+                eventManager.dispatch();
                 if (isStatisticsEnabled()) {
                     statisticsMxBean.increaseCacheEvictions(1L);
                     statisticsMxBean.addRemoveTimeNano(System.nanoTime() - start);
@@ -888,8 +2501,10 @@ public class CouchbaseCache<K, V> implements Cache<K, V> {
             }
         };
 
+        //documents are touched as they are fetched, if ACCESS expiry warrants it
         return new CouchbaseCacheIterator<K, V>(this.bucket, this.keyConverter,
-                getAllKeys(), visitAction, removeAction);
+                getAllKeys(), getDurationCode(Operation.ACCESS), configuration.getIteratorPrefetch(), transcoder,
+                visitAction, removeAction);
     }
 
     /**
@@ -924,23 +2539,13 @@ public class CouchbaseCache<K, V> implements Cache<K, V> {
                 + " for cache " + getName() + ",did you create it?", cause);
     }
 
-    private Observable<String> getAllKeys() {
+    private ViewScanner viewScanner() {
         String[] viewInfo = checkAndGetViewInfo();
+        return new ViewScanner(bucket.async(), viewInfo[0], viewInfo[1], configuration.getViewPageSize());
+    }
 
-        return bucket.async()
-                     .query(ViewQuery.from(viewInfo[0], viewInfo[1]))
-                     .flatMap(new Func1<AsyncViewResult, Observable<AsyncViewRow>>() {
-                         @Override
-                         public Observable<AsyncViewRow> call(AsyncViewResult asyncViewResult) {
-                             return asyncViewResult.rows();
-                         }
-                     })
-                     .map(new Func1<AsyncViewRow, String>() {
-                         @Override
-                         public String call(AsyncViewRow asyncViewRow) {
-                             return asyncViewRow.id();
-                         }
-                     });
+    private Observable<String> getAllKeys() {
+        return viewScanner().ids();
     }
 
     @Override
@@ -956,6 +2561,9 @@ public class CouchbaseCache<K, V> implements Cache<K, V> {
         if (clazz.isAssignableFrom(this.getClass())) {
             return clazz.cast(this);
         }
+        if (clazz.isAssignableFrom(AsyncCouchbaseCache.class)) {
+            return clazz.cast(asyncCache);
+        }
         throw new IllegalArgumentException("Cannot unwrap to " + clazz.getName());
     }
 
@@ -973,7 +2581,7 @@ public class CouchbaseCache<K, V> implements Cache<K, V> {
     public void clear() {
         checkOpen();
         try {
-            internalClear(Actions.empty());
+            internalClear(false, Actions.empty());
         } catch (Exception e) {
             throw new CacheException("Unable to clear", e);
         }
@@ -1018,6 +2626,11 @@ public class CouchbaseCache<K, V> implements Cache<K, V> {
                 }
             }
 
+            //drop the locally cached values
+            if (nearCache != null) {
+                nearCache.clear();
+            }
+
             //signal the CacheManager that this cache is closed
             this.cacheManager.signalCacheClosed(getName());
 
@@ -1047,16 +2660,103 @@ public class CouchbaseCache<K, V> implements Cache<K, V> {
         }
     }
 
-    private void internalClear(Action1<? super SerializableDocument> action) {
-        getAllKeys()
-                .flatMap(new Func1<String, Observable<SerializableDocument>>() {
+    /**
+     * Removes all the documents of the cache, scanning the view page by page. Each page is removed before moving on
+     * to the next one, and the position of the scan is kept after each page: if removing a page fails, the scan
+     * resumes from the last page that was fully removed instead of from the start of the view, up to
+     * {@link #CLEAR_MAX_ATTEMPTS} times in a row.
+     *
+     * Keys stored during the removal are recorded in a new key filter, while the previous one is still consulted
+     * until all the documents are removed, as not yet removed keys are still present.
+     *
+     * @param fetch true to fetch each document before removing it, so that the action is given its content and
+     *  original key (for compacted keys), false to only remove it.
+     * @param action the action to call with each removed document.
+     */
+    private void internalClear(final boolean fetch, Action1<? super LazyCacheDocument> action) {
+        if (nearCache != null) {
+            nearCache.clear();
+        }
+        KeyBloomFilter previousFilter = keyFilter;
+        if (previousFilter != null) {
+            clearedKeyFilter = previousFilter;
+            keyFilter = KeyBloomFilter.create(configuration);
+        }
+        Func1<String, Observable<LazyCacheDocument>> remove = new Func1<String, Observable<LazyCacheDocument>>() {
+            @Override
+            public Observable<LazyCacheDocument> call(String id) {
+                Observable<LazyCacheDocument> removal;
+                if (fetch) {
+                    removal = bucket.async().get(id, LazyCacheDocument.class)
+                            .flatMap(new Func1<LazyCacheDocument, Observable<LazyCacheDocument>>() {
+                                @Override
+                                public Observable<LazyCacheDocument> call(final LazyCacheDocument doc) {
+                                    return bucket.async().remove(doc.id(), LazyCacheDocument.class)
+                                            .map(new Func1<LazyCacheDocument, LazyCacheDocument>() {
+                                                @Override
+                                                public LazyCacheDocument call(LazyCacheDocument removed) {
+                                                    return doc.boundTo(transcoder);
+                                                }
+                                            });
+                                }
+                            });
+                } else {
+                    removal = bucket.async().remove(id, LazyCacheDocument.class);
+                }
+                //documents removed concurrently are simply skipped
+                return removal.onErrorResumeNext(new Func1<Throwable, Observable<LazyCacheDocument>>() {
                     @Override
-                    public Observable<SerializableDocument> call(String id) {
-                        return bucket.async().remove(id, SerializableDocument.class);
+                    public Observable<LazyCacheDocument> call(Throwable throwable) {
+                        if (throwable instanceof DocumentDoesNotExistException) {
+                            return Observable.empty();
+                        }
+                        return Observable.error(throwable);
                     }
-                })
-                .toBlocking()
-                .forEach(action);
+                });
+            }
+        };
+
+        boolean removed = false;
+        try {
+            removePages(viewScanner(), remove, action);
+            removed = true;
+        } finally {
+            if (previousFilter != null) {
+                if (!removed) {
+                    keyFilter.putAll(previousFilter);
+                }
+                clearedKeyFilter = null;
+            }
+        }
+    }
+
+    /**
+     * Removes the documents of all the pages of a view, resuming from the last removed page when a page fails.
+     */
+    private void removePages(ViewScanner scanner, Func1<String, Observable<LazyCacheDocument>> remove,
+            Action1<? super LazyCacheDocument> action) {
+        ViewScanner.Cursor from = ViewScanner.Cursor.START;
+        int attempt = 1;
+        boolean done = false;
+        while (!done) {
+            try {
+                for (ViewScanner.Page page : scanner.removalPages(from)) {
+                    bulk(page.ids(), IDENTITY, remove)
+                            .toBlocking()
+                            .forEach(action);
+                    from = page.next();
+                    attempt = 1;
+                }
+                done = true;
+            } catch (RuntimeException e) {
+                //views that can't be paged by key are not retried
+                if (e instanceof CacheException || attempt >= CLEAR_MAX_ATTEMPTS) {
+                    throw e;
+                }
+                LOGGER.debug("Resuming removal of all documents of cache " + getName() + " at " + from, e);
+                backOff(attempt++);
+            }
+        }
     }
 
     private int getDurationCode(Operation op) {
@@ -1091,54 +2791,206 @@ public class CouchbaseCache<K, V> implements Cache<K, V> {
         }
     }
 
-    private void touchIfNeeded(String docId) {
-        int ttlOrCode = getDurationCode(Operation.ACCESS);
+    private void touchInBackgroundIfNeeded(final String docId) {
+        final int ttlOrCode = getDurationCode(Operation.ACCESS);
         if (ttlOrCode >= 0) {
-            bucket.touch(docId, ttlOrCode);
+            bucket.async().touch(docId, ttlOrCode).subscribe(new Action1<Boolean>() {
+                @Override
+                public void call(Boolean touched) {
+                    if (touched && nearCache != null) {
+                        nearCache.expireAt(docId, expiresAtMillis(ttlOrCode));
+                    }
+                }
+            }, LOG_BACKGROUND_ERROR);
+        }
+    }
+
+    /**
+     * Looks up the near cache, if any. Entries that are older than the near cache's local TTL keep being served while
+     * they are validated in the background, by comparing their CAS with the one of the document on the server, which
+     * doesn't transfer the value. Entries whose document has expired on the server are never served.
+     *
+     * @param cbKey the internal key to look up.
+     * @return the value known locally (a copy of it if the cache stores by value), or null if there is none.
+     */
+    private V getFromNearCache(String cbKey) {
+        if (nearCache == null) {
+            return null;
+        }
+        NearCache.Entry<V> entry = nearCache.get(cbKey);
+        if (entry == null) {
+            return null;
+        }
+        if (!nearCache.isFresh(entry) && nearCache.startValidation(entry)) {
+            validateInBackground(cbKey, entry);
         }
+        return localCopy(cbKey, entry.value());
     }
 
     /**
-     * Depending on the operation, produces a SerializableDocument with correct TTL and a CAS of 0.
+     * Validates a near cache entry by comparing its CAS with the one of the document on the server, marking it as
+     * fresh again if they match and forgetting about it otherwise.
+     *
+     * @param cbKey the internal key of the entry.
+     * @param entry the entry to validate.
+     */
+    private void validateInBackground(final String cbKey, final NearCache.Entry<V> entry) {
+        try {
+            bucket.core()
+                    .<ObserveResponse>send(new ObserveRequest(cbKey, entry.cas(), true, (short) 0, bucket.name()))
+                    .subscribe(new Action1<ObserveResponse>() {
+                        @Override
+                        public void call(ObserveResponse response) {
+                            ObserveResponse.ObserveStatus status = response.observeStatus();
+                            boolean found = status == ObserveResponse.ObserveStatus.FOUND_PERSISTED
+                                    || status == ObserveResponse.ObserveStatus.FOUND_NOT_PERSISTED;
+                            if (found && response.cas() == entry.cas()) {
+                                nearCache.revalidate(entry);
+                            } else {
+                                nearCache.invalidate(cbKey, entry);
+                            }
+                        }
+                    }, new Action1<Throwable>() {
+                        @Override
+                        public void call(Throwable throwable) {
+                            LOGGER.debug("Could not validate near cache entry for " + cbKey, throwable);
+                            nearCache.invalidate(cbKey, entry);
+                        }
+                    });
+        } catch (Exception e) {
+            LOGGER.debug("Could not validate near cache entry for " + cbKey, e);
+            nearCache.invalidate(cbKey, entry);
+        }
+    }
+
+    /**
+     * Copies a value going in or out of the near cache if the cache stores by value, so that neither the near cache
+     * nor callers ever share an instance.
+     *
+     * @param cbKey the internal key of the value.
+     * @param value the value.
+     * @return the value to store or return.
+     */
+    @SuppressWarnings("unchecked")
+    private V localCopy(String cbKey, V value) {
+        if (!configuration.isStoreByValue()) {
+            return value;
+        }
+        try {
+            return (V) transcoder.copy(cbKey, value);
+        } catch (Exception e) {
+            throw new CacheException("Could not copy the value of " + cbKey, e);
+        }
+    }
+
+    /**
+     * Records a value that is known to be in the bucket, in the near cache and the key bloom filter (if any). The
+     * near cache entry expires with the document when its expiry is known, either because the document was just
+     * written with it or because its {@link TimedValue} records it.
+     *
+     * @param cbKey the internal key.
+     * @param value the value.
+     * @param doc the document holding the value, as read or written.
+     */
+    private void cacheLocally(String cbKey, V value, CacheDocument doc) {
+        rememberKey(cbKey);
+        if (nearCache != null) {
+            long expiresAtMillis = expiresAtMillis(doc.expiry());
+            if (doc.content() instanceof TimedValue && ((TimedValue) doc.content()).ttlSeconds() > 0) {
+                expiresAtMillis = ((TimedValue) doc.content()).expiresMillis();
+            }
+            nearCache.put(cbKey, localCopy(cbKey, value), doc.cas(), expiresAtMillis);
+        }
+    }
+
+    /**
+     * @param ttl the TTL of a document in seconds, or 0 if it doesn't expire.
+     * @return the time at which the document expires in milliseconds since the epoch, or 0 if it doesn't expire.
+     */
+    private static long expiresAtMillis(int ttl) {
+        return ttl > 0 ? System.currentTimeMillis() + ttl * 1000L : 0L;
+    }
+
+    /**
+     * @param cbKey the internal key.
+     * @return true if the key filter knows that the key was never stored.
+     */
+    private boolean isDefinitelyAbsent(String cbKey) {
+        KeyBloomFilter cleared = clearedKeyFilter;
+        KeyBloomFilter filter = keyFilter;
+        return filter != null && !filter.mightContain(cbKey) && (cleared == null || !cleared.mightContain(cbKey));
+    }
+
+    private void rememberKey(String cbKey) {
+        if (keyFilter != null) {
+            keyFilter.put(cbKey);
+        }
+    }
+
+    private void evictLocally(String cbKey) {
+        if (nearCache != null) {
+            nearCache.invalidate(cbKey);
+        }
+    }
+
+    /**
+     * Depending on the operation, produces a CacheDocument with correct TTL and a CAS of 0.
      *
      * @param key the key for the document
      * @param value the value to store
      * @param op the operation being performed
-     * @return the {@link SerializableDocument} to be persisted, or null if the {@link ExpiryPolicy}
+     * @return the {@link CacheDocument} to be persisted, or null if the {@link ExpiryPolicy}
      *  indicates a TTL already expired
      * @throws IllegalArgumentException when the {@link ExpiryPolicy} produces a TTL > 30 days
      */
-    private SerializableDocument createDocument(K key, V value, Operation op) {
+    private CacheDocument createDocument(K key, V value, Operation op) {
         return createDocument(key, value, op, 0L);
     }
 
     /**
-     * Depending on the operation, produces a SerializableDocument with correct TTL and CAS.
+     * Depending on the operation, produces a CacheDocument with correct TTL and CAS.
+     *
+     * @param key the key for the document
+     * @param value the value to store
+     * @param op the operation being performed
+     * @param cas the cas of the document (or 0 if none needed)
+     * @return the {@link CacheDocument} to be persisted, or null if the {@link ExpiryPolicy}
+     *  indicates a TTL already expired
+     * @throws IllegalArgumentException when the {@link ExpiryPolicy} produces a TTL > 30 days
+     */
+    private CacheDocument createDocument(K key, V value, Operation op, long cas) {
+        return createDocument(key, value, op, cas, 0L);
+    }
+
+    /**
+     * Depending on the operation, produces a CacheDocument with correct TTL and CAS, for a value that was
+     * loaded through the {@link CacheLoader}.
      *
      * @param key the key for the document
      * @param value the value to store
      * @param op the operation being performed
      * @param cas the cas of the document (or 0 if none needed)
-     * @return the {@link SerializableDocument} to be persisted, or null if the {@link ExpiryPolicy}
+     * @param loadCost the time it took to load the value in nanoseconds (or 0 if it was not loaded)
+     * @return the {@link CacheDocument} to be persisted, or null if the {@link ExpiryPolicy}
      *  indicates a TTL already expired
      * @throws IllegalArgumentException when the {@link ExpiryPolicy} produces a TTL > 30 days
      */
-    private SerializableDocument createDocument(K key, V value, Operation op, long cas) {
+    private CacheDocument createDocument(K key, V value, Operation op, long cas, long loadCost) {
         String cbKey = toInternalKey(key);
-        Serializable cbValue = toInternalValue(value);
         int ttlOrCode = getDurationCode(op);
+        Object cbValue = toInternalValue(value, ttlOrCode, loadCost);
         switch (ttlOrCode) {
             case TTL_DONT_CHANGE:
-                return SerializableDocument.create(cbKey, cbValue, cas);
+                return newDocument(key, cbKey, 0, cbValue, cas);
             case TTL_NONE:
-                return SerializableDocument.create(cbKey, cbValue, cas);
+                return newDocument(key, cbKey, 0, cbValue, cas);
             case TTL_EXPIRED:
                 return null;
             default:
                 if (ttlOrCode < 0) {
                     throw new IllegalArgumentException("Unknown ttl code " + ttlOrCode);
                 } else {
-                    return SerializableDocument.create(cbKey, ttlOrCode, cbValue, cas);
+                    return newDocument(key, cbKey, ttlOrCode, cbValue, cas);
                 }
         }
     }
@@ -1147,9 +2999,17 @@ public class CouchbaseCache<K, V> implements Cache<K, V> {
         if (key == null) {
             throw new NullPointerException("Keys must not be null");
         }
-        return this.keyConverter.asString(key);
+        String internalKey = this.keyConverter.asString(key);
+        return keyCompactor == null ? internalKey : keyCompactor.compact(internalKey);
     }
 
+    /**
+     * Converts an internal key back to a key. Note that compacted keys can't be converted back, the
+     * {@link CacheDocument#internalKey() internal key of their documents} must be used instead.
+     *
+     * @param internalKey the internal key.
+     * @return the corresponding key.
+     */
     protected K fromInternalKey(String internalKey) {
         if (internalKey == null) {
             throw new NullPointerException("Internal key must not be null");
@@ -1157,15 +3017,159 @@ public class CouchbaseCache<K, V> implements Cache<K, V> {
         return this.keyConverter.fromString(internalKey);
     }
 
-    private Serializable toInternalValue(V value) {
-        if (value instanceof Serializable) {
-            return (Serializable) value;
+    /**
+     * Creates the document holding a value, recording the original internal key in it if the key is compacted.
+     *
+     * @param key the key of the entry.
+     * @param cbKey the internal form of the key.
+     * @param expiry the expiry of the document.
+     * @param internalValue the value in the form to store.
+     * @param cas the CAS of the document, or 0.
+     * @return the document.
+     */
+    private CacheDocument newDocument(K key, String cbKey, int expiry, Object internalValue, long cas) {
+        String originalId = null;
+        if (keyCompactor != null) {
+            String internalKey = keyConverter.asString(key);
+            if (!internalKey.equals(cbKey)) {
+                originalId = internalKey;
+            }
+        }
+        return CacheDocument.create(cbKey, expiry, internalValue, cas, originalId, transcoder);
+    }
+
+    /**
+     * Decodes a document fetched for a key, with the codec of this cache.
+     *
+     * @param key the key the document was fetched for.
+     * @param doc the fetched document, or null.
+     * @return the decoded document, or null if it holds another key (see {@link #verified(Object, CacheDocument)}).
+     */
+    private CacheDocument decoded(K key, CacheDocument doc) {
+        return verified(key, transcoder.decoded(doc));
+    }
+
+    /**
+     * Creates a function decoding the documents fetched for a key, with the codec of this cache.
+     *
+     * @param key the key the documents are fetched for.
+     * @return the function, producing the decoded document or no document at all if it holds another key, the
+     *  same way as if there was no document.
+     */
+    private Func1<CacheDocument, Observable<CacheDocument>> decoderFor(final K key) {
+        return new Func1<CacheDocument, Observable<CacheDocument>>() {
+            @Override
+            public Observable<CacheDocument> call(CacheDocument doc) {
+                CacheDocument decoded = decoded(key, doc);
+                return decoded == null ? Observable.<CacheDocument>empty() : Observable.just(decoded);
+            }
+        };
+    }
+
+    /**
+     * Checks that a document fetched for a key holds this key, in case its compacted form collides with the one of
+     * another key: a document stored under a compacted key must record this key as its original one, and a document
+     * stored under a key that was not compacted must not record any (which would be a long key whose compacted form
+     * is literally this key).
+     *
+     * @param key the key the document was fetched for.
+     * @param doc the fetched document, or null.
+     * @return the document, or null if it holds another key.
+     */
+    private CacheDocument verified(K key, CacheDocument doc) {
+        if (doc == null || keyCompactor == null) {
+            return doc;
+        }
+        String internalKey = keyConverter.asString(key);
+        String expectedOriginalId = internalKey.equals(doc.id()) ? null : internalKey;
+        if (expectedOriginalId == null ? doc.originalId() == null : expectedOriginalId.equals(doc.originalId())) {
+            return doc;
+        }
+        LOGGER.warn("Key " + doc.id() + " holds " + doc.originalId() + " instead of " + internalKey
+                + ", considered as a miss");
+        return null;
+    }
+
+    private Object toInternalValue(V value) {
+        if (configuration.getValueCodec() != null || value instanceof Serializable) {
+            return value;
         } else {
             throw new ClassCastException("This cache can only accept Serializable values");
         }
     }
 
-    private CacheException exception(String message, Exception e) {
+    /**
+     * Converts a value to its stored form, wrapping it with its creation time, TTL and load cost if the
+     * configuration needs them when reading the value back: for refresh-ahead and early expiration, to expire near
+     * cache entries with their document, or to keep the remaining TTL of an expiring entry when it is updated with
+     * an UPDATE expiry that doesn't change it.
+     *
+     * @param value the value to store.
+     * @param ttlOrCode the TTL (or TTL code) of the document that will hold the value.
+     * @param loadCost the time it took to load the value in nanoseconds (or 0 if it was not loaded).
+     * @return the value in the form to store.
+     */
+    private Object toInternalValue(V value, int ttlOrCode, long loadCost) {
+        Object cbValue = toInternalValue(value);
+        if (ttlOrCode > 0 && (configuration.isRefreshAheadEnabled() || configuration.isEarlyExpirationEnabled()
+                || nearCache != null || getDurationCode(Operation.UPDATE) == TTL_DONT_CHANGE)) {
+            return new TimedValue(cbValue, System.currentTimeMillis(), ttlOrCode, loadCost);
+        }
+        return cbValue;
+    }
+
+    /**
+     * Extracts the value from a document, unwrapping it if it was stored with its creation time and TTL.
+     *
+     * @param doc the document.
+     * @return the value held by the document.
+     */
+    private V valueOf(CacheDocument doc) {
+        return (V) TimedValue.unwrap(doc.content());
+    }
+
+    /**
+     * Creates a function that makes an asynchronous operation fail the way its synchronous counterpart would,
+     * wrapping errors that are not {@link CacheException CacheExceptions}.
+     *
+     * @param message the message of the wrapping exception.
+     * @return the function to use with {@link Observable#onErrorResumeNext(Func1)}.
+     */
+    private <T> Func1<Throwable, Observable<T>> errorAs(final String message) {
+        return new Func1<Throwable, Observable<T>>() {
+            @Override
+            public Observable<T> call(Throwable throwable) {
+                if (throwable instanceof Exception) {
+                    return Observable.error(exception(message, (Exception) throwable));
+                }
+                return Observable.error(throwable);
+            }
+        };
+    }
+
+    /**
+     * Waits before a new attempt of an operation, twice as long as before the previous attempt up to
+     * {@link #INVOKE_MAX_BACKOFF_MILLIS}.
+     *
+     * @param attempt the number of the attempt that failed, starting at 1.
+     */
+    private static void backOff(int attempt) {
+        try {
+            Thread.sleep(Math.min(INVOKE_MAX_BACKOFF_MILLIS, INVOKE_BACKOFF_MILLIS << (attempt - 1)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CacheException("Interrupted while waiting to retry", e);
+        }
+    }
+
+    /**
+     * Wraps an exception in a {@link CacheException} unless it already is one.
+     *
+     * @param message the message of the wrapping exception.
+     * @param e the exception to wrap.
+     * @return the exception to throw.
+     */
+    static CacheException exception(String message, Exception e) {
         if (e instanceof CacheException) {
             return (CacheException) e;
         } else {
@@ -1194,4 +3198,38 @@ public class CouchbaseCache<K, V> implements Cache<K, V> {
         UPDATE,
         ACCESS
     }
+
+    /**
+     * The {@link EntryProcessorResult} of {@link #invokeAll(Set, EntryProcessor, Object...)}: either the result of
+     * the processor or the exception that prevented the processing.
+     */
+    private static final class ProcessorResult<T> implements EntryProcessorResult<T> {
+
+        private final T result;
+        private final Throwable error;
+
+        private ProcessorResult(T result, Throwable error) {
+            this.result = result;
+            this.error = error;
+        }
+
+        static <T> ProcessorResult<T> success(T result) {
+            return new ProcessorResult<T>(result, null);
+        }
+
+        static <T> ProcessorResult<T> failure(Throwable error) {
+            return new ProcessorResult<T>(null, error);
+        }
+
+        @Override
+        public T get() throws EntryProcessorException {
+            if (error == null) {
+                return result;
+            } else if (error instanceof EntryProcessorException) {
+                throw (EntryProcessorException) error;
+            } else {
+                throw new EntryProcessorException(error);
+            }
+        }
+    }
 }
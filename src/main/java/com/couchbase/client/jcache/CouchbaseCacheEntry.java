@@ -25,10 +25,24 @@ public class CouchbaseCacheEntry<K, V> implements Entry<K, V> {
 
     private final K id;
     private final V content;
+    private final LazyValue lazyContent;
 
     public CouchbaseCacheEntry(K id, V content) {
         this.id = id;
         this.content = content;
+        this.lazyContent = null;
+    }
+
+    /**
+     * Create an entry whose value is only decoded when {@link #getValue()} is first called.
+     *
+     * @param id the key of the entry.
+     * @param lazyContent the content of the document holding the value.
+     */
+    CouchbaseCacheEntry(K id, LazyValue lazyContent) {
+        this.id = id;
+        this.content = null;
+        this.lazyContent = lazyContent;
     }
 
     @Override
@@ -38,6 +52,9 @@ public class CouchbaseCacheEntry<K, V> implements Entry<K, V> {
 
     @Override
     public V getValue() {
+        if (lazyContent != null) {
+            return (V) TimedValue.unwrap(lazyContent.get());
+        }
         return content;
     }
 
@@ -27,6 +27,8 @@ public class CouchbaseCacheEntryEvent<K, V> extends CacheEntryEvent<K, V> {
     private final K key;
     private final V value;
     private final V oldValue;
+    private final LazyValue lazyValue;
+    private final LazyValue lazyOldValue;
 
     /**
      * Construct a new event with old value.
@@ -42,6 +44,18 @@ public class CouchbaseCacheEntryEvent<K, V> extends CacheEntryEvent<K, V> {
         this.key = key;
         this.value = value;
         this.oldValue = oldValue;
+        this.lazyValue = null;
+        this.lazyOldValue = null;
+    }
+
+    private CouchbaseCacheEntryEvent(EventType eventType, K key, LazyValue lazyValue, LazyValue lazyOldValue,
+            CouchbaseCache source) {
+        super(source, eventType);
+        this.key = key;
+        this.value = null;
+        this.oldValue = null;
+        this.lazyValue = lazyValue;
+        this.lazyOldValue = lazyOldValue;
     }
 
     /**
@@ -56,14 +70,33 @@ public class CouchbaseCacheEntryEvent<K, V> extends CacheEntryEvent<K, V> {
         this(eventType, key, value, null, source);
     }
 
+    /**
+     * Construct a new event whose values are only decoded when {@link #getValue()} or {@link #getOldValue()} are
+     * first called, so that events rejected by filters or listeners that only look at keys never decode them.
+     *
+     * @param eventType the type of the event.
+     * @param key the key impacted by the event.
+     * @param value the content of the document holding the value after the event, or null if not applicable.
+     * @param oldValue the content of the document holding the previous value, or null if not applicable.
+     * @param source the cache in which the event happened.
+     * @return the event.
+     */
+    static <K, V> CouchbaseCacheEntryEvent<K, V> lazy(EventType eventType, K key, LazyValue value,
+            LazyValue oldValue, CouchbaseCache source) {
+        return new CouchbaseCacheEntryEvent<K, V>(eventType, key, value, oldValue, source);
+    }
+
     @Override
     public V getOldValue() {
+        if (this.lazyOldValue != null) {
+            return (V) TimedValue.unwrap(this.lazyOldValue.get());
+        }
         return this.oldValue;
     }
 
     @Override
     public boolean isOldValueAvailable() {
-        return this.oldValue != null;
+        return this.oldValue != null || this.lazyOldValue != null;
     }
 
     @Override
@@ -73,6 +106,9 @@ public class CouchbaseCacheEntryEvent<K, V> extends CacheEntryEvent<K, V> {
 
     @Override
     public V getValue() {
+        if (this.lazyValue != null) {
+            return (V) TimedValue.unwrap(this.lazyValue.get());
+        }
         return this.value;
     }
 
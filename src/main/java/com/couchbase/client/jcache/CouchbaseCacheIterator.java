@@ -13,9 +13,16 @@
  */
 package com.couchbase.client.jcache;
 
+import java.io.Closeable;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import javax.cache.Cache;
@@ -23,10 +30,10 @@ import javax.cache.Cache;
 import com.couchbase.client.core.lang.Tuple;
 import com.couchbase.client.core.lang.Tuple2;
 import com.couchbase.client.java.Bucket;
-import com.couchbase.client.java.document.SerializableDocument;
 import rx.Notification;
 import rx.Observable;
 import rx.Subscriber;
+import rx.Subscription;
 import rx.exceptions.Exceptions;
 import rx.functions.Action1;
 import rx.functions.Func1;
@@ -36,26 +43,43 @@ import rx.functions.Func2;
  * An iterator over a stream of documents in a {@link CouchbaseCache}, usually all documents, that uses
  * the cache's {@link KeyConverter} and the underlying {@link Bucket} to notably implement {@link #remove()}.
  *
+ * Documents are fetched ahead of the calls to {@link #next()}, but at most a prefetch window of them are in flight
+ * or buffered at any time: a new document is only requested each time one is consumed. An iterator that is
+ * abandoned before the end of the stream should be {@link #close() closed} to cancel the pending fetches. Otherwise
+ * they are cancelled once the iterator has been garbage collected, the next time an iterator is created.
+ *
  * @author Simon Baslé
  * @since 1.0
  */
-class CouchbaseCacheIterator<K, V> implements Iterator<Cache.Entry<K, V>> {
+class CouchbaseCacheIterator<K, V> implements Iterator<Cache.Entry<K, V>>, Closeable {
 
     private final Bucket bucket;
-    private final BlockingQueue<Notification<? extends SerializableDocument>> notifications =
-            new LinkedBlockingQueue<Notification<? extends SerializableDocument>>();
+    private final BlockingQueue<Notification<? extends LazyCacheDocument>> notifications =
+            new LinkedBlockingQueue<Notification<? extends LazyCacheDocument>>();
     private final KeyConverter<K> keyConverter;
-    private final Action1<Tuple2<Long, SerializableDocument>> onRemoveAction;
+    private final Action1<Tuple2<Long, LazyCacheDocument>> onRemoveAction;
+    private final PrefetchSubscriber subscriber;
+    private final Cleanup cleanup;
+
+    /** Receives the iterators that are no longer reachable, to cancel their subscription */
+    private static final ReferenceQueue<Object> UNREACHABLE = new ReferenceQueue<Object>();
+    /** The cleanups of the iterators whose subscription is active, keeping them reachable until then */
+    private static final Set<Cleanup> OPEN = Collections.newSetFromMap(new ConcurrentHashMap<Cleanup, Boolean>());
+
+    /**
+     * Value of the access expiry indicating that documents should not be touched when fetched.
+     */
+    public static final int NO_TOUCH = -1;
 
-    private SerializableDocument current;
-    private Notification<? extends SerializableDocument> next;
+    private LazyCacheDocument current;
+    private Notification<? extends LazyCacheDocument> next;
 
 
-    private static final Func2<Long, SerializableDocument, Tuple2<Long, SerializableDocument>> timeAndDocZipFunction =
-            new Func2<Long, SerializableDocument, Tuple2<Long, SerializableDocument>>() {
+    private static final Func2<Long, LazyCacheDocument, Tuple2<Long, LazyCacheDocument>> timeAndDocZipFunction =
+            new Func2<Long, LazyCacheDocument, Tuple2<Long, LazyCacheDocument>>() {
                 @Override
-                public Tuple2<Long, SerializableDocument> call(Long aLong, SerializableDocument serializableDocument) {
-                    return Tuple.create(aLong, serializableDocument);
+                public Tuple2<Long, LazyCacheDocument> call(Long aLong, LazyCacheDocument lazyDocument) {
+                    return Tuple.create(aLong, lazyDocument);
                 }
             };
 
@@ -84,6 +108,54 @@ class CouchbaseCacheIterator<K, V> implements Iterator<Cache.Entry<K, V>> {
             Observable<String> stream,
             TimeAndDocHook onEachAction,
             TimeAndDocHook onRemoveAction) {
+        this(bucket, keyConverter, stream, NO_TOUCH, CouchbaseConfiguration.DEFAULT_ITERATOR_PREFETCH,
+                onEachAction, onRemoveAction);
+    }
+
+    /**
+     * Iterator constructor that allows to hook side effects (stats, event notification) on the iteration and removal,
+     * and to touch the documents as they are fetched.
+     *
+     * @param bucket the bucket on which to remove.
+     * @param keyConverter the {@link KeyConverter} to use to translate to/from document keys vs domain keys.
+     * @param stream the stream of document IDs to iterate over.
+     * @param accessExpiry the expiry to set on each document as it is fetched (with a single get-and-touch), or a
+     *  negative value to leave expiry unchanged.
+     * @param prefetch the maximum number of documents in flight or buffered ahead of {@link #next()}.
+     * @param onEachAction the hook to be called each time an element is pulled ({@link #next()}).
+     * @param onRemoveAction the hook to be called each time an element is removed ({@link #remove()}).
+     */
+    public CouchbaseCacheIterator(Bucket bucket, KeyConverter<K> keyConverter,
+            Observable<String> stream,
+            final int accessExpiry,
+            int prefetch,
+            TimeAndDocHook onEachAction,
+            TimeAndDocHook onRemoveAction) {
+        this(bucket, keyConverter, stream, accessExpiry, prefetch, CacheTranscoder.SHARED, onEachAction,
+                onRemoveAction);
+    }
+
+    /**
+     * Iterator constructor that allows to hook side effects (stats, event notification) on the iteration and removal,
+     * to touch the documents as they are fetched, and to decode values with the codec of a cache.
+     *
+     * @param bucket the bucket on which to remove.
+     * @param keyConverter the {@link KeyConverter} to use to translate to/from document keys vs domain keys.
+     * @param stream the stream of document IDs to iterate over.
+     * @param accessExpiry the expiry to set on each document as it is fetched (with a single get-and-touch), or a
+     *  negative value to leave expiry unchanged.
+     * @param prefetch the maximum number of documents in flight or buffered ahead of {@link #next()}.
+     * @param transcoder the transcoder of the cache, to decode the values with.
+     * @param onEachAction the hook to be called each time an element is pulled ({@link #next()}).
+     * @param onRemoveAction the hook to be called each time an element is removed ({@link #remove()}).
+     */
+    public CouchbaseCacheIterator(Bucket bucket, KeyConverter<K> keyConverter,
+            Observable<String> stream,
+            final int accessExpiry,
+            int prefetch,
+            final CacheTranscoder transcoder,
+            TimeAndDocHook onEachAction,
+            TimeAndDocHook onRemoveAction) {
         this.bucket = bucket;
         this.keyConverter = keyConverter;
 
@@ -96,44 +168,56 @@ class CouchbaseCacheIterator<K, V> implements Iterator<Cache.Entry<K, V>> {
             this.onRemoveAction = onRemoveAction;
         }
 
-        stream
+        this.subscriber = new PrefetchSubscriber(notifications, prefetch);
+        fetch(bucket, stream, accessExpiry, prefetch, transcoder, onEachAction, subscriber);
+
+        expungeUnreachable();
+        this.cleanup = new Cleanup(this, subscriber);
+    }
+
+    /**
+     * Subscribes to the documents of the stream. Nothing in the subscription refers to the iterator, so that an
+     * iterator that is no longer reachable can be collected and its subscription cancelled.
+     */
+    private static void fetch(final Bucket bucket, Observable<String> stream, final int accessExpiry, int prefetch,
+            final CacheTranscoder transcoder, TimeAndDocHook onEachAction, PrefetchSubscriber subscriber) {
+        //documents are only fetched as the window allows, and ids only requested from the stream accordingly
+        Observable<Observable<Tuple2<Long, LazyCacheDocument>>> fetches = stream
                 //record the starting time before actually getting the value
-                .flatMap(new Func1<String, Observable<Tuple2<Long, SerializableDocument>>>() {
+                .map(new Func1<String, Observable<Tuple2<Long, LazyCacheDocument>>>() {
                     @Override
-                    public Observable<Tuple2<Long, SerializableDocument>> call(String id) {
+                    public Observable<Tuple2<Long, LazyCacheDocument>> call(String id) {
+                        Observable<LazyCacheDocument> fetch;
+                        if (accessExpiry >= 0) {
+                            fetch = bucket.async().getAndTouch(id, accessExpiry, LazyCacheDocument.class);
+                        } else {
+                            fetch = bucket.async().get(id, LazyCacheDocument.class);
+                        }
                         return Observable.zip(
                                 Observable.just(System.nanoTime()),
-                                CouchbaseCacheIterator.this.bucket.async().get(id, SerializableDocument.class),
+                                fetch.map(new Func1<LazyCacheDocument, LazyCacheDocument>() {
+                                    @Override
+                                    public LazyCacheDocument call(LazyCacheDocument doc) {
+                                        return doc.boundTo(transcoder);
+                                    }
+                                }),
                                 timeAndDocZipFunction);
                     }
-                })
+                });
+        Observable.merge(fetches, prefetch)
                 //call hook with start time and document
                 .doOnNext(onEachAction)
                 //simplify back to just the document
-                .map(new Func1<Tuple2<Long,SerializableDocument>, SerializableDocument>() {
+                .map(new Func1<Tuple2<Long,LazyCacheDocument>, LazyCacheDocument>() {
                     @Override
-                    public SerializableDocument call(Tuple2<Long, SerializableDocument> timeAndDoc) {
+                    public LazyCacheDocument call(Tuple2<Long, LazyCacheDocument> timeAndDoc) {
                         return timeAndDoc.value2();
                     }
                 })
                 //materialize a feed of notifications out of it
                 .materialize()
-                //push the notifications into a queue
-                .subscribe(new Subscriber<Notification<? extends SerializableDocument>>() {
-                    @Override
-                    public void onCompleted() {
-                    }
-
-                    @Override
-                    public void onError(Throwable e) {
-                        notifications.offer(Notification.<SerializableDocument>createOnError(e));
-                    }
-
-                    @Override
-                    public void onNext(Notification<? extends SerializableDocument> args) {
-                        notifications.offer(args);
-                    }
-                });
+                //push the notifications into a queue, as they are requested
+                .subscribe(subscriber);
     }
 
     @Override
@@ -142,9 +226,14 @@ class CouchbaseCacheIterator<K, V> implements Iterator<Cache.Entry<K, V>> {
             next = take();
         }
         if (next.isOnError()) {
+            cleanup.clean();
             throw Exceptions.propagate(next.getThrowable());
         }
-        return !next.isOnCompleted();
+        if (next.isOnCompleted()) {
+            cleanup.clean();
+            return false;
+        }
+        return true;
     }
 
     @Override
@@ -152,7 +241,10 @@ class CouchbaseCacheIterator<K, V> implements Iterator<Cache.Entry<K, V>> {
         if (hasNext()) {
             current = next.getValue();
             next = null;
-            return new CouchbaseCacheEntry<K, V>(keyConverter.fromString(current.id()), (V) current.content());
+            //make room for one more document in the window
+            subscriber.requestMore(1L);
+            //the value is only decoded if the entry's value is read
+            return new CouchbaseCacheEntry<K, V>(keyConverter.fromString(current.internalKey()), current.content());
         }
         throw new NoSuchElementException();
     }
@@ -160,10 +252,16 @@ class CouchbaseCacheIterator<K, V> implements Iterator<Cache.Entry<K, V>> {
     @Override
     public void remove() {
         if (current != null) {
-            //record the remove starting time and do the remove, then call the remove hook
+            //record the remove starting time and do the remove, then call the remove hook with the removed document
+            final LazyCacheDocument removed = current;
             Observable.zip(
                     Observable.just(System.nanoTime()),
-                    bucket.async().remove(current),
+                    bucket.async().remove(removed).map(new Func1<LazyCacheDocument, LazyCacheDocument>() {
+                        @Override
+                        public LazyCacheDocument call(LazyCacheDocument result) {
+                            return removed;
+                        }
+                    }),
                     timeAndDocZipFunction
             ).subscribe(onRemoveAction);
             current = null;
@@ -172,7 +270,19 @@ class CouchbaseCacheIterator<K, V> implements Iterator<Cache.Entry<K, V>> {
         }
     }
 
-    private Notification<? extends SerializableDocument> take() {
+    /**
+     * Stops the iteration, cancelling the fetches of documents that haven't been consumed yet. Once closed, the
+     * iterator behaves as if it had reached the end of the stream.
+     */
+    @Override
+    public void close() {
+        cleanup.clean();
+        notifications.clear();
+        next = Notification.<LazyCacheDocument>createOnCompleted();
+        current = null;
+    }
+
+    private Notification<? extends LazyCacheDocument> take() {
         try {
             return notifications.take();
         } catch (InterruptedException e) {
@@ -180,11 +290,89 @@ class CouchbaseCacheIterator<K, V> implements Iterator<Cache.Entry<K, V>> {
         }
     }
 
-    public static interface TimeAndDocHook extends Action1<Tuple2<Long, SerializableDocument>> { }
+    /**
+     * Cancels the subscriptions of the iterators that were collected without being closed nor iterated to the end.
+     */
+    static void expungeUnreachable() {
+        Reference<?> reference;
+        while ((reference = UNREACHABLE.poll()) != null) {
+            ((Cleanup) reference).clean();
+        }
+    }
+
+    /**
+     * @return the number of iterators whose subscription is still active.
+     */
+    static int openIterators() {
+        return OPEN.size();
+    }
+
+    /**
+     * Cancels the subscription of an iterator, once it is closed or once it is no longer reachable. It is kept
+     * reachable itself until then.
+     */
+    private static final class Cleanup extends PhantomReference<Object> {
+
+        private final Subscription subscription;
+
+        Cleanup(Object iterator, Subscription subscription) {
+            super(iterator, UNREACHABLE);
+            this.subscription = subscription;
+            OPEN.add(this);
+        }
+
+        void clean() {
+            if (OPEN.remove(this)) {
+                clear();
+                subscription.unsubscribe();
+            }
+        }
+    }
+
+    /**
+     * Pushes the notifications into the queue, requesting the first prefetch window on start and then one more
+     * document each time one is consumed.
+     */
+    private static final class PrefetchSubscriber
+            extends Subscriber<Notification<? extends LazyCacheDocument>> {
+
+        private final BlockingQueue<Notification<? extends LazyCacheDocument>> notifications;
+        private final int prefetch;
+
+        PrefetchSubscriber(BlockingQueue<Notification<? extends LazyCacheDocument>> notifications, int prefetch) {
+            this.notifications = notifications;
+            this.prefetch = prefetch;
+        }
+
+        @Override
+        public void onStart() {
+            request(prefetch);
+        }
+
+        void requestMore(long n) {
+            request(n);
+        }
+
+        @Override
+        public void onCompleted() {
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            notifications.offer(Notification.<LazyCacheDocument>createOnError(e));
+        }
+
+        @Override
+        public void onNext(Notification<? extends LazyCacheDocument> args) {
+            notifications.offer(args);
+        }
+    }
+
+    public static interface TimeAndDocHook extends Action1<Tuple2<Long, LazyCacheDocument>> { }
 
     public static final TimeAndDocHook EMPTY = new TimeAndDocHook() {
         @Override
-        public void call(Tuple2<Long, SerializableDocument> longSerializableDocumentTuple2) {
+        public void call(Tuple2<Long, LazyCacheDocument> timeAndDoc) {
             //NO-OP
         }
     };
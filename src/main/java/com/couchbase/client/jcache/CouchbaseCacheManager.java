@@ -53,6 +53,7 @@ public class CouchbaseCacheManager implements CacheManager {
     private final WeakReference<ClassLoader> classLoader;
     private final Properties properties;
     private final Map<String, Cache> caches;
+    private final Map<String, CouchbaseCounterCache<?>> counterCaches;
 
     private volatile boolean isClosed;
 
@@ -69,17 +70,36 @@ public class CouchbaseCacheManager implements CacheManager {
      */
     public CouchbaseCacheManager(CouchbaseCachingProvider provider, URI uri, ClassLoader classLoader,
                                  Properties properties) {
+        this(provider, uri, classLoader, properties, createCluster(provider));
+    }
+
+    /**
+     * Creates a new CouchbaseCacheManager connected to a given cluster.
+     *
+     * @param provider the caching provider used
+     * @param uri the uri of the manager
+     * @param classLoader the classloader associated with the manager
+     * @param properties the properties used by the manager
+     * @param cluster the cluster in which the buckets of the caches are opened
+     */
+    /* package protected*/
+    CouchbaseCacheManager(CouchbaseCachingProvider provider, URI uri, ClassLoader classLoader,
+                          Properties properties, Cluster cluster) {
         this.provider = provider;
         this.uri = uri;
         this.classLoader = new WeakReference<ClassLoader>(classLoader);
         this.properties = properties;
         this.caches = new HashMap<String, Cache>();
+        this.counterCaches = new HashMap<String, CouchbaseCounterCache<?>>();
         // this.isClosed defaults to false
+        this.cluster = cluster;
+    }
 
+    private static Cluster createCluster(CouchbaseCachingProvider provider) {
         if (provider.getEnvironment() == null) {
-            this.cluster = CouchbaseCluster.create(provider.getBoostrap());
+            return CouchbaseCluster.create(provider.getBoostrap());
         } else {
-            this.cluster = CouchbaseCluster.create(provider.getEnvironment(), provider.getBoostrap());
+            return CouchbaseCluster.create(provider.getEnvironment(), provider.getBoostrap());
         }
     }
 
@@ -136,7 +156,7 @@ public class CouchbaseCacheManager implements CacheManager {
         }
 
         synchronized (caches) {
-            if (caches.containsKey(cacheName)) {
+            if (caches.containsKey(cacheName) || counterCaches.containsKey(cacheName)) {
                 throw new CacheException("Cache " + cacheName + " already exist");
             } else {
                 CouchbaseCache<K, V> cache = new CouchbaseCache<K, V>(this, couchbaseConfiguration);
@@ -146,6 +166,59 @@ public class CouchbaseCacheManager implements CacheManager {
         }
     }
 
+    /**
+     * Create a new {@link CouchbaseCounterCache}, a cache of atomic counters backed by the bucket's counter
+     * operations. Counter caches share their namespace with regular caches.
+     *
+     * @param cacheName the name of the new counter cache to be created
+     * @param configuration the {@link CouchbaseConfiguration} used to configure the counter cache
+     * @return the new counter cache
+     * @throws java.lang.IllegalArgumentException if the configuration doesn't match the cache name
+     */
+    public <K> CouchbaseCounterCache<K> createCounterCache(String cacheName,
+            CouchbaseConfiguration<K, Long> configuration) {
+        if (isClosed()) {
+            throw new IllegalStateException("CacheManager closed");
+        }
+        if (cacheName == null) {
+            throw new NullPointerException("Cache name must not be null");
+        }
+        if (configuration == null) {
+            throw new NullPointerException("Configuration must not be null");
+        }
+        if (!cacheName.equals(configuration.getCacheName())) {
+            throw new IllegalArgumentException("Cache name " + cacheName + " expected in configuration, was "
+                + configuration.getCacheName());
+        }
+
+        synchronized (caches) {
+            if (caches.containsKey(cacheName) || counterCaches.containsKey(cacheName)) {
+                throw new CacheException("Cache " + cacheName + " already exist");
+            } else {
+                CouchbaseCounterCache<K> cache = new CouchbaseCounterCache<K>(this, configuration);
+                counterCaches.put(cacheName, cache);
+                return cache;
+            }
+        }
+    }
+
+    /**
+     * Get a {@link CouchbaseCounterCache} previously created with
+     * {@link #createCounterCache(String, CouchbaseConfiguration)}.
+     *
+     * @param cacheName the name of the counter cache
+     * @return the counter cache, or null if there is no such counter cache
+     */
+    public <K> CouchbaseCounterCache<K> getCounterCache(String cacheName) {
+        if (isClosed()) {
+            throw new IllegalStateException("CacheManager closed");
+        }
+
+        synchronized (caches) {
+            return (CouchbaseCounterCache<K>) counterCaches.get(cacheName);
+        }
+    }
+
     @Override
     public <K, V> Cache<K, V> getCache(String cacheName, Class<K> keyType, Class<V> valueType) {
         if (isClosed()) {
@@ -269,9 +342,12 @@ public class CouchbaseCacheManager implements CacheManager {
         provider.signalCacheManagerClosed(this.getClassLoader(), this.getURI());
 
         List<Cache> cachesToClose;
+        List<CouchbaseCounterCache<?>> counterCachesToClose;
         synchronized (caches) {
             cachesToClose = new ArrayList<Cache>(caches.values());
             caches.clear();
+            counterCachesToClose = new ArrayList<CouchbaseCounterCache<?>>(counterCaches.values());
+            counterCaches.clear();
         }
 
         for (Cache cache : cachesToClose) {
@@ -281,6 +357,13 @@ public class CouchbaseCacheManager implements CacheManager {
                 LOGGER.error("Error while closing a managed Cache", e);
             }
         }
+        for (CouchbaseCounterCache<?> cache : counterCachesToClose) {
+            try {
+                cache.close();
+            } catch (Exception e) {
+                LOGGER.error("Error while closing a managed counter cache", e);
+            }
+        }
     }
 
     @Override
@@ -299,6 +382,7 @@ public class CouchbaseCacheManager implements CacheManager {
         }
         synchronized (caches) {
             caches.remove(cacheName);
+            counterCaches.remove(cacheName);
         }
     }
 
@@ -14,9 +14,11 @@
 package com.couchbase.client.jcache;
 
 import java.io.Serializable;
+import java.util.zip.Deflater;
 
 import javax.cache.configuration.CompleteConfiguration;
 import javax.cache.configuration.MutableConfiguration;
+import javax.cache.expiry.Duration;
 
 import com.couchbase.client.java.Bucket;
 
@@ -33,6 +35,10 @@ public class CouchbaseConfiguration<K, V> extends MutableConfiguration<K, V> imp
     public static final String DEFAULT_BUCKET_NAME = "jcache";
     public static final String DEFAULT_BUCKET_PASSWORD = "jcache";
     public static final String DEFAULT_VIEWALL_DESIGNDOC = "jcache";
+    public static final int DEFAULT_BULK_CONCURRENCY = 64;
+    public static final int DEFAULT_READ_THROUGH_BATCH_SIZE = 100;
+    public static final int DEFAULT_ITERATOR_PREFETCH = 64;
+    public static final int DEFAULT_VIEW_PAGE_SIZE = 1000;
 
     private final KeyConverter<K> keyConverter;
     private final String bucketName;
@@ -41,31 +47,75 @@ public class CouchbaseConfiguration<K, V> extends MutableConfiguration<K, V> imp
     private final String viewAllDesignDoc;
     private final String viewAllViewName;
     private final String cacheName;
-
-    private CouchbaseConfiguration(String cacheName, KeyConverter<K> keyConverter,
-            CompleteConfiguration<K, V> configuration, String bucketName, String bucketPassword, String cachePrefix,
-            String viewAllDesignDoc, String viewAllViewName) {
+    private final long nearCacheMaxWeight;
+    private final ValueWeigher<? super V> nearCacheWeigher;
+    private final Duration nearCacheTtl;
+    private final int bulkConcurrency;
+    private final int readThroughBatchSize;
+    private final int iteratorPrefetch;
+    private final int viewPageSize;
+    private final float refreshAheadFactor;
+    private final double earlyExpirationBeta;
+    private final long keyBloomFilterExpectedKeys;
+    private final double keyBloomFilterFalsePositiveRate;
+    private final ValueCodec<V> valueCodec;
+    private final int compressionThreshold;
+    private final int compressionLevel;
+    private final int keyCompactionThreshold;
+    private final int nodeConcurrency;
+
+    private CouchbaseConfiguration(Builder<K, V> builder, CompleteConfiguration<K, V> configuration) {
         super(configuration);
-        this.cacheName = cacheName;
-        this.keyConverter = keyConverter;
-        this.bucketName = bucketName;
-        this.bucketPassword = bucketPassword;
-        this.cachePrefix = cachePrefix;
-        this.viewAllDesignDoc = viewAllDesignDoc;
-        this.viewAllViewName = viewAllViewName;
-    }
-
-    private CouchbaseConfiguration(String cacheName, KeyConverter<K> keyConverter,
-            String bucketName, String bucketPassword, String cachePrefix,
-            String viewAllDesignDoc, String viewAllViewName) {
+        this.cacheName = builder.cacheName;
+        this.keyConverter = builder.keyConverter;
+        this.bucketName = builder.bucketName;
+        this.bucketPassword = builder.bucketPassword;
+        this.cachePrefix = builder.cachePrefix;
+        this.viewAllDesignDoc = builder.viewAllDesignDoc;
+        this.viewAllViewName = builder.viewAllViewName;
+        this.nearCacheMaxWeight = builder.nearCacheMaxWeight;
+        this.nearCacheWeigher = builder.nearCacheWeigher;
+        this.nearCacheTtl = builder.nearCacheTtl;
+        this.bulkConcurrency = builder.bulkConcurrency;
+        this.readThroughBatchSize = builder.readThroughBatchSize;
+        this.iteratorPrefetch = builder.iteratorPrefetch;
+        this.viewPageSize = builder.viewPageSize;
+        this.refreshAheadFactor = builder.refreshAheadFactor;
+        this.earlyExpirationBeta = builder.earlyExpirationBeta;
+        this.keyBloomFilterExpectedKeys = builder.keyBloomFilterExpectedKeys;
+        this.keyBloomFilterFalsePositiveRate = builder.keyBloomFilterFalsePositiveRate;
+        this.valueCodec = builder.valueCodec;
+        this.compressionThreshold = builder.compressionThreshold;
+        this.compressionLevel = builder.compressionLevel;
+        this.keyCompactionThreshold = builder.keyCompactionThreshold;
+        this.nodeConcurrency = builder.nodeConcurrency;
+    }
+
+    private CouchbaseConfiguration(Builder<K, V> builder) {
         super();
-        this.cacheName = cacheName;
-        this.keyConverter = keyConverter;
-        this.bucketName = bucketName;
-        this.bucketPassword = bucketPassword;
-        this.cachePrefix = cachePrefix;
-        this.viewAllDesignDoc = viewAllDesignDoc;
-        this.viewAllViewName = viewAllViewName;
+        this.cacheName = builder.cacheName;
+        this.keyConverter = builder.keyConverter;
+        this.bucketName = builder.bucketName;
+        this.bucketPassword = builder.bucketPassword;
+        this.cachePrefix = builder.cachePrefix;
+        this.viewAllDesignDoc = builder.viewAllDesignDoc;
+        this.viewAllViewName = builder.viewAllViewName;
+        this.nearCacheMaxWeight = builder.nearCacheMaxWeight;
+        this.nearCacheWeigher = builder.nearCacheWeigher;
+        this.nearCacheTtl = builder.nearCacheTtl;
+        this.bulkConcurrency = builder.bulkConcurrency;
+        this.readThroughBatchSize = builder.readThroughBatchSize;
+        this.iteratorPrefetch = builder.iteratorPrefetch;
+        this.viewPageSize = builder.viewPageSize;
+        this.refreshAheadFactor = builder.refreshAheadFactor;
+        this.earlyExpirationBeta = builder.earlyExpirationBeta;
+        this.keyBloomFilterExpectedKeys = builder.keyBloomFilterExpectedKeys;
+        this.keyBloomFilterFalsePositiveRate = builder.keyBloomFilterFalsePositiveRate;
+        this.valueCodec = builder.valueCodec;
+        this.compressionThreshold = builder.compressionThreshold;
+        this.compressionLevel = builder.compressionLevel;
+        this.keyCompactionThreshold = builder.keyCompactionThreshold;
+        this.nodeConcurrency = builder.nodeConcurrency;
     }
 
     /**
@@ -82,6 +132,22 @@ public class CouchbaseConfiguration<K, V> extends MutableConfiguration<K, V> imp
         this.cachePrefix = configuration.cachePrefix;
         this.viewAllDesignDoc = configuration.viewAllDesignDoc;
         this.viewAllViewName = configuration.viewAllViewName;
+        this.nearCacheMaxWeight = configuration.nearCacheMaxWeight;
+        this.nearCacheWeigher = configuration.nearCacheWeigher;
+        this.nearCacheTtl = configuration.nearCacheTtl;
+        this.bulkConcurrency = configuration.bulkConcurrency;
+        this.readThroughBatchSize = configuration.readThroughBatchSize;
+        this.iteratorPrefetch = configuration.iteratorPrefetch;
+        this.viewPageSize = configuration.viewPageSize;
+        this.refreshAheadFactor = configuration.refreshAheadFactor;
+        this.earlyExpirationBeta = configuration.earlyExpirationBeta;
+        this.keyBloomFilterExpectedKeys = configuration.keyBloomFilterExpectedKeys;
+        this.keyBloomFilterFalsePositiveRate = configuration.keyBloomFilterFalsePositiveRate;
+        this.valueCodec = configuration.valueCodec;
+        this.compressionThreshold = configuration.compressionThreshold;
+        this.compressionLevel = configuration.compressionLevel;
+        this.keyCompactionThreshold = configuration.keyCompactionThreshold;
+        this.nodeConcurrency = configuration.nodeConcurrency;
     }
 
     /**
@@ -153,6 +219,212 @@ public class CouchbaseConfiguration<K, V> extends MutableConfiguration<K, V> imp
         return cacheName;
     }
 
+    /**
+     * Indicates if a near cache (a bounded, in-process tier in front of the bucket) is used by the cache.
+     *
+     * @return true if the near cache is enabled, false otherwise.
+     * @see Builder#withNearCache(long, Duration)
+     */
+    public boolean isNearCacheEnabled() {
+        return nearCacheMaxWeight > 0L;
+    }
+
+    /**
+     * The maximum total weight of the near cache. When no {@link #getNearCacheWeigher() weigher} is set, each
+     * entry weighs 1 and this is the maximum number of entries.
+     *
+     * @return the maximum weight of the near cache, or 0 if the near cache is disabled.
+     */
+    public long getNearCacheMaxWeight() {
+        return nearCacheMaxWeight;
+    }
+
+    /**
+     * The {@link ValueWeigher} used to compute the weight of each near cache entry.
+     *
+     * @return the weigher, or null if each entry weighs 1.
+     */
+    public ValueWeigher<? super V> getNearCacheWeigher() {
+        return nearCacheWeigher;
+    }
+
+    /**
+     * The local time to live of near cache entries. Once it has elapsed, an entry is validated against the bucket
+     * by comparing its CAS before being served again.
+     *
+     * @return the local time to live of near cache entries, or null if the near cache is disabled.
+     */
+    public Duration getNearCacheTtl() {
+        return nearCacheTtl;
+    }
+
+    /**
+     * Bulk operations (like {@link CouchbaseCache#getAll(java.util.Set)}) are executed asynchronously against the
+     * bucket. This is the maximum number of such requests that a single bulk operation keeps in flight.
+     *
+     * @return the maximum number of concurrent requests of a bulk operation.
+     */
+    public int getBulkConcurrency() {
+        return bulkConcurrency;
+    }
+
+    /**
+     * When read-through is enabled, keys missed by a bulk operation are loaded together through
+     * {@link javax.cache.integration.CacheLoader#loadAll(Iterable)}. This is the maximum number of keys
+     * passed to a single loadAll call.
+     *
+     * @return the maximum number of keys loaded at once by read-through.
+     */
+    public int getReadThroughBatchSize() {
+        return readThroughBatchSize;
+    }
+
+    /**
+     * Iterating over the cache fetches documents ahead of the calls to {@link java.util.Iterator#next()}. This is
+     * the maximum number of documents an iterator has in flight or buffered at any time.
+     *
+     * @return the prefetch window of cache iterators.
+     */
+    public int getIteratorPrefetch() {
+        return iteratorPrefetch;
+    }
+
+    /**
+     * Iterating over the cache, clearing it or removing all its entries scans the
+     * {@link #getAllViewName() view of all documents} page by page. This is the maximum number of rows per page.
+     *
+     * @return the maximum number of rows of a page of the view.
+     */
+    public int getViewPageSize() {
+        return viewPageSize;
+    }
+
+    /**
+     * Indicates if entries that approach their expiry are reloaded in the background.
+     *
+     * @return true if refresh-ahead is enabled, false otherwise.
+     * @see Builder#withRefreshAhead(float)
+     */
+    public boolean isRefreshAheadEnabled() {
+        return refreshAheadFactor > 0f;
+    }
+
+    /**
+     * The fraction of an entry's TTL under which the entry is reloaded in the background when it is read.
+     *
+     * @return the refresh-ahead factor, or 0 if refresh-ahead is disabled.
+     */
+    public float getRefreshAheadFactor() {
+        return refreshAheadFactor;
+    }
+
+    /**
+     * Indicates if loaded entries are probabilistically recomputed before their expiry when read.
+     *
+     * @return true if early expiration is enabled, false otherwise.
+     * @see Builder#withEarlyExpiration(double)
+     */
+    public boolean isEarlyExpirationEnabled() {
+        return earlyExpirationBeta > 0d;
+    }
+
+    /**
+     * The beta parameter of early expiration, which scales how early entries can be recomputed.
+     *
+     * @return the beta parameter, or 0 if early expiration is disabled.
+     */
+    public double getEarlyExpirationBeta() {
+        return earlyExpirationBeta;
+    }
+
+    /**
+     * Indicates if a local bloom filter of keys is used to answer definite misses of
+     * {@link CouchbaseCache#containsKey(Object)} without a network round trip.
+     *
+     * @return true if the key bloom filter is enabled, false otherwise.
+     * @see Builder#withKeyBloomFilter(long, double)
+     */
+    public boolean isKeyBloomFilterEnabled() {
+        return keyBloomFilterExpectedKeys > 0L;
+    }
+
+    /**
+     * @return the number of keys the key bloom filter is sized for, or 0 if it is disabled.
+     */
+    public long getKeyBloomFilterExpectedKeys() {
+        return keyBloomFilterExpectedKeys;
+    }
+
+    /**
+     * @return the false positive probability the key bloom filter is sized for.
+     */
+    public double getKeyBloomFilterFalsePositiveRate() {
+        return keyBloomFilterFalsePositiveRate;
+    }
+
+    /**
+     * The {@link ValueCodec} used to encode values in the bucket. If null, values are Java serialized the same way
+     * the SDK's SerializableDocument does.
+     *
+     * @return the value codec, or null to use Java serialization.
+     */
+    public ValueCodec<V> getValueCodec() {
+        return valueCodec;
+    }
+
+    /**
+     * @return true if values are compressed when their encoded form is large enough.
+     * @see Builder#withCompression(int, int)
+     */
+    public boolean isCompressionEnabled() {
+        return compressionThreshold > 0;
+    }
+
+    /**
+     * @return the minimum size in bytes of an encoded value for it to be compressed, or 0 if compression is disabled.
+     */
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /**
+     * @return the {@link java.util.zip.Deflater} level used to compress values.
+     */
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * @return true if keys longer than the key compaction threshold are stored under a digest.
+     * @see Builder#withKeyCompaction(int)
+     */
+    public boolean isKeyCompactionEnabled() {
+        return keyCompactionThreshold > 0;
+    }
+
+    /**
+     * @return the maximum length in bytes of keys stored as is, or 0 if key compaction is disabled.
+     */
+    public int getKeyCompactionThreshold() {
+        return keyCompactionThreshold;
+    }
+
+    /**
+     * @return true if bulk operations are grouped by the node holding each key.
+     * @see Builder#withNodeAwareBatching(int)
+     */
+    public boolean isNodeAwareBatchingEnabled() {
+        return nodeConcurrency > 0;
+    }
+
+    /**
+     * @return the maximum number of requests in flight per node in bulk operations, or 0 if bulk operations are not
+     *  grouped by node.
+     */
+    public int getNodeConcurrency() {
+        return nodeConcurrency;
+    }
+
     /**
      * Creates and return a {@link Builder} for creating configuration for a {@link CouchbaseCache} with the given name.
      *
@@ -188,6 +460,22 @@ public class CouchbaseConfiguration<K, V> extends MutableConfiguration<K, V> imp
         private String cachePrefix;
         private String viewAllDesignDoc;
         private String viewAllViewName;
+        private long nearCacheMaxWeight;
+        private ValueWeigher<? super V> nearCacheWeigher;
+        private Duration nearCacheTtl;
+        private int bulkConcurrency;
+        private int readThroughBatchSize;
+        private int iteratorPrefetch;
+        private int viewPageSize;
+        private float refreshAheadFactor;
+        private double earlyExpirationBeta;
+        private long keyBloomFilterExpectedKeys;
+        private double keyBloomFilterFalsePositiveRate;
+        private ValueCodec<V> valueCodec;
+        private int compressionThreshold;
+        private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+        private int keyCompactionThreshold;
+        private int nodeConcurrency;
         private final String cacheName;
         private final KeyConverter<K> keyConverter;
 
@@ -199,6 +487,10 @@ public class CouchbaseConfiguration<K, V> extends MutableConfiguration<K, V> imp
             this.cachePrefix = cacheName + "_";
             this.viewAllDesignDoc = CouchbaseConfiguration.DEFAULT_VIEWALL_DESIGNDOC;
             this.viewAllViewName = cacheName;
+            this.bulkConcurrency = CouchbaseConfiguration.DEFAULT_BULK_CONCURRENCY;
+            this.readThroughBatchSize = CouchbaseConfiguration.DEFAULT_READ_THROUGH_BATCH_SIZE;
+            this.iteratorPrefetch = CouchbaseConfiguration.DEFAULT_ITERATOR_PREFETCH;
+            this.viewPageSize = CouchbaseConfiguration.DEFAULT_VIEW_PAGE_SIZE;
         }
 
         /**
@@ -329,6 +621,269 @@ public class CouchbaseConfiguration<K, V> extends MutableConfiguration<K, V> imp
             return this.viewAll(this.viewAllDesignDoc, viewName);
         }
 
+        /**
+         * Activates a near cache of at most <i>maxEntries</i> entries in front of the bucket. Values found in the
+         * near cache are served without a network round trip as long as they are younger than <i>localTtl</i>.
+         * Older entries keep being served while they are revalidated in the background, by comparing their CAS with
+         * the one on the server without transferring the value again, and are dropped if the document changed.
+         * Entries are never served past the expiry of their document, when it was written by this cache.
+         *
+         * When the cache {@link CouchbaseConfiguration#isStoreByValue() stores by value} (the default), values going
+         * in and out of the near cache are copied by encoding and decoding them, except for well-known immutable
+         * types like Strings and boxed primitives. Otherwise the near cache holds and returns the instances that were
+         * put or read.
+         *
+         * @param maxEntries the maximum number of entries in the near cache (0 to disable it).
+         * @param localTtl the duration after which a near cache entry must be revalidated.
+         * @return this {@link Builder} for chaining calls
+         */
+        public Builder<K, V> withNearCache(long maxEntries, Duration localTtl) {
+            return withNearCache(maxEntries, null, localTtl);
+        }
+
+        /**
+         * Activates a near cache in front of the bucket, bounded by the total weight of its values as computed by
+         * the given <i>weigher</i>.
+         *
+         * @param maxWeight the maximum total weight of the near cache (0 to disable it).
+         * @param weigher the {@link ValueWeigher} computing the weight of each value (null for a weight of 1).
+         * @param localTtl the duration after which a near cache entry must be revalidated.
+         * @return this {@link Builder} for chaining calls
+         * @see #withNearCache(long, Duration)
+         */
+        public Builder<K, V> withNearCache(long maxWeight, ValueWeigher<? super V> weigher, Duration localTtl) {
+            if (maxWeight < 0L) {
+                throw new IllegalArgumentException("Near cache maximum weight must be positive");
+            }
+            if (maxWeight > 0L && (localTtl == null || localTtl.isZero())) {
+                throw new IllegalArgumentException("Near cache local TTL must not be null or zero");
+            }
+            this.nearCacheMaxWeight = maxWeight;
+            this.nearCacheWeigher = maxWeight == 0L ? null : weigher;
+            this.nearCacheTtl = maxWeight == 0L ? null : localTtl;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of requests that a bulk operation keeps in flight against the bucket.
+         *
+         * Defaults to {@link CouchbaseConfiguration#DEFAULT_BULK_CONCURRENCY}.
+         *
+         * @param bulkConcurrency the maximum number of concurrent requests per bulk operation.
+         * @return this {@link Builder} for chaining calls
+         */
+        public Builder<K, V> withBulkConcurrency(int bulkConcurrency) {
+            if (bulkConcurrency < 1) {
+                throw new IllegalArgumentException("Bulk concurrency must be at least 1");
+            }
+            this.bulkConcurrency = bulkConcurrency;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of keys that a bulk operation passes to a single
+         * {@link javax.cache.integration.CacheLoader#loadAll(Iterable)} call when applying read-through.
+         *
+         * Defaults to {@link CouchbaseConfiguration#DEFAULT_READ_THROUGH_BATCH_SIZE}.
+         *
+         * @param batchSize the maximum number of keys loaded at once.
+         * @return this {@link Builder} for chaining calls
+         */
+        public Builder<K, V> withReadThroughBatchSize(int batchSize) {
+            if (batchSize < 1) {
+                throw new IllegalArgumentException("Read-through batch size must be at least 1");
+            }
+            this.readThroughBatchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of documents that a cache iterator fetches ahead of the calls to
+         * {@link java.util.Iterator#next()}. Documents are only requested as the iteration consumes them, so
+         * iterating over a large cache doesn't load it all in memory.
+         *
+         * Defaults to {@link CouchbaseConfiguration#DEFAULT_ITERATOR_PREFETCH}.
+         *
+         * @param prefetch the maximum number of documents in flight or buffered by an iterator.
+         * @return this {@link Builder} for chaining calls
+         */
+        public Builder<K, V> withIteratorPrefetch(int prefetch) {
+            if (prefetch < 1) {
+                throw new IllegalArgumentException("Iterator prefetch must be at least 1");
+            }
+            this.iteratorPrefetch = prefetch;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of rows per page when scanning the view of all documents, to iterate over the
+         * cache, clear it or remove all its entries. The view is scanned by key range, one page at a time.
+         *
+         * Defaults to {@link CouchbaseConfiguration#DEFAULT_VIEW_PAGE_SIZE}.
+         *
+         * @param pageSize the maximum number of rows of a page.
+         * @return this {@link Builder} for chaining calls
+         */
+        public Builder<K, V> withViewPageSize(int pageSize) {
+            if (pageSize < 1) {
+                throw new IllegalArgumentException("View page size must be at least 1");
+            }
+            this.viewPageSize = pageSize;
+            return this;
+        }
+
+        /**
+         * Activates refresh-ahead: when an entry with a TTL is read and less than <i>factor</i> of its TTL
+         * remains, it is reloaded in the background through the configured
+         * {@link javax.cache.integration.CacheLoader} and replaced (as long as it didn't change in the meantime).
+         * Callers keep getting the current value while the reload happens.
+         *
+         * For instance a factor of 0.2 refreshes entries when less than 20% of their TTL remains. Note that this
+         * stores the creation time and TTL of entries alongside their values.
+         *
+         * @param factor the fraction of the TTL under which entries are refreshed, between 0 (disabled) and 1.
+         * @return this {@link Builder} for chaining calls
+         */
+        public Builder<K, V> withRefreshAhead(float factor) {
+            if (factor < 0f || factor >= 1f) {
+                throw new IllegalArgumentException("Refresh-ahead factor must be in [0, 1[");
+            }
+            this.refreshAheadFactor = factor;
+            return this;
+        }
+
+        /**
+         * Activates probabilistic early expiration (XFetch): a reader of an entry that was loaded through the
+         * {@link javax.cache.integration.CacheLoader} recomputes it before its expiry with a probability that
+         * grows as the expiry approaches, and with the time the last load took. That way a small fraction of
+         * readers, spread in time, refresh hot entries instead of all of them when the entry expires, without
+         * coordination between clients.
+         *
+         * A reader recomputes when <code>now - loadCost * beta * ln(random())</code> reaches the expiry. A beta of
+         * 1 is a sensible default, greater values favor earlier recomputation. Note that this stores the creation
+         * time, TTL and load cost of entries alongside their values.
+         *
+         * @param beta the beta parameter, strictly positive (0 to disable).
+         * @return this {@link Builder} for chaining calls
+         */
+        public Builder<K, V> withEarlyExpiration(double beta) {
+            if (beta < 0d || Double.isNaN(beta) || Double.isInfinite(beta)) {
+                throw new IllegalArgumentException("Early expiration beta must be a positive number");
+            }
+            this.earlyExpirationBeta = beta;
+            return this;
+        }
+
+        /**
+         * Activates a local bloom filter of the keys known to be in the cache, so that
+         * {@link CouchbaseCache#containsKey(Object)} answers definite misses without a network round trip.
+         *
+         * The filter only knows about keys written or read by this cache instance, so it must only be activated
+         * when all the writes go through it (eg. a dedicated bucket that is empty when the cache is created).
+         * Otherwise keys created by other clients would be reported as absent.
+         *
+         * @param expectedKeys the number of keys to size the filter for (0 to disable it).
+         * @param falsePositiveRate the acceptable false positive probability once that many keys are known.
+         * @return this {@link Builder} for chaining calls
+         */
+        public Builder<K, V> withKeyBloomFilter(long expectedKeys, double falsePositiveRate) {
+            if (expectedKeys < 0L) {
+                throw new IllegalArgumentException("Expected number of keys must be positive");
+            }
+            if (expectedKeys > 0L && (falsePositiveRate <= 0d || falsePositiveRate >= 1d)) {
+                throw new IllegalArgumentException("False positive rate must be in ]0, 1[");
+            }
+            this.keyBloomFilterExpectedKeys = expectedKeys;
+            this.keyBloomFilterFalsePositiveRate = falsePositiveRate;
+            return this;
+        }
+
+        /**
+         * Sets the {@link ValueCodec} used to encode values in the bucket (see {@link ValueCodecs} for built-in
+         * codecs). The codec is recorded in each document, so values written with another built-in codec (or with
+         * Java serialization, the default) can still be read, allowing an incremental migration. Custom codecs must
+         * use an identifier above {@link ValueCodecs#MAX_RESERVED_ID}, the lower ones being reserved for the built-in
+         * codecs.
+         *
+         * @param valueCodec the codec to use, or null to use Java serialization the same way the SDK does.
+         * @return this {@link Builder} for chaining calls
+         */
+        public Builder<K, V> withValueCodec(ValueCodec<V> valueCodec) {
+            if (valueCodec != null && (valueCodec.id() <= 0 || valueCodec.id() > 255)) {
+                throw new IllegalArgumentException("Value codec identifier must be between 1 and 255");
+            }
+            if (valueCodec != null && valueCodec.id() <= ValueCodecs.MAX_RESERVED_ID
+                    && !ValueCodecs.isBuiltIn(valueCodec)) {
+                throw new IllegalArgumentException("Value codec identifiers up to " + ValueCodecs.MAX_RESERVED_ID
+                        + " are reserved for built-in codecs");
+            }
+            this.valueCodec = valueCodec;
+            return this;
+        }
+
+        /**
+         * Activates the compression (deflate) of values whose encoded form is at least thresholdBytes long. The
+         * compression is recorded in the flags of each document, so compressed and uncompressed values can be read
+         * whatever the current configuration. Values that don't shrink when compressed are stored as is.
+         *
+         * @param thresholdBytes the minimum size of an encoded value for it to be compressed (0 to disable
+         *  compression).
+         * @param level the {@link Deflater} compression level, from 1 (fastest) to 9 (smallest), or
+         *  {@link Deflater#DEFAULT_COMPRESSION}.
+         * @return this {@link Builder} for chaining calls
+         */
+        public Builder<K, V> withCompression(int thresholdBytes, int level) {
+            if (thresholdBytes < 0) {
+                throw new IllegalArgumentException("Compression threshold must be positive");
+            }
+            if (level != Deflater.DEFAULT_COMPRESSION && (level < Deflater.BEST_SPEED
+                    || level > Deflater.BEST_COMPRESSION)) {
+                throw new IllegalArgumentException("Compression level must be between 1 and 9, or -1 for default");
+            }
+            this.compressionThreshold = thresholdBytes;
+            this.compressionLevel = level;
+            return this;
+        }
+
+        /**
+         * Activates key compaction: internal keys (including the cache prefix) longer than thresholdBytes in UTF-8
+         * are stored under the cache prefix followed by their SHA-256 digest, which keeps them below Couchbase's 250
+         * bytes limit and reduces the metadata the server keeps in memory. The original key is stored in the
+         * document, so that iteration and events still give back the real keys.
+         *
+         * Documents written without compaction (or with another threshold) are not found anymore once it is
+         * changed, so it should be set when the cache is first used.
+         *
+         * @param thresholdBytes the maximum length of keys stored as is, at most 250 (0 to disable compaction).
+         * @return this {@link Builder} for chaining calls
+         */
+        public Builder<K, V> withKeyCompaction(int thresholdBytes) {
+            if (thresholdBytes < 0 || thresholdBytes > 250) {
+                throw new IllegalArgumentException("Key compaction threshold must be between 0 and 250 bytes");
+            }
+            this.keyCompactionThreshold = thresholdBytes;
+            return this;
+        }
+
+        /**
+         * Activates node-aware batching of the bulk operations (getAll, loadAll, putAll, removeAll and invokeAll):
+         * keys are grouped by the node holding their partition, and each node gets at most nodeConcurrency requests
+         * in flight, instead of at most {@link #withBulkConcurrency(int) bulkConcurrency} requests overall. A slow
+         * node then only stalls the keys it holds. When the configuration of the bucket isn't available, the bulk
+         * operations fall back to the bulkConcurrency limit.
+         *
+         * @param nodeConcurrency the maximum number of concurrent requests per node (0 to disable node-aware
+         *  batching).
+         * @return this {@link Builder} for chaining calls
+         */
+        public Builder<K, V> withNodeAwareBatching(int nodeConcurrency) {
+            if (nodeConcurrency < 0) {
+                throw new IllegalArgumentException("Node concurrency must be positive");
+            }
+            this.nodeConcurrency = nodeConcurrency;
+            return this;
+        }
+
         /**
          * Create the appropriate {@link CouchbaseConfiguration} from this {@link Builder}.
          *
@@ -341,11 +896,9 @@ public class CouchbaseConfiguration<K, V> extends MutableConfiguration<K, V> imp
             }
 
             if (base == null) {
-                config = new CouchbaseConfiguration<K, V>(cacheName, keyConverter, bucketName, bucketPassword,
-                        cachePrefix, viewAllDesignDoc, viewAllViewName);
+                config = new CouchbaseConfiguration<K, V>(this);
             } else {
-                config = new CouchbaseConfiguration<K, V>(cacheName, keyConverter, base, bucketName, bucketPassword,
-                        cachePrefix, viewAllDesignDoc, viewAllViewName);
+                config = new CouchbaseConfiguration<K, V>(this, base);
             }
             return config;
         }
@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2015 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package com.couchbase.client.jcache;
+
+import java.io.Closeable;
+
+import javax.cache.expiry.Duration;
+import javax.cache.expiry.ExpiryPolicy;
+
+import com.couchbase.client.core.logging.CouchbaseLogger;
+import com.couchbase.client.core.logging.CouchbaseLoggerFactory;
+import com.couchbase.client.java.Bucket;
+import com.couchbase.client.java.document.JsonLongDocument;
+import com.couchbase.client.java.error.DocumentDoesNotExistException;
+
+/**
+ * A cache of counters, obtained from {@link CouchbaseCacheManager#createCounterCache(String, CouchbaseConfiguration)}.
+ *
+ * Each operation maps to a single server-side atomic counter operation of the bucket, so concurrent increments never
+ * conflict nor need to be retried, as opposed to a compare-and-swap loop on a {@link CouchbaseCache} of Longs. Values
+ * are exposed as primitive longs.
+ *
+ * Note that counters are stored as unsigned 64 bits integers by Couchbase: decrementing a counter never takes it
+ * below 0. The CREATION expiry of the configuration applies when a counter is created, the other expiries and the
+ * listeners, loaders and writers of the configuration are ignored.
+ *
+ * @since 1.0
+ */
+public class CouchbaseCounterCache<K> implements Closeable {
+
+    private static final CouchbaseLogger LOGGER = CouchbaseLoggerFactory.getInstance(CouchbaseCounterCache.class);
+
+    private final CouchbaseCacheManager cacheManager;
+    private final String name;
+    private final CouchbaseConfiguration<K, Long> configuration;
+    private final KeyConverter<K> keyConverter;
+    private final Bucket bucket;
+    private final int creationExpiry;
+
+    private volatile boolean isClosed;
+
+    /* package scope*/
+    CouchbaseCounterCache(CouchbaseCacheManager cacheManager, CouchbaseConfiguration<K, Long> configuration) {
+        this.cacheManager = cacheManager;
+        this.name = configuration.getCacheName();
+        this.configuration = configuration;
+        this.keyConverter = configuration.getCachePrefix() == null
+                ? configuration.getKeyConverter()
+                : new KeyConverter.PrefixedKeyConverter<K>(configuration.getKeyConverter(),
+                        configuration.getCachePrefix());
+        this.creationExpiry = toExpiry(configuration.getExpiryPolicyFactory().create());
+        //the bucket may be shared with regular caches, which need their transcoders whoever opens it first
+        this.bucket = cacheManager.getCluster().openBucket(configuration.getBucketName(),
+                configuration.getBucketPassword(), CacheTranscoder.BUCKET_TRANSCODERS);
+    }
+
+    private static int toExpiry(ExpiryPolicy policy) {
+        Duration duration = policy.getExpiryForCreation();
+        if (duration == null || duration.isEternal() || duration.isZero()) {
+            return 0;
+        }
+        long seconds = duration.getTimeUnit().toSeconds(duration.getDurationAmount());
+        if (seconds > CouchbaseCache.MAX_TTL) {
+            throw new IllegalArgumentException("Explicit CREATION expiry must be less than 30 days (30 * 24 * 60 * 60 = "
+                    + CouchbaseCache.MAX_TTL + "sec)");
+        }
+        return (int) seconds;
+    }
+
+    /**
+     * @return the name of this counter cache.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the configuration of this counter cache.
+     */
+    public CouchbaseConfiguration<K, Long> getConfiguration() {
+        return configuration;
+    }
+
+    /**
+     * Get the current value of a counter.
+     *
+     * @param key the key of the counter.
+     * @param defaultValue the value to return if the counter doesn't exist.
+     * @return the value of the counter, or defaultValue if it doesn't exist.
+     */
+    public long get(K key, long defaultValue) {
+        checkOpen();
+        try {
+            JsonLongDocument doc = bucket.get(toInternalKey(key), JsonLongDocument.class);
+            return doc == null ? defaultValue : doc.content();
+        } catch (Exception e) {
+            throw CouchbaseCache.exception("Couldn't get counter " + key, e);
+        }
+    }
+
+    /**
+     * Atomically adds a delta to a counter, creating it with the delta as its value if it doesn't exist.
+     *
+     * @param key the key of the counter.
+     * @param delta the value to add, negative to decrement the counter.
+     * @return the value of the counter after the addition.
+     */
+    public long addAndGet(K key, long delta) {
+        checkOpen();
+        try {
+            return bucket.counter(toInternalKey(key), delta, Math.max(0L, delta), creationExpiry).content();
+        } catch (Exception e) {
+            throw CouchbaseCache.exception("Couldn't add " + delta + " to counter " + key, e);
+        }
+    }
+
+    /**
+     * Atomically adds a delta to a counter, creating it with the delta as its value if it doesn't exist.
+     *
+     * Only positive deltas are accepted: the previous value is deduced from the value returned by the server, which
+     * would be wrong when a decrement is clamped at 0.
+     *
+     * @param key the key of the counter.
+     * @param delta the value to add, which must not be negative.
+     * @return the value of the counter before the addition (0 if it didn't exist).
+     * @throws IllegalArgumentException if the delta is negative.
+     */
+    public long getAndAdd(K key, long delta) {
+        if (delta < 0L) {
+            throw new IllegalArgumentException("Counter delta must be positive to get the previous value");
+        }
+        return addAndGet(key, delta) - delta;
+    }
+
+    /**
+     * Atomically increments a counter, creating it with a value of 1 if it doesn't exist.
+     *
+     * @param key the key of the counter.
+     * @return the value of the counter after the increment.
+     */
+    public long incrementAndGet(K key) {
+        return addAndGet(key, 1L);
+    }
+
+    /**
+     * Atomically decrements a counter, creating it with a value of 0 if it doesn't exist.
+     *
+     * @param key the key of the counter.
+     * @return the value of the counter after the decrement.
+     */
+    public long decrementAndGet(K key) {
+        return addAndGet(key, -1L);
+    }
+
+    /**
+     * Sets the value of a counter, creating it if it doesn't exist.
+     *
+     * @param key the key of the counter.
+     * @param value the new value, which must not be negative.
+     */
+    public void set(K key, long value) {
+        checkOpen();
+        if (value < 0L) {
+            throw new IllegalArgumentException("Counter value must be positive");
+        }
+        try {
+            bucket.upsert(JsonLongDocument.create(toInternalKey(key), creationExpiry, value));
+        } catch (Exception e) {
+            throw CouchbaseCache.exception("Couldn't set counter " + key, e);
+        }
+    }
+
+    /**
+     * Removes a counter.
+     *
+     * @param key the key of the counter.
+     * @return true if the counter existed, false otherwise.
+     */
+    public boolean remove(K key) {
+        checkOpen();
+        try {
+            bucket.remove(toInternalKey(key));
+            return true;
+        } catch (DocumentDoesNotExistException e) {
+            return false;
+        } catch (Exception e) {
+            throw CouchbaseCache.exception("Couldn't remove counter " + key, e);
+        }
+    }
+
+    /**
+     * @return true if this counter cache is closed.
+     */
+    public boolean isClosed() {
+        return isClosed;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!isClosed) {
+            this.isClosed = true;
+
+            //signal the CacheManager that this cache is closed
+            this.cacheManager.signalCacheClosed(getName());
+
+            //close the corresponding bucket
+            try {
+                if (!this.bucket.close()) {
+                    LOGGER.warn("Could not close bucket for counter cache " + getName() + " (returned false)");
+                }
+            } catch (Exception e) {
+                LOGGER.error("Could not close bucket for counter cache " + getName(), e);
+            }
+        }
+    }
+
+    private String toInternalKey(K key) {
+        if (key == null) {
+            throw new NullPointerException("Key cannot be null");
+        }
+        return keyConverter.asString(key);
+    }
+
+    private void checkOpen() {
+        if (isClosed()) {
+            throw new IllegalStateException("Counter cache " + name + " closed");
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2015 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package com.couchbase.client.jcache;
+
+import javax.cache.integration.CacheLoader;
+import javax.cache.processor.EntryProcessor;
+import javax.cache.processor.MutableEntry;
+
+/**
+ * The {@link MutableEntry} given to an {@link EntryProcessor} by a {@link CouchbaseCache}. It records the changes
+ * made by the processor over the value that was fetched, so that the cache can then commit them in a single
+ * CAS-guarded operation.
+ *
+ * @since 1.0
+ */
+class CouchbaseMutableEntry<K, V> implements MutableEntry<K, V> {
+
+    /**
+     * The outcome of the processing of an entry.
+     */
+    enum State {
+        /** The value was not modified. */
+        UNCHANGED,
+        /** The value was absent and has been loaded through the {@link CacheLoader}. */
+        LOADED,
+        /** The value was set by the processor. */
+        SET,
+        /** The value was removed by the processor. */
+        REMOVED
+    }
+
+    private final K key;
+    private final V originalValue;
+    private final CacheLoader<K, V> loader;
+
+    private V value;
+    private State state;
+    private boolean accessed;
+
+    /**
+     * Create a mutable entry.
+     *
+     * @param key the key of the entry.
+     * @param originalValue the value currently in the cache, or null if there is none.
+     * @param loader the {@link CacheLoader} to use if the processor reads an absent value, or null if read-through
+     *  doesn't apply.
+     */
+    public CouchbaseMutableEntry(K key, V originalValue, CacheLoader<K, V> loader) {
+        this.key = key;
+        this.originalValue = originalValue;
+        this.loader = loader;
+        this.value = originalValue;
+        this.state = State.UNCHANGED;
+    }
+
+    @Override
+    public K getKey() {
+        return key;
+    }
+
+    @Override
+    public V getValue() {
+        if (state == State.UNCHANGED) {
+            accessed = true;
+            if (value == null && loader != null) {
+                V loaded = loader.load(key);
+                if (loaded != null) {
+                    value = loaded;
+                    state = State.LOADED;
+                }
+            }
+        }
+        return value;
+    }
+
+    @Override
+    public boolean exists() {
+        return value != null;
+    }
+
+    @Override
+    public void remove() {
+        value = null;
+        state = State.REMOVED;
+    }
+
+    @Override
+    public void setValue(V value) {
+        if (value == null) {
+            throw new NullPointerException("Value cannot be null");
+        }
+        this.value = value;
+        this.state = State.SET;
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> clazz) {
+        if (clazz != null && clazz.isInstance(this)) {
+            return clazz.cast(this);
+        } else {
+            throw new IllegalArgumentException("Class " + clazz + " is unknown to this implementation");
+        }
+    }
+
+    /**
+     * @return the value that was in the cache before the processing, or null if there was none.
+     */
+    public V originalValue() {
+        return originalValue;
+    }
+
+    /**
+     * @return the value after the processing, or null if there is none.
+     */
+    public V value() {
+        return value;
+    }
+
+    /**
+     * @return the outcome of the processing.
+     */
+    public State state() {
+        return state;
+    }
+
+    /**
+     * @return true if the processor read the value that was in the cache.
+     */
+    public boolean isAccessed() {
+        return accessed;
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2015 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package com.couchbase.client.jcache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe bloom filter of internal keys, used by a {@link CouchbaseCache} to answer definite misses locally.
+ * A negative answer from {@link #mightContain(String)} means the key was never {@link #put(String) put}, while
+ * a positive answer may be a false positive.
+ *
+ * @since 1.0
+ */
+class KeyBloomFilter {
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    /**
+     * Create a bloom filter sized for a number of keys and a false positive probability.
+     *
+     * @param expectedKeys the number of keys expected to be put in the filter.
+     * @param falsePositiveRate the probability of false positives once that many keys have been put.
+     */
+    public KeyBloomFilter(long expectedKeys, double falsePositiveRate) {
+        long n = Math.max(1L, expectedKeys);
+        long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.max(1L, (m + 63L) / 64L);
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = words * 64L;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / n * Math.log(2)));
+    }
+
+    /**
+     * Create a bloom filter as described in a {@link CouchbaseConfiguration}.
+     *
+     * @param configuration the configuration of the cache.
+     * @return the bloom filter, or null if the configuration doesn't enable it.
+     */
+    public static KeyBloomFilter create(CouchbaseConfiguration<?, ?> configuration) {
+        if (!configuration.isKeyBloomFilterEnabled()) {
+            return null;
+        }
+        return new KeyBloomFilter(configuration.getKeyBloomFilterExpectedKeys(),
+                configuration.getKeyBloomFilterFalsePositiveRate());
+    }
+
+    /**
+     * Records a key as present.
+     *
+     * @param key the internal key.
+     */
+    public void put(String key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = index(h1 + i * h2);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current;
+            do {
+                current = bits.get(word);
+                if ((current & mask) != 0L) {
+                    break;
+                }
+            } while (!bits.compareAndSet(word, current, current | mask));
+        }
+    }
+
+    /**
+     * Checks if a key may have been recorded as present.
+     *
+     * @param key the internal key.
+     * @return false if the key was definitely never recorded, true if it may have been.
+     */
+    public boolean mightContain(String key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = index(h1 + i * h2);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0L) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Records all the keys recorded by another filter created with the same size.
+     *
+     * @param other the other filter.
+     */
+    public void putAll(KeyBloomFilter other) {
+        if (other.bits.length() != bits.length() || other.hashCount != hashCount) {
+            throw new IllegalArgumentException("Cannot merge bloom filters of different sizes");
+        }
+        for (int word = 0; word < bits.length(); word++) {
+            long mask = other.bits.get(word);
+            long current;
+            do {
+                current = bits.get(word);
+                if ((current | mask) == current) {
+                    break;
+                }
+            } while (!bits.compareAndSet(word, current, current | mask));
+        }
+    }
+
+    /**
+     * Forgets about all keys.
+     */
+    public void clear() {
+        for (int i = 0; i < bits.length(); i++) {
+            bits.set(i, 0L);
+        }
+    }
+
+    private long index(int combinedHash) {
+        //flip negative hashes to keep a good distribution
+        return (combinedHash < 0 ? ~combinedHash : combinedHash) % bitCount;
+    }
+
+    /**
+     * 64 bits FNV-1a hash of the characters of the key.
+     */
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            hash ^= c & 0xff;
+            hash *= 0x100000001b3L;
+            hash ^= c >>> 8;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
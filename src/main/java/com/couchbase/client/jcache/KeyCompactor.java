@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2015 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package com.couchbase.client.jcache;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Shortens the internal keys that are longer than a threshold, storing them under the cache prefix followed by
+ * {@link #MARKER} and the hexadecimal SHA-256 digest of the whole key. The original key is stored in the document
+ * by the {@link CacheTranscoder}, so that it can be given back when iterating and be checked when reading.
+ *
+ * @since 1.0
+ * @see CouchbaseConfiguration.Builder#withKeyCompaction(int)
+ */
+class KeyCompactor {
+
+    /** The separator between the cache prefix and the digest of compacted keys */
+    static final char MARKER = '#';
+
+    private static final int DIGEST_LENGTH = 64;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final ThreadLocal<MessageDigest> SHA256 = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is not available", e);
+            }
+        }
+    };
+
+    private final String prefix;
+    private final int threshold;
+
+    /**
+     * @param prefix the prefix of the cache's keys.
+     * @param threshold the maximum length in UTF-8 bytes of keys that are not compacted.
+     */
+    public KeyCompactor(String prefix, int threshold) {
+        this.prefix = prefix;
+        this.threshold = threshold;
+        if (utf8Length(prefix) + 1 + DIGEST_LENGTH > threshold) {
+            throw new IllegalArgumentException("Key compaction threshold must be at least the length of compacted "
+                    + "keys (" + (utf8Length(prefix) + 1 + DIGEST_LENGTH) + " bytes with prefix " + prefix + ")");
+        }
+    }
+
+    /**
+     * Create the {@link KeyCompactor} corresponding to a configuration.
+     *
+     * @param configuration the configuration of the cache.
+     * @return the key compactor, or null if key compaction is disabled.
+     */
+    public static KeyCompactor create(CouchbaseConfiguration<?, ?> configuration) {
+        if (!configuration.isKeyCompactionEnabled()) {
+            return null;
+        }
+        String prefix = configuration.getCachePrefix() == null ? "" : configuration.getCachePrefix();
+        return new KeyCompactor(prefix, configuration.getKeyCompactionThreshold());
+    }
+
+    /**
+     * @param internalKey the internal key.
+     * @return the key to store the document under: the internal key itself if it is short enough, its compacted
+     *  form otherwise.
+     */
+    public String compact(String internalKey) {
+        if (utf8Length(internalKey) <= threshold) {
+            return internalKey;
+        }
+        byte[] digest = SHA256.get().digest(internalKey.getBytes(UTF_8));
+        StringBuilder compacted = new StringBuilder(prefix.length() + 1 + DIGEST_LENGTH)
+                .append(prefix)
+                .append(MARKER);
+        for (byte b : digest) {
+            compacted.append(HEX[(b >>> 4) & 0xF]).append(HEX[b & 0xF]);
+        }
+        return compacted.toString();
+    }
+
+    /**
+     * Computes the length of the UTF-8 encoding of a String without encoding it.
+     */
+    static int utf8Length(String s) {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length()
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
@@ -61,27 +61,42 @@ public interface KeyConverter<K> extends Serializable {
 
     /**
      * A {@link KeyConverter} that adds/removes a prefix to keys otherwise managed by a delegate KeyConverter.
+     *
+     * The prefix is matched literally (not as a regular expression). If the delegate is a {@link RangeKeyConverter},
+     * keys are written after the prefix and read past it without building intermediate Strings.
      */
     public static class PrefixedKeyConverter<K> implements KeyConverter<K> {
         private final KeyConverter<K> delegate;
+        private final RangeKeyConverter<K> rangeDelegate;
         private final String keyPrefix;
 
         public PrefixedKeyConverter(KeyConverter<K> wrappedConverter, String keyPrefix) {
             this.delegate = wrappedConverter;
+            this.rangeDelegate = wrappedConverter instanceof RangeKeyConverter
+                    ? (RangeKeyConverter<K>) wrappedConverter
+                    : null;
             this.keyPrefix = keyPrefix;
         }
 
         @Override
         public String asString(K key) {
-            return keyPrefix + delegate.asString(key);
+            if (rangeDelegate != null) {
+                StringBuilder out = new StringBuilder(keyPrefix.length() + 24).append(keyPrefix);
+                rangeDelegate.append(key, out);
+                return out.toString();
+            }
+            return keyPrefix.concat(delegate.asString(key));
         }
 
         @Override
         public K fromString(String internalKey) {
-            //strip the prefix
-            internalKey = internalKey.replaceFirst(keyPrefix, "");
+            //strip the prefix, if present
+            int start = internalKey.startsWith(keyPrefix) ? keyPrefix.length() : 0;
             //transform back to K
-            return delegate.fromString(internalKey);
+            if (rangeDelegate != null) {
+                return rangeDelegate.fromString(internalKey, start, internalKey.length());
+            }
+            return delegate.fromString(internalKey.substring(start));
         }
     }
 }
@@ -0,0 +1,304 @@
+/*
+ * Copyright (c) 2015 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package com.couchbase.client.jcache;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Built-in {@link KeyConverter KeyConverters} for common key types. They are all {@link RangeKeyConverter
+ * RangeKeyConverters}, so they don't build intermediate Strings when used with a cache prefix.
+ *
+ * @since 1.0
+ */
+public final class KeyConverters {
+
+    private KeyConverters() {
+    }
+
+    /**
+     * @return a {@link KeyConverter} for {@link Long} keys, in their decimal form.
+     */
+    public static RangeKeyConverter<Long> longs() {
+        return LongKeyConverter.INSTANCE;
+    }
+
+    /**
+     * @return a {@link KeyConverter} for {@link Integer} keys, in their decimal form.
+     */
+    public static RangeKeyConverter<Integer> integers() {
+        return IntegerKeyConverter.INSTANCE;
+    }
+
+    /**
+     * @return a {@link KeyConverter} for {@link UUID} keys, in their canonical 36 characters form.
+     */
+    public static RangeKeyConverter<UUID> uuids() {
+        return UuidKeyConverter.INSTANCE;
+    }
+
+    /**
+     * A {@link KeyConverter} for composite keys, represented as lists of parts that are each converted by the
+     * corresponding part converter and joined by a separator. The String form of all parts but the last one must
+     * not contain the separator.
+     *
+     * @param separator the character separating parts.
+     * @param parts the converters of each part of the keys, in order.
+     * @return a {@link KeyConverter} for lists of as many parts as there are part converters.
+     */
+    public static RangeKeyConverter<List<Object>> composite(char separator, KeyConverter<?>... parts) {
+        if (parts == null || parts.length == 0) {
+            throw new IllegalArgumentException("Composite keys need at least one part");
+        }
+        return new CompositeKeyConverter(separator, parts.clone());
+    }
+
+    /**
+     * Parses the decimal representation of a long from a range of a String.
+     */
+    static long parseLong(String s, int start, int end, long min, long max) {
+        if (start >= end) {
+            throw new NumberFormatException("Empty number in \"" + s + "\"");
+        }
+        boolean negative = s.charAt(start) == '-';
+        int i = negative ? start + 1 : start;
+        if (i == end) {
+            throw new NumberFormatException("For input string: \"" + s.substring(start, end) + "\"");
+        }
+        //accumulate negatively, as the negative range is larger
+        long limit = negative ? min : -max;
+        long multiplyMin = limit / 10;
+        long result = 0L;
+        for (; i < end; i++) {
+            int digit = Character.digit(s.charAt(i), 10);
+            if (digit < 0 || result < multiplyMin) {
+                throw new NumberFormatException("For input string: \"" + s.substring(start, end) + "\"");
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                throw new NumberFormatException("For input string: \"" + s.substring(start, end) + "\"");
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    private static final class LongKeyConverter implements RangeKeyConverter<Long> {
+
+        private static final long serialVersionUID = 1L;
+        static final LongKeyConverter INSTANCE = new LongKeyConverter();
+
+        @Override
+        public String asString(Long key) {
+            return key.toString();
+        }
+
+        @Override
+        public Long fromString(String internalKey) {
+            return fromString(internalKey, 0, internalKey.length());
+        }
+
+        @Override
+        public void append(Long key, StringBuilder out) {
+            out.append(key.longValue());
+        }
+
+        @Override
+        public Long fromString(String internalKey, int start, int end) {
+            return parseLong(internalKey, start, end, Long.MIN_VALUE, Long.MAX_VALUE);
+        }
+
+        private Object readResolve() {
+            return INSTANCE;
+        }
+    }
+
+    private static final class IntegerKeyConverter implements RangeKeyConverter<Integer> {
+
+        private static final long serialVersionUID = 1L;
+        static final IntegerKeyConverter INSTANCE = new IntegerKeyConverter();
+
+        @Override
+        public String asString(Integer key) {
+            return key.toString();
+        }
+
+        @Override
+        public Integer fromString(String internalKey) {
+            return fromString(internalKey, 0, internalKey.length());
+        }
+
+        @Override
+        public void append(Integer key, StringBuilder out) {
+            out.append(key.intValue());
+        }
+
+        @Override
+        public Integer fromString(String internalKey, int start, int end) {
+            return (int) parseLong(internalKey, start, end, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        }
+
+        private Object readResolve() {
+            return INSTANCE;
+        }
+    }
+
+    private static final class UuidKeyConverter implements RangeKeyConverter<UUID> {
+
+        private static final long serialVersionUID = 1L;
+        static final UuidKeyConverter INSTANCE = new UuidKeyConverter();
+
+        private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+        private static final int LENGTH = 36;
+
+        @Override
+        public String asString(UUID key) {
+            StringBuilder out = new StringBuilder(LENGTH);
+            append(key, out);
+            return out.toString();
+        }
+
+        @Override
+        public UUID fromString(String internalKey) {
+            return fromString(internalKey, 0, internalKey.length());
+        }
+
+        @Override
+        public void append(UUID key, StringBuilder out) {
+            long msb = key.getMostSignificantBits();
+            long lsb = key.getLeastSignificantBits();
+            appendHex(out, msb >>> 32, 8);
+            out.append('-');
+            appendHex(out, msb >>> 16, 4);
+            out.append('-');
+            appendHex(out, msb, 4);
+            out.append('-');
+            appendHex(out, lsb >>> 48, 4);
+            out.append('-');
+            appendHex(out, lsb, 12);
+        }
+
+        @Override
+        public UUID fromString(String internalKey, int start, int end) {
+            if (end - start != LENGTH || internalKey.charAt(start + 8) != '-' || internalKey.charAt(start + 13) != '-'
+                    || internalKey.charAt(start + 18) != '-' || internalKey.charAt(start + 23) != '-') {
+                throw new IllegalArgumentException("Invalid UUID key: " + internalKey.substring(start, end));
+            }
+            long msb = parseHex(internalKey, start, start + 8) << 32
+                    | parseHex(internalKey, start + 9, start + 13) << 16
+                    | parseHex(internalKey, start + 14, start + 18);
+            long lsb = parseHex(internalKey, start + 19, start + 23) << 48
+                    | parseHex(internalKey, start + 24, start + 36);
+            return new UUID(msb, lsb);
+        }
+
+        private static void appendHex(StringBuilder out, long value, int digits) {
+            for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+                out.append(DIGITS[(int) (value >>> shift) & 0xF]);
+            }
+        }
+
+        private static long parseHex(String s, int start, int end) {
+            long result = 0L;
+            for (int i = start; i < end; i++) {
+                int digit = Character.digit(s.charAt(i), 16);
+                if (digit < 0) {
+                    throw new IllegalArgumentException("Invalid UUID key: " + s);
+                }
+                result = (result << 4) | digit;
+            }
+            return result;
+        }
+
+        private Object readResolve() {
+            return INSTANCE;
+        }
+    }
+
+    private static final class CompositeKeyConverter implements RangeKeyConverter<List<Object>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final char separator;
+        private final KeyConverter<?>[] parts;
+
+        CompositeKeyConverter(char separator, KeyConverter<?>[] parts) {
+            this.separator = separator;
+            this.parts = parts;
+        }
+
+        @Override
+        public String asString(List<Object> key) {
+            StringBuilder out = new StringBuilder();
+            append(key, out);
+            return out.toString();
+        }
+
+        @Override
+        public List<Object> fromString(String internalKey) {
+            return fromString(internalKey, 0, internalKey.length());
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void append(List<Object> key, StringBuilder out) {
+            if (key.size() != parts.length) {
+                throw new IllegalArgumentException("Composite key must have " + parts.length + " parts: " + key);
+            }
+            for (int i = 0; i < parts.length; i++) {
+                Object part = key.get(i);
+                if (part == null) {
+                    throw new NullPointerException("Composite key parts cannot be null: " + key);
+                }
+                if (i > 0) {
+                    out.append(separator);
+                }
+                int start = out.length();
+                if (parts[i] instanceof RangeKeyConverter) {
+                    ((RangeKeyConverter<Object>) parts[i]).append(part, out);
+                } else {
+                    out.append(((KeyConverter<Object>) parts[i]).asString(part));
+                }
+                if (i < parts.length - 1 && out.indexOf(String.valueOf(separator), start) >= 0) {
+                    throw new IllegalArgumentException("Part " + i + " of composite key " + key
+                            + " contains the separator " + separator);
+                }
+            }
+        }
+
+        @Override
+        public List<Object> fromString(String internalKey, int start, int end) {
+            Object[] values = new Object[parts.length];
+            int partStart = start;
+            for (int i = 0; i < parts.length; i++) {
+                int partEnd = end;
+                if (i < parts.length - 1) {
+                    partEnd = internalKey.indexOf(separator, partStart);
+                    if (partEnd < 0 || partEnd >= end) {
+                        throw new IllegalArgumentException("Composite key " + internalKey.substring(start, end)
+                                + " must have " + parts.length + " parts");
+                    }
+                }
+                if (parts[i] instanceof RangeKeyConverter) {
+                    values[i] = ((RangeKeyConverter<?>) parts[i]).fromString(internalKey, partStart, partEnd);
+                } else {
+                    values[i] = parts[i].fromString(internalKey.substring(partStart, partEnd));
+                }
+                partStart = partEnd + 1;
+            }
+            return Arrays.asList(values);
+        }
+    }
+}
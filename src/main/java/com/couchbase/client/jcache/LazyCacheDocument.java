@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2015 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package com.couchbase.client.jcache;
+
+import com.couchbase.client.java.document.AbstractDocument;
+
+/**
+ * A {@link CacheDocument} variant whose content is only decoded when it is read, used when fetching documents
+ * whose values may never be looked at (eg. during iteration).
+ *
+ * @since 1.0
+ * @see LazyCacheTranscoder
+ */
+class LazyCacheDocument extends AbstractDocument<LazyValue> {
+
+    private final String originalId;
+
+    /**
+     * Creates a {@link LazyCacheDocument} with the id and content.
+     *
+     * @param id the per-bucket unique document id.
+     * @param content the lazily decoded content of the document.
+     * @return a {@link LazyCacheDocument}.
+     */
+    public static LazyCacheDocument create(String id, LazyValue content) {
+        return new LazyCacheDocument(id, 0, content, 0L);
+    }
+
+    /**
+     * Creates a {@link LazyCacheDocument} with the id, expiry, content and CAS value.
+     *
+     * @param id the per-bucket unique document id.
+     * @param expiry the expiration time of the document.
+     * @param content the lazily decoded content of the document.
+     * @param cas the CAS (compare and swap) value for optimistic concurrency.
+     * @return a {@link LazyCacheDocument}.
+     */
+    public static LazyCacheDocument create(String id, int expiry, LazyValue content, long cas) {
+        return new LazyCacheDocument(id, expiry, content, cas);
+    }
+
+    /**
+     * Creates a {@link LazyCacheDocument} stored under a compacted key.
+     *
+     * @param id the per-bucket unique document id.
+     * @param expiry the expiration time of the document.
+     * @param content the content of the document.
+     * @param cas the CAS (compare and swap) value for optimistic concurrency.
+     * @param originalId the internal key the id was compacted from, or null if it wasn't.
+     * @return a {@link LazyCacheDocument}.
+     * @see KeyCompactor
+     */
+    static LazyCacheDocument create(String id, int expiry, LazyValue content, long cas, String originalId) {
+        return new LazyCacheDocument(id, expiry, content, cas, originalId);
+    }
+
+    private LazyCacheDocument(String id, int expiry, LazyValue content, long cas) {
+        this(id, expiry, content, cas, null);
+    }
+
+    private LazyCacheDocument(String id, int expiry, LazyValue content, long cas, String originalId) {
+        super(id, expiry, content, cas);
+        this.originalId = originalId;
+    }
+
+    /**
+     * @return the internal key the id was compacted from, or null if the id is not compacted.
+     */
+    String originalId() {
+        return originalId;
+    }
+
+    /**
+     * @return the internal key of the entry held by this document, which is its id unless it is compacted.
+     */
+    String internalKey() {
+        return originalId == null ? id() : originalId;
+    }
+
+    /**
+     * @param transcoder the transcoder of the cache the document is read from.
+     * @return a document whose content is decoded by this transcoder.
+     * @see LazyValue#boundTo(CacheTranscoder)
+     */
+    LazyCacheDocument boundTo(CacheTranscoder transcoder) {
+        LazyValue bound = content().boundTo(transcoder);
+        return bound == content() ? this : new LazyCacheDocument(id(), expiry(), bound, cas(), originalId);
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2015 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package com.couchbase.client.jcache;
+
+import com.couchbase.client.core.lang.Tuple2;
+import com.couchbase.client.core.message.ResponseStatus;
+import com.couchbase.client.deps.io.netty.buffer.ByteBuf;
+import com.couchbase.client.java.transcoder.AbstractTranscoder;
+
+/**
+ * The transcoder of {@link LazyCacheDocument LazyCacheDocuments}. Decoding only copies the received content, which
+ * is decoded by the {@link CacheTranscoder} of the cache once it is read (see
+ * {@link LazyCacheDocument#boundTo(CacheTranscoder)}). Encoding is delegated to the {@link CacheTranscoder}.
+ *
+ * @since 1.0
+ */
+class LazyCacheTranscoder extends AbstractTranscoder<LazyCacheDocument, LazyValue> {
+
+    private final CacheTranscoder delegate;
+
+    public LazyCacheTranscoder(CacheTranscoder delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    protected LazyCacheDocument doDecode(String id, ByteBuf content, long cas, int expiry, int flags,
+            ResponseStatus status) throws Exception {
+        //the received buffer doesn't outlive the decoding, so its bytes are kept
+        return LazyCacheDocument.create(id, expiry, LazyValue.encoded(delegate, id, CacheTranscoder.bytesOf(content),
+                flags), cas, delegate.originalId(id, content, flags));
+    }
+
+    @Override
+    protected Tuple2<ByteBuf, Integer> doEncode(LazyCacheDocument document) throws Exception {
+        return delegate.encode(CacheDocument.create(document.id(), document.expiry(), document.content().get(),
+                document.cas(), document.originalId()));
+    }
+
+    @Override
+    public LazyCacheDocument newDocument(String id, int expiry, LazyValue content, long cas) {
+        return LazyCacheDocument.create(id, expiry, content, cas);
+    }
+
+    @Override
+    public Class<LazyCacheDocument> documentType() {
+        return LazyCacheDocument.class;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2015 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package com.couchbase.client.jcache;
+
+import com.couchbase.client.deps.io.netty.buffer.Unpooled;
+
+/**
+ * The content of a document kept in its encoded form, and only decoded the first time it is needed. It allows
+ * {@link CouchbaseCacheEntry entries} and {@link CouchbaseCacheEntryEvent events} to be built without paying for
+ * the decoding of values that are never read.
+ *
+ * @since 1.0
+ */
+final class LazyValue {
+
+    private final CacheTranscoder transcoder;
+    private final String id;
+    private final int flags;
+
+    private byte[] bytes;
+    private Object value;
+
+    private LazyValue(CacheTranscoder transcoder, String id, byte[] bytes, int flags, Object value) {
+        this.transcoder = transcoder;
+        this.id = id;
+        this.bytes = bytes;
+        this.flags = flags;
+        this.value = value;
+    }
+
+    /**
+     * Creates a lazy value from the encoded content of a document.
+     *
+     * @param transcoder the transcoder to decode the content with.
+     * @param id the id of the document.
+     * @param bytes the encoded content.
+     * @param flags the flags of the document.
+     * @return the lazy value.
+     */
+    public static LazyValue encoded(CacheTranscoder transcoder, String id, byte[] bytes, int flags) {
+        return new LazyValue(transcoder, id, bytes, flags, null);
+    }
+
+    /**
+     * Creates a lazy value that is already decoded.
+     *
+     * @param value the decoded content.
+     * @return the lazy value.
+     */
+    public static LazyValue decoded(Object value) {
+        return new LazyValue(null, null, null, 0, value);
+    }
+
+    /**
+     * Binds a value that is still encoded to the transcoder of the cache it is read from, which knows the codec of
+     * the cache.
+     *
+     * @param cacheTranscoder the transcoder to decode the content with.
+     * @return a lazy value decoded by this transcoder, or this value if it is already decoded or bound to it.
+     */
+    public synchronized LazyValue boundTo(CacheTranscoder cacheTranscoder) {
+        if (bytes == null || transcoder == cacheTranscoder) {
+            return this;
+        }
+        return new LazyValue(cacheTranscoder, id, bytes, flags, null);
+    }
+
+    /**
+     * @return the decoded content, decoding it the first time this is called.
+     */
+    public synchronized Object get() {
+        if (bytes != null) {
+            value = transcoder.decodeContent(id, Unpooled.wrappedBuffer(bytes), flags);
+            bytes = null;
+        }
+        return value;
+    }
+
+    /**
+     * @return true if the content has been decoded.
+     */
+    public synchronized boolean isDecoded() {
+        return bytes == null;
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2015 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package com.couchbase.client.jcache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.cache.expiry.Duration;
+
+/**
+ * A bounded, in-process tier kept by a {@link CouchbaseCache} in front of its bucket. Entries are indexed by
+ * internal (couchbase) key and remember the CAS of the document they were read from or written as, so that
+ * an entry older than the local TTL can be validated against the server without transferring the value again.
+ * Such a validation is done in the background, the entry being served meanwhile.
+ *
+ * Entries also remember when the document they correspond to expires on the server, if known, and are never served
+ * past that time.
+ *
+ * Eviction is least-recently-used, bounded either by number of entries or by the total weight computed by a
+ * {@link ValueWeigher}.
+ *
+ * @since 1.0
+ */
+class NearCache<V> {
+
+    private final long maxWeight;
+    private final ValueWeigher<? super V> weigher;
+    private final long ttlNanos;
+    private final LinkedHashMap<String, Entry<V>> entries;
+
+    private long totalWeight;
+
+    /**
+     * Create a near cache.
+     *
+     * @param maxWeight the maximum total weight of the entries.
+     * @param weigher the {@link ValueWeigher} to use, or null for a weight of 1 per entry.
+     * @param localTtl the duration after which an entry is no longer considered fresh.
+     */
+    public NearCache(long maxWeight, ValueWeigher<? super V> weigher, Duration localTtl) {
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+        if (localTtl == null || localTtl.isEternal()) {
+            this.ttlNanos = Long.MAX_VALUE;
+        } else {
+            this.ttlNanos = localTtl.getTimeUnit().toNanos(localTtl.getDurationAmount());
+        }
+        this.entries = new LinkedHashMap<String, Entry<V>>(16, 0.75f, true);
+    }
+
+    /**
+     * Create a near cache as described in a {@link CouchbaseConfiguration}.
+     *
+     * @param configuration the configuration of the cache.
+     * @return the near cache, or null if the configuration doesn't enable it.
+     */
+    public static <V> NearCache<V> create(CouchbaseConfiguration<?, V> configuration) {
+        if (!configuration.isNearCacheEnabled()) {
+            return null;
+        }
+        return new NearCache<V>(configuration.getNearCacheMaxWeight(), configuration.getNearCacheWeigher(),
+                configuration.getNearCacheTtl());
+    }
+
+    /**
+     * Look up an entry, fresh or not.
+     *
+     * @param key the internal key.
+     * @return the entry or null if the near cache doesn't know the key, or if the corresponding document has expired.
+     */
+    public synchronized Entry<V> get(String key) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null && entry.isExpired(System.currentTimeMillis())) {
+            invalidate(key);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Checks that an entry has been validated against the server less than the local TTL ago.
+     *
+     * @param entry the entry to check.
+     * @return true if the entry can be served without validation.
+     */
+    public boolean isFresh(Entry<V> entry) {
+        return System.nanoTime() - entry.validatedAt < ttlNanos;
+    }
+
+    /**
+     * Claims the validation of an entry that is not fresh anymore, so that it is validated only once at a time.
+     *
+     * @param entry the entry to validate.
+     * @return true if the caller must validate the entry, false if its validation is already in progress.
+     */
+    public boolean startValidation(Entry<V> entry) {
+        return entry.validating.compareAndSet(false, true);
+    }
+
+    /**
+     * Marks an entry as fresh again, after its CAS has been checked against the server.
+     *
+     * @param entry the entry that was validated.
+     */
+    public void revalidate(Entry<V> entry) {
+        entry.validatedAt = System.nanoTime();
+        entry.validating.set(false);
+    }
+
+    /**
+     * Store a value with the CAS of the corresponding document, evicting least recently used entries if needed.
+     *
+     * @param key the internal key.
+     * @param value the value.
+     * @param cas the CAS of the document holding the value.
+     */
+    public void put(String key, V value, long cas) {
+        put(key, value, cas, 0L);
+    }
+
+    /**
+     * Store a value with the CAS and expiry of the corresponding document, evicting least recently used entries if
+     * needed.
+     *
+     * @param key the internal key.
+     * @param value the value.
+     * @param cas the CAS of the document holding the value.
+     * @param expiresAtMillis the time at which the document expires on the server in milliseconds since the epoch,
+     *  or 0 if it doesn't expire.
+     */
+    public synchronized void put(String key, V value, long cas, long expiresAtMillis) {
+        long weight = weigher == null ? 1L : weigher.weigh(value);
+        Entry<V> old = entries.remove(key);
+        if (old != null) {
+            totalWeight -= old.weight;
+        }
+        if (weight > maxWeight) {
+            //would evict everything and still not fit
+            return;
+        }
+
+        entries.put(key, new Entry<V>(value, cas, weight, System.nanoTime(), expiresAtMillis));
+        totalWeight += weight;
+
+        Iterator<Map.Entry<String, Entry<V>>> lru = entries.entrySet().iterator();
+        while (totalWeight > maxWeight && lru.hasNext()) {
+            totalWeight -= lru.next().getValue().weight;
+            lru.remove();
+        }
+    }
+
+    /**
+     * Forget about a key, eg. because it was removed or modified without knowledge of the new CAS.
+     *
+     * @param key the internal key.
+     */
+    public synchronized void invalidate(String key) {
+        Entry<V> old = entries.remove(key);
+        if (old != null) {
+            totalWeight -= old.weight;
+        }
+    }
+
+    /**
+     * Records a new expiry for the document of a key, eg. after it was touched.
+     *
+     * @param key the internal key.
+     * @param expiresAtMillis the time at which the document now expires on the server in milliseconds since the
+     *  epoch, or 0 if it doesn't expire anymore.
+     */
+    public synchronized void expireAt(String key, long expiresAtMillis) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null) {
+            entry.expiresAtMillis = expiresAtMillis;
+        }
+    }
+
+    /**
+     * Forget about a key if it still maps to a given entry, eg. because the entry could not be validated. A newer
+     * entry for the key is kept.
+     *
+     * @param key the internal key.
+     * @param entry the entry to forget.
+     */
+    public synchronized void invalidate(String key, Entry<V> entry) {
+        if (entries.get(key) == entry) {
+            invalidate(key);
+        }
+    }
+
+    /**
+     * Forget about all keys.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        totalWeight = 0L;
+    }
+
+    /**
+     * @return the number of entries currently in the near cache.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the total weight of the entries currently in the near cache.
+     */
+    public synchronized long weight() {
+        return totalWeight;
+    }
+
+    /**
+     * An entry of the near cache: a value and the CAS of the document it corresponds to.
+     */
+    public static final class Entry<V> {
+
+        private final V value;
+        private final long cas;
+        private final long weight;
+        private final AtomicBoolean validating = new AtomicBoolean();
+        private volatile long validatedAt;
+        private volatile long expiresAtMillis;
+
+        private Entry(V value, long cas, long weight, long validatedAt, long expiresAtMillis) {
+            this.value = value;
+            this.cas = cas;
+            this.weight = weight;
+            this.validatedAt = validatedAt;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+
+        private boolean isExpired(long nowMillis) {
+            return expiresAtMillis > 0L && nowMillis >= expiresAtMillis;
+        }
+
+        public V value() {
+            return value;
+        }
+
+        public long cas() {
+            return cas;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2015 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package com.couchbase.client.jcache;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import com.couchbase.client.core.config.BucketConfig;
+import com.couchbase.client.core.config.CouchbaseBucketConfig;
+import com.couchbase.client.core.config.Partition;
+import com.couchbase.client.core.logging.CouchbaseLogger;
+import com.couchbase.client.core.logging.CouchbaseLoggerFactory;
+import com.couchbase.client.core.message.internal.GetClusterConfigRequest;
+import com.couchbase.client.core.message.internal.GetClusterConfigResponse;
+import com.couchbase.client.java.Bucket;
+import rx.Observable;
+import rx.functions.Func1;
+
+/**
+ * Dispatches the operations of a bulk call grouped by the node that holds the master partition (vBucket) of each
+ * key, with a concurrency limit per node. A slow node then only delays the operations of its own group, while the
+ * other nodes keep receiving requests.
+ *
+ * The partition of a key is computed locally, the same way the server does (CRC32 of the document id), from the
+ * current configuration of the bucket. If the configuration isn't available or the bucket isn't a Couchbase bucket,
+ * the operations are not grouped but limited by the concurrency of the whole bulk call, as are the operations whose
+ * node is unknown.
+ *
+ * @since 1.0
+ * @see CouchbaseConfiguration.Builder#withNodeAwareBatching(int)
+ */
+class PartitionBatcher {
+
+    private static final CouchbaseLogger LOGGER = CouchbaseLoggerFactory.getInstance(PartitionBatcher.class);
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** The group of keys whose node is unknown */
+    static final String UNKNOWN_NODE = "";
+
+    private final Bucket bucket;
+    private final int nodeConcurrency;
+    private final int bulkConcurrency;
+
+    /**
+     * @param bucket the bucket the operations are done on.
+     * @param nodeConcurrency the maximum number of operations in flight for each node.
+     * @param bulkConcurrency the maximum number of operations in flight when they can't be grouped by node.
+     */
+    public PartitionBatcher(Bucket bucket, int nodeConcurrency, int bulkConcurrency) {
+        this.bucket = bucket;
+        this.nodeConcurrency = nodeConcurrency;
+        this.bulkConcurrency = bulkConcurrency;
+    }
+
+    /**
+     * Applies an operation to each item, grouping the items by node.
+     *
+     * @param items the items of the bulk call.
+     * @param idOf the function giving the document id of an item.
+     * @param operation the operation to apply to each item.
+     * @return an Observable merging the results of all operations.
+     */
+    public <T, R> Observable<R> dispatch(final Iterable<? extends T> items, final Func1<? super T, String> idOf,
+            final Func1<? super T, Observable<R>> operation) {
+        return bucketConfig().flatMap(new Func1<CouchbaseBucketConfig, Observable<R>>() {
+            @Override
+            public Observable<R> call(CouchbaseBucketConfig config) {
+                if (config == null || config.partitions().isEmpty()) {
+                    return Observable.merge(Observable.from(items).map(operation), bulkConcurrency);
+                }
+                Map<String, List<T>> groups = PartitionBatcher.<T>groupByNode(config, items, idOf);
+                List<Observable<R>> perNode = new ArrayList<Observable<R>>(groups.size());
+                for (Map.Entry<String, List<T>> group : groups.entrySet()) {
+                    int concurrency = UNKNOWN_NODE.equals(group.getKey()) ? bulkConcurrency : nodeConcurrency;
+                    perNode.add(Observable.merge(Observable.from(group.getValue()).map(operation), concurrency));
+                }
+                return Observable.merge(perNode);
+            }
+        });
+    }
+
+    /**
+     * Groups items by the node holding the master partition of their document id.
+     *
+     * @param config the configuration of the bucket, or null if unknown.
+     * @param items the items to group.
+     * @param idOf the function giving the document id of an item.
+     * @return the groups of items, by node.
+     */
+    static <T> Map<String, List<T>> groupByNode(CouchbaseBucketConfig config, Iterable<? extends T> items,
+            Func1<? super T, String> idOf) {
+        Map<String, List<T>> groups = new LinkedHashMap<String, List<T>>();
+        for (T item : items) {
+            String node = config == null ? UNKNOWN_NODE : nodeOf(config, idOf.call(item));
+            List<T> group = groups.get(node);
+            if (group == null) {
+                group = new ArrayList<T>();
+                groups.put(node, group);
+            }
+            group.add(item);
+        }
+        return groups;
+    }
+
+    /**
+     * Computes the partition (vBucket) of a document id, as the server does.
+     *
+     * @param id the document id.
+     * @param numberOfPartitions the number of partitions of the bucket, a power of 2.
+     * @return the partition of the document.
+     */
+    static int partition(String id, int numberOfPartitions) {
+        CRC32 crc32 = new CRC32();
+        byte[] bytes = id.getBytes(UTF_8);
+        crc32.update(bytes, 0, bytes.length);
+        long hash = (crc32.getValue() >> 16) & 0x7fff;
+        return (int) hash & (numberOfPartitions - 1);
+    }
+
+    private static String nodeOf(CouchbaseBucketConfig config, String id) {
+        List<Partition> partitions = config.partitions();
+        if (partitions.isEmpty()) {
+            return UNKNOWN_NODE;
+        }
+        int master = partitions.get(partition(id, partitions.size())).master();
+        List<String> hosts = config.partitionHosts();
+        return master >= 0 && master < hosts.size() ? hosts.get(master) : UNKNOWN_NODE;
+    }
+
+    private Observable<CouchbaseBucketConfig> bucketConfig() {
+        return bucket.core().<GetClusterConfigResponse>send(new GetClusterConfigRequest())
+                .map(new Func1<GetClusterConfigResponse, CouchbaseBucketConfig>() {
+                    @Override
+                    public CouchbaseBucketConfig call(GetClusterConfigResponse response) {
+                        BucketConfig config = response.config().bucketConfig(bucket.name());
+                        return config instanceof CouchbaseBucketConfig ? (CouchbaseBucketConfig) config : null;
+                    }
+                })
+                .onErrorReturn(new Func1<Throwable, CouchbaseBucketConfig>() {
+                    @Override
+                    public CouchbaseBucketConfig call(Throwable throwable) {
+                        LOGGER.debug("Could not get the configuration of bucket " + bucket.name()
+                                + ", keys won't be grouped by node", throwable);
+                        return null;
+                    }
+                });
+    }
+}
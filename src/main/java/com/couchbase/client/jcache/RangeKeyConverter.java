@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2015 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package com.couchbase.client.jcache;
+
+/**
+ * A {@link KeyConverter} able to write keys to a {@link StringBuilder} and to read them back from a range of a
+ * {@link String}. When wrapped in a {@link KeyConverter.PrefixedKeyConverter} or a composite converter, this avoids
+ * building an intermediate String for each key.
+ *
+ * @since 1.0
+ * @see KeyConverters
+ */
+public interface RangeKeyConverter<K> extends KeyConverter<K> {
+
+    /**
+     * Appends the {@link String} representation of a key, the same as {@link #asString(Object)} returns.
+     *
+     * @param key the key to stringify.
+     * @param out the builder to append the key to.
+     */
+    void append(K key, StringBuilder out);
+
+    /**
+     * Transforms a range of a {@link String} back to its K form, the same way {@link #fromString(String)} would
+     * transform that range as a String.
+     *
+     * @param internalKey the String holding the key in internal form.
+     * @param start the index of the first character of the key (inclusive).
+     * @param end the index of the last character of the key (exclusive).
+     * @return the key in K form.
+     */
+    K fromString(String internalKey, int start, int end);
+}
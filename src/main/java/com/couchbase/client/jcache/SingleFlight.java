@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2015 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package com.couchbase.client.jcache;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import javax.cache.CacheException;
+
+/**
+ * Deduplicates concurrent executions of a task for the same key within the JVM: while a task is in flight for a
+ * key, other callers for that key wait for it and receive its result (or exception) instead of running their own.
+ *
+ * This is used by {@link CouchbaseCache} so that a single {@link javax.cache.integration.CacheLoader} call per key
+ * is outstanding at any time.
+ *
+ * @since 1.0
+ */
+class SingleFlight<T> {
+
+    private final ConcurrentMap<String, FutureTask<T>> inFlight = new ConcurrentHashMap<String, FutureTask<T>>();
+
+    /**
+     * Executes the task for the key unless one is already in flight, in which case its result is awaited.
+     *
+     * @param key the key to deduplicate executions on.
+     * @param task the task to execute if none is in flight for the key.
+     * @return the result of the task that was executed for the key.
+     * @throws CacheException if the task threw a checked exception or the wait was interrupted.
+     */
+    public T execute(String key, Callable<T> task) {
+        FutureTask<T> call = new FutureTask<T>(task);
+        FutureTask<T> existing = inFlight.putIfAbsent(key, call);
+        if (existing == null) {
+            try {
+                call.run();
+            } finally {
+                inFlight.remove(key, call);
+            }
+        } else {
+            call = existing;
+        }
+
+        try {
+            return call.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new CacheException("Execution for " + key + " failed", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CacheException("Interrupted while waiting on execution for " + key, e);
+        }
+    }
+
+    /**
+     * @param key the key to check.
+     * @return true if a task is currently in flight for the key.
+     */
+    public boolean isInFlight(String key) {
+        return inFlight.containsKey(key);
+    }
+}
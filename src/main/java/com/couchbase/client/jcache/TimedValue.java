@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2015 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package com.couchbase.client.jcache;
+
+import java.io.Serializable;
+
+/**
+ * An envelope stored in place of a cached value when the {@link CouchbaseCache} needs to know, upon reading an
+ * entry, when it was created and when it will expire (eg. to refresh it ahead of its expiry), as well as how long
+ * it took to load it last time (to recompute it early).
+ *
+ * Reading a document will transparently unwrap the value, so caches can hold a mix of wrapped and plain values.
+ * When the cache uses a {@link ValueCodec}, the envelope is encoded as a header in front of the encoded value
+ * (see {@link CacheTranscoder}), otherwise it is Java serialized along with the value.
+ *
+ * @since 1.0
+ */
+class TimedValue implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Object value;
+    private final long createdMillis;
+    private final int ttlSeconds;
+    private final long loadCostNanos;
+
+    /**
+     * @param value the cached value.
+     * @param createdMillis the time from which the TTL runs (when the value was written or last touched), in
+     *  milliseconds since the epoch.
+     * @param ttlSeconds the TTL the value was written with, in seconds.
+     * @param loadCostNanos the time it took to load the value, in nanoseconds (0 if it was not loaded).
+     */
+    public TimedValue(Object value, long createdMillis, int ttlSeconds, long loadCostNanos) {
+        this.value = value;
+        this.createdMillis = createdMillis;
+        this.ttlSeconds = ttlSeconds;
+        this.loadCostNanos = loadCostNanos;
+    }
+
+    /**
+     * Returns the cached value out of a document's content, unwrapping it if it is a {@link TimedValue}.
+     *
+     * @param content the content of a document.
+     * @return the actual cached value.
+     */
+    public static Object unwrap(Object content) {
+        if (content instanceof TimedValue) {
+            return ((TimedValue) content).value;
+        }
+        return content;
+    }
+
+    public Object value() {
+        return value;
+    }
+
+    public long createdMillis() {
+        return createdMillis;
+    }
+
+    public int ttlSeconds() {
+        return ttlSeconds;
+    }
+
+    public long loadCostNanos() {
+        return loadCostNanos;
+    }
+
+    /**
+     * Reflects a touch of the document holding the value, which restarts its expiry.
+     *
+     * @param touchedMillis the time of the touch, in milliseconds since the epoch.
+     * @param ttlSeconds the TTL the document was touched with, in seconds (0 if it doesn't expire anymore).
+     * @return the envelope of the touched value.
+     */
+    public TimedValue touched(long touchedMillis, int ttlSeconds) {
+        return new TimedValue(value, touchedMillis, ttlSeconds, loadCostNanos);
+    }
+
+    /**
+     * @return true if the value expires, false if it was written without a TTL.
+     */
+    public boolean expires() {
+        return ttlSeconds > 0;
+    }
+
+    /**
+     * @return the time at which the value expires, in milliseconds since the epoch.
+     */
+    public long expiresMillis() {
+        return createdMillis + ttlSeconds * 1000L;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2015 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package com.couchbase.client.jcache;
+
+import java.io.Serializable;
+
+/**
+ * Encodes cached values to the bytes stored in Couchbase, and decodes them back.
+ *
+ * The {@link #id()} of the codec is recorded in the flags of each document it encodes, so that a cache can decode
+ * documents written with another codec (as long as that codec is one of the built-in {@link ValueCodecs}, or
+ * the cache's own codec). This allows to migrate a cache from one codec to another incrementally.
+ *
+ * @since 1.0
+ * @see ValueCodecs
+ * @see CouchbaseConfiguration.Builder#withValueCodec(ValueCodec)
+ */
+public interface ValueCodec<V> extends Serializable {
+
+    /**
+     * The identifier of the codec, recorded in document flags. Identifiers up to
+     * {@link ValueCodecs#MAX_RESERVED_ID} are reserved for the built-in codecs, custom codecs must use an identifier
+     * between {@link ValueCodecs#MAX_RESERVED_ID} + 1 and 255.
+     *
+     * @return the identifier of the codec.
+     */
+    int id();
+
+    /**
+     * Encodes a value.
+     *
+     * @param value the value to encode, never null.
+     * @return the encoded bytes.
+     */
+    byte[] encode(V value);
+
+    /**
+     * Decodes a value.
+     *
+     * @param bytes the array holding the encoded value.
+     * @param offset the index of the first byte of the encoded value in the array.
+     * @param length the number of bytes of the encoded value.
+     * @return the decoded value.
+     */
+    V decode(byte[] bytes, int offset, int length);
+}
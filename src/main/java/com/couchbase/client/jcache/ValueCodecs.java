@@ -0,0 +1,431 @@
+/*
+ * Copyright (c) 2015 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package com.couchbase.client.jcache;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import javax.cache.CacheException;
+
+import com.couchbase.client.deps.com.fasterxml.jackson.databind.ObjectMapper;
+import com.couchbase.client.deps.io.netty.buffer.ByteBuf;
+import com.couchbase.client.deps.io.netty.buffer.ByteBufInputStream;
+import com.couchbase.client.deps.io.netty.buffer.ByteBufOutputStream;
+import com.couchbase.client.deps.io.netty.buffer.Unpooled;
+
+/**
+ * The built-in {@link ValueCodec ValueCodecs}, all of which are {@link BufferValueCodec BufferValueCodecs}.
+ *
+ * @since 1.0
+ */
+public final class ValueCodecs {
+
+    /** The identifier of the {@link #javaSerialization() Java serialization} codec */
+    public static final int JAVA_SERIALIZATION_ID = 1;
+    /** The identifier of the {@link #bytes() raw bytes} codec */
+    public static final int BYTES_ID = 2;
+    /** The identifier of the {@link #string() UTF-8 string} codec */
+    public static final int STRING_ID = 3;
+    /** The identifier of the {@link #json(Class) JSON} codecs */
+    public static final int JSON_ID = 4;
+    /** The identifier of the {@link #compact() compact binary} codec */
+    public static final int COMPACT_ID = 5;
+    /** Identifiers up to this one are reserved for built-in codecs */
+    public static final int MAX_RESERVED_ID = 15;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private ValueCodecs() {
+    }
+
+    /**
+     * The codec used by default, relying on Java serialization. Values must be {@link Serializable}.
+     *
+     * @return the Java serialization codec.
+     */
+    @SuppressWarnings("unchecked")
+    public static <V> ValueCodec<V> javaSerialization() {
+        return (ValueCodec<V>) JavaSerializationCodec.INSTANCE;
+    }
+
+    /**
+     * A codec storing byte arrays as is.
+     *
+     * @return the raw bytes codec.
+     */
+    public static ValueCodec<byte[]> bytes() {
+        return BytesCodec.INSTANCE;
+    }
+
+    /**
+     * A codec storing strings encoded in UTF-8.
+     *
+     * @return the UTF-8 string codec.
+     */
+    public static ValueCodec<String> string() {
+        return StringCodec.INSTANCE;
+    }
+
+    /**
+     * A codec storing values as JSON documents, mapped to and from the given type by Jackson.
+     *
+     * @param type the type of values.
+     * @return a JSON codec for this type.
+     */
+    public static <V> ValueCodec<V> json(Class<V> type) {
+        return new JsonCodec<V>(type);
+    }
+
+    /**
+     * A codec storing strings, numbers, booleans and byte arrays in a compact tagged binary format, and falling
+     * back to Java serialization for other {@link Serializable} values.
+     *
+     * @return the compact binary codec.
+     */
+    @SuppressWarnings("unchecked")
+    public static <V> ValueCodec<V> compact() {
+        return (ValueCodec<V>) CompactCodec.INSTANCE;
+    }
+
+    /**
+     * Finds the built-in codec corresponding to an identifier, in order to decode a document written with another
+     * codec than the cache's. JSON codecs need a target type and can't be found this way.
+     *
+     * @param id the identifier of the codec.
+     * @return the codec, or null if no built-in codec can be found for this identifier.
+     */
+    static ValueCodec<?> builtIn(int id) {
+        switch (id) {
+            case JAVA_SERIALIZATION_ID:
+                return JavaSerializationCodec.INSTANCE;
+            case BYTES_ID:
+                return BytesCodec.INSTANCE;
+            case STRING_ID:
+                return StringCodec.INSTANCE;
+            case COMPACT_ID:
+                return CompactCodec.INSTANCE;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @param codec a codec.
+     * @return true if the codec is one of the built-in codecs, which are the only ones allowed to use a reserved
+     *  identifier.
+     */
+    static boolean isBuiltIn(ValueCodec<?> codec) {
+        return codec instanceof BufferCodec;
+    }
+
+    static void serialize(Object value, ByteBuf out) {
+        if (!(value instanceof Serializable)) {
+            throw new ClassCastException("This cache can only accept Serializable values");
+        }
+        try {
+            ObjectOutputStream stream = new ObjectOutputStream(new ByteBufOutputStream(out));
+            stream.writeObject(value);
+            stream.close();
+        } catch (IOException e) {
+            throw new CacheException("Could not serialize value of type " + value.getClass().getName(), e);
+        }
+    }
+
+    static Object deserialize(ByteBuf in) {
+        try {
+            ObjectInputStream stream = new ObjectInputStream(new ByteBufInputStream(in));
+            try {
+                return stream.readObject();
+            } finally {
+                stream.close();
+            }
+        } catch (IOException e) {
+            throw new CacheException("Could not deserialize value", e);
+        } catch (ClassNotFoundException e) {
+            throw new CacheException("Could not deserialize value", e);
+        }
+    }
+
+    /**
+     * Base of the built-in codecs, implementing the byte array methods on top of the buffer ones.
+     */
+    private abstract static class BufferCodec<V> implements BufferValueCodec<V> {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public byte[] encode(V value) {
+            ByteBuf out = Unpooled.buffer();
+            encode(value, out);
+            byte[] bytes = new byte[out.readableBytes()];
+            out.readBytes(bytes);
+            return bytes;
+        }
+
+        @Override
+        public V decode(byte[] bytes, int offset, int length) {
+            return decode(Unpooled.wrappedBuffer(bytes, offset, length));
+        }
+    }
+
+    private static final class JavaSerializationCodec extends BufferCodec<Object> {
+
+        private static final long serialVersionUID = 1L;
+        static final JavaSerializationCodec INSTANCE = new JavaSerializationCodec();
+
+        @Override
+        public int id() {
+            return JAVA_SERIALIZATION_ID;
+        }
+
+        @Override
+        public void encode(Object value, ByteBuf out) {
+            serialize(value, out);
+        }
+
+        @Override
+        public Object decode(ByteBuf in) {
+            return deserialize(in);
+        }
+
+        private Object readResolve() {
+            return INSTANCE;
+        }
+    }
+
+    private static final class BytesCodec extends BufferCodec<byte[]> {
+
+        private static final long serialVersionUID = 1L;
+        static final BytesCodec INSTANCE = new BytesCodec();
+
+        @Override
+        public int id() {
+            return BYTES_ID;
+        }
+
+        @Override
+        public byte[] encode(byte[] value) {
+            return value;
+        }
+
+        @Override
+        public void encode(byte[] value, ByteBuf out) {
+            out.writeBytes(value);
+        }
+
+        @Override
+        public byte[] decode(byte[] bytes, int offset, int length) {
+            return Arrays.copyOfRange(bytes, offset, offset + length);
+        }
+
+        @Override
+        public byte[] decode(ByteBuf in) {
+            byte[] bytes = new byte[in.readableBytes()];
+            in.readBytes(bytes);
+            return bytes;
+        }
+
+        private Object readResolve() {
+            return INSTANCE;
+        }
+    }
+
+    private static final class StringCodec extends BufferCodec<String> {
+
+        private static final long serialVersionUID = 1L;
+        static final StringCodec INSTANCE = new StringCodec();
+
+        @Override
+        public int id() {
+            return STRING_ID;
+        }
+
+        @Override
+        public byte[] encode(String value) {
+            return value.getBytes(UTF_8);
+        }
+
+        /**
+         * Writes the UTF-8 bytes of the value directly in the buffer, without encoding it to an intermediate array
+         * first. Unpaired surrogates are written as '?', as {@link String#getBytes(Charset)} does.
+         */
+        @Override
+        public void encode(String value, ByteBuf out) {
+            out.ensureWritable(KeyCompactor.utf8Length(value));
+            int index = out.writerIndex();
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    out.setByte(index++, c);
+                } else if (c < 0x800) {
+                    out.setByte(index++, 0xC0 | (c >> 6));
+                    out.setByte(index++, 0x80 | (c & 0x3F));
+                } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                    if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                            && Character.isLowSurrogate(value.charAt(i + 1))) {
+                        int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                        out.setByte(index++, 0xF0 | (codePoint >> 18));
+                        out.setByte(index++, 0x80 | ((codePoint >> 12) & 0x3F));
+                        out.setByte(index++, 0x80 | ((codePoint >> 6) & 0x3F));
+                        out.setByte(index++, 0x80 | (codePoint & 0x3F));
+                    } else {
+                        out.setByte(index++, '?');
+                    }
+                } else {
+                    out.setByte(index++, 0xE0 | (c >> 12));
+                    out.setByte(index++, 0x80 | ((c >> 6) & 0x3F));
+                    out.setByte(index++, 0x80 | (c & 0x3F));
+                }
+            }
+            out.writerIndex(index);
+        }
+
+        @Override
+        public String decode(byte[] bytes, int offset, int length) {
+            return new String(bytes, offset, length, UTF_8);
+        }
+
+        @Override
+        public String decode(ByteBuf in) {
+            return in.toString(UTF_8);
+        }
+
+        private Object readResolve() {
+            return INSTANCE;
+        }
+    }
+
+    private static final class JsonCodec<V> extends BufferCodec<V> {
+
+        private static final long serialVersionUID = 1L;
+        private static final ObjectMapper MAPPER = new ObjectMapper();
+
+        private final Class<V> type;
+
+        JsonCodec(Class<V> type) {
+            if (type == null) {
+                throw new NullPointerException("JSON codec needs a value type");
+            }
+            this.type = type;
+        }
+
+        @Override
+        public int id() {
+            return JSON_ID;
+        }
+
+        @Override
+        public void encode(V value, ByteBuf out) {
+            try {
+                MAPPER.writeValue(new ByteBufOutputStream(out), value);
+            } catch (IOException e) {
+                throw new CacheException("Could not encode value of type " + value.getClass().getName()
+                        + " as JSON", e);
+            }
+        }
+
+        @Override
+        public V decode(ByteBuf in) {
+            try {
+                return MAPPER.readValue(new ByteBufInputStream(in), type);
+            } catch (IOException e) {
+                throw new CacheException("Could not decode JSON value as " + type.getName(), e);
+            }
+        }
+    }
+
+    /**
+     * The compact binary format: a tag byte followed by the fixed size big-endian representation of numbers, the
+     * UTF-8 bytes of strings, the bytes of byte arrays or the Java serialized form of other values.
+     */
+    private static final class CompactCodec extends BufferCodec<Object> {
+
+        private static final long serialVersionUID = 1L;
+        static final CompactCodec INSTANCE = new CompactCodec();
+
+        private static final byte TAG_SERIALIZED = 0;
+        private static final byte TAG_STRING = 1;
+        private static final byte TAG_LONG = 2;
+        private static final byte TAG_INTEGER = 3;
+        private static final byte TAG_DOUBLE = 4;
+        private static final byte TAG_FLOAT = 5;
+        private static final byte TAG_BOOLEAN = 6;
+        private static final byte TAG_BYTES = 7;
+
+        @Override
+        public int id() {
+            return COMPACT_ID;
+        }
+
+        @Override
+        public void encode(Object value, ByteBuf out) {
+            if (value instanceof String) {
+                out.writeByte(TAG_STRING).writeBytes(((String) value).getBytes(UTF_8));
+            } else if (value instanceof Long) {
+                out.writeByte(TAG_LONG).writeLong((Long) value);
+            } else if (value instanceof Integer) {
+                out.writeByte(TAG_INTEGER).writeInt((Integer) value);
+            } else if (value instanceof Double) {
+                out.writeByte(TAG_DOUBLE).writeDouble((Double) value);
+            } else if (value instanceof Float) {
+                out.writeByte(TAG_FLOAT).writeFloat((Float) value);
+            } else if (value instanceof Boolean) {
+                out.writeByte(TAG_BOOLEAN).writeBoolean((Boolean) value);
+            } else if (value instanceof byte[]) {
+                out.writeByte(TAG_BYTES).writeBytes((byte[]) value);
+            } else {
+                out.writeByte(TAG_SERIALIZED);
+                serialize(value, out);
+            }
+        }
+
+        @Override
+        public Object decode(ByteBuf in) {
+            if (!in.isReadable()) {
+                throw new CacheException("Empty compact value");
+            }
+            byte tag = in.readByte();
+            switch (tag) {
+                case TAG_STRING:
+                    return in.toString(UTF_8);
+                case TAG_LONG:
+                    return in.readLong();
+                case TAG_INTEGER:
+                    return in.readInt();
+                case TAG_DOUBLE:
+                    return in.readDouble();
+                case TAG_FLOAT:
+                    return in.readFloat();
+                case TAG_BOOLEAN:
+                    return in.readBoolean();
+                case TAG_BYTES:
+                    byte[] bytes = new byte[in.readableBytes()];
+                    in.readBytes(bytes);
+                    return bytes;
+                case TAG_SERIALIZED:
+                    return deserialize(in);
+                default:
+                    throw new CacheException("Unknown compact value tag " + tag);
+            }
+        }
+
+        private Object readResolve() {
+            return INSTANCE;
+        }
+    }
+}
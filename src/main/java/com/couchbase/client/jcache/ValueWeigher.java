@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2015 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package com.couchbase.client.jcache;
+
+import java.io.Serializable;
+
+/**
+ * Computes the weight of a value kept in a {@link CouchbaseCache}'s near cache, in order to bound the near cache
+ * by total weight rather than by number of entries.
+ *
+ * @since 1.0
+ * @see CouchbaseConfiguration.Builder#withNearCache(long, ValueWeigher, javax.cache.expiry.Duration)
+ */
+public interface ValueWeigher<V> extends Serializable {
+
+    /**
+     * Computes the weight of a value. Weights are relative units (eg. approximate bytes) and must be positive.
+     *
+     * @param value the value to weigh.
+     * @return the weight of the value.
+     */
+    public long weigh(V value);
+}
@@ -0,0 +1,351 @@
+/*
+ * Copyright (c) 2015 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package com.couchbase.client.jcache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import javax.cache.CacheException;
+
+import com.couchbase.client.core.logging.CouchbaseLogger;
+import com.couchbase.client.core.logging.CouchbaseLoggerFactory;
+import com.couchbase.client.java.AsyncBucket;
+import com.couchbase.client.java.document.json.JsonArray;
+import com.couchbase.client.java.document.json.JsonObject;
+import com.couchbase.client.java.view.AsyncViewResult;
+import com.couchbase.client.java.view.AsyncViewRow;
+import com.couchbase.client.java.view.ViewQuery;
+import rx.Observable;
+import rx.functions.Action1;
+import rx.functions.Actions;
+import rx.functions.Func1;
+import rx.schedulers.Schedulers;
+
+/**
+ * Scans the ids of the documents of a view page by page, by key range: each page starts after the key and document
+ * id of the last row of the previous page, so neither the view server nor the client ever hold more than a page,
+ * whatever the size of the view. The next page is requested while the current one is consumed.
+ *
+ * The position of a scan is a {@link Cursor}, so that an interrupted scan can be resumed from the last page that was
+ * fully processed.
+ *
+ * A scan that removes the documents of each page before requesting the next one must use
+ * {@link #removalPages(Cursor)}: rows whose key can't be used as a start key are otherwise skipped by count, which
+ * would skip live rows once the previous ones are removed from the index.
+ *
+ * @since 1.0
+ */
+class ViewScanner {
+
+    private static final CouchbaseLogger LOGGER = CouchbaseLoggerFactory.getInstance(ViewScanner.class);
+
+    private static final Action1<Throwable> IGNORE_PREFETCH_ERROR = new Action1<Throwable>() {
+        @Override
+        public void call(Throwable throwable) {
+            //the error is reported when the page is consumed
+            LOGGER.debug("Prefetching a view page failed", throwable);
+        }
+    };
+
+    private final AsyncBucket bucket;
+    private final String designDoc;
+    private final String viewName;
+    private final int pageSize;
+
+    /**
+     * @param bucket the bucket to query.
+     * @param designDoc the design document of the view.
+     * @param viewName the name of the view.
+     * @param pageSize the maximum number of rows per page.
+     */
+    public ViewScanner(AsyncBucket bucket, String designDoc, String viewName, int pageSize) {
+        this.bucket = bucket;
+        this.designDoc = designDoc;
+        this.viewName = viewName;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Streams the ids of all the documents of the view. Pages are fetched as the ids are requested, on the
+     * {@link Schedulers#io() io scheduler}.
+     *
+     * @return the ids of the documents in the view.
+     */
+    public Observable<String> ids() {
+        return Observable.from(new Iterable<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                return new IdIterator(pages(Cursor.START).iterator());
+            }
+        }).subscribeOn(Schedulers.io());
+    }
+
+    /**
+     * Iterates over the pages of the view, blocking until each page is received. The next page is requested as soon
+     * as the current one is returned.
+     *
+     * @param from the position to start from.
+     * @return the pages from this position.
+     */
+    public Iterable<Page> pages(final Cursor from) {
+        return new Iterable<Page>() {
+            @Override
+            public Iterator<Page> iterator() {
+                return new PageIterator(from, false);
+            }
+        };
+    }
+
+    /**
+     * Iterates over the pages of the view like {@link #pages(Cursor)}, for a scan that removes the documents of each
+     * page before moving on to the next one. Each page starts at the last row of the previous one, which is either
+     * already removed from the index or removed again harmlessly.
+     *
+     * Iterating fails with a {@link CacheException} when the last row of a page has a key that can't be used as a
+     * start key, as the view can't be paged by key range.
+     *
+     * @param from the position to start from.
+     * @return the pages from this position.
+     */
+    public Iterable<Page> removalPages(final Cursor from) {
+        return new Iterable<Page>() {
+            @Override
+            public Iterator<Page> iterator() {
+                return new PageIterator(from, true);
+            }
+        };
+    }
+
+    /**
+     * Fetches a page.
+     *
+     * @param from the position of the page.
+     * @param removal true if the documents of the page are removed before the next page is fetched.
+     * @return an Observable of the page.
+     */
+    Observable<Page> page(final Cursor from, final boolean removal) {
+        return bucket.query(query(from))
+                .flatMap(new Func1<AsyncViewResult, Observable<AsyncViewRow>>() {
+                    @Override
+                    public Observable<AsyncViewRow> call(AsyncViewResult asyncViewResult) {
+                        return asyncViewResult.rows();
+                    }
+                })
+                .toList()
+                .map(new Func1<List<AsyncViewRow>, Page>() {
+                    @Override
+                    public Page call(List<AsyncViewRow> rows) {
+                        return Page.of(from, rows, pageSize, removal);
+                    }
+                });
+    }
+
+    private ViewQuery query(Cursor from) {
+        ViewQuery query = ViewQuery.from(designDoc, viewName).limit(pageSize);
+        if (from.docId != null) {
+            startKey(query, from.key).startKeyDocId(from.docId);
+        }
+        if (from.skip > 0) {
+            query.skip(from.skip);
+        }
+        return query;
+    }
+
+    /**
+     * @param key a key of the view.
+     * @return true if a query can start at this key.
+     */
+    static boolean isExpressible(Object key) {
+        return key instanceof String || key instanceof Integer || key instanceof Long || key instanceof Double
+                || key instanceof Boolean || key instanceof JsonObject || key instanceof JsonArray;
+    }
+
+    private static ViewQuery startKey(ViewQuery query, Object key) {
+        if (key instanceof String) {
+            return query.startKey((String) key);
+        } else if (key instanceof Integer) {
+            return query.startKey((Integer) key);
+        } else if (key instanceof Long) {
+            return query.startKey((Long) key);
+        } else if (key instanceof Double) {
+            return query.startKey((Double) key);
+        } else if (key instanceof Boolean) {
+            return query.startKey((Boolean) key);
+        } else if (key instanceof JsonObject) {
+            return query.startKey((JsonObject) key);
+        } else {
+            return query.startKey((JsonArray) key);
+        }
+    }
+
+    /**
+     * The position of a scan: the key and document id of a row (or null for the start of the view), and the number
+     * of rows to skip from there.
+     *
+     * Rows whose key can't be used as a start key (like null keys) are skipped by count from the last row that
+     * could, which is only possible when the scanned rows are not removed.
+     */
+    static final class Cursor {
+
+        /** The start of the view */
+        static final Cursor START = new Cursor(null, null, 0);
+
+        final Object key;
+        final String docId;
+        final int skip;
+
+        Cursor(Object key, String docId, int skip) {
+            this.key = key;
+            this.docId = docId;
+            this.skip = skip;
+        }
+
+        @Override
+        public String toString() {
+            return "Cursor{key=" + key + ", docId=" + docId + ", skip=" + skip + "}";
+        }
+    }
+
+    /**
+     * A page of document ids, with the position of the next page.
+     */
+    static final class Page {
+
+        private final List<String> ids;
+        private final Cursor next;
+        private final boolean last;
+
+        private Page(List<String> ids, Cursor next, boolean last) {
+            this.ids = ids;
+            this.next = next;
+            this.last = last;
+        }
+
+        static Page of(Cursor from, List<AsyncViewRow> rows, int pageSize, boolean removal) {
+            if (rows.isEmpty()) {
+                return new Page(Collections.<String>emptyList(), from, true);
+            }
+            List<String> ids = new ArrayList<String>(rows.size());
+            for (AsyncViewRow row : rows) {
+                ids.add(row.id());
+            }
+            boolean last = rows.size() < pageSize;
+            AsyncViewRow lastRow = rows.get(rows.size() - 1);
+            Cursor next;
+            if (isExpressible(lastRow.key())) {
+                next = new Cursor(lastRow.key(), lastRow.id(), removal ? 0 : 1);
+            } else if (!removal) {
+                next = new Cursor(from.key, from.docId, from.skip + rows.size());
+            } else if (last) {
+                next = from;
+            } else {
+                throw new CacheException("Key " + lastRow.key() + " of document " + lastRow.id()
+                        + " can't be used as a start key, documents of the view can't be removed page by page");
+            }
+            return new Page(ids, next, last);
+        }
+
+        /**
+         * @return the ids of the documents in this page.
+         */
+        public List<String> ids() {
+            return ids;
+        }
+
+        /**
+         * @return the position right after this page.
+         */
+        public Cursor next() {
+            return next;
+        }
+
+        /**
+         * @return true if there is no page after this one.
+         */
+        public boolean isLast() {
+            return last;
+        }
+    }
+
+    private class PageIterator implements Iterator<Page> {
+
+        private final boolean removal;
+        private Observable<Page> pending;
+
+        PageIterator(Cursor from, boolean removal) {
+            this.removal = removal;
+            this.pending = prefetch(from);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return pending != null;
+        }
+
+        @Override
+        public Page next() {
+            if (pending == null) {
+                throw new NoSuchElementException();
+            }
+            Page page = pending.toBlocking().single();
+            pending = page.isLast() ? null : prefetch(page.next());
+            return page;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        private Observable<Page> prefetch(Cursor from) {
+            Observable<Page> page = page(from, removal).cache();
+            page.subscribe(Actions.empty(), IGNORE_PREFETCH_ERROR);
+            return page;
+        }
+    }
+
+    private static class IdIterator implements Iterator<String> {
+
+        private final Iterator<Page> pages;
+        private Iterator<String> ids = Collections.<String>emptyList().iterator();
+
+        IdIterator(Iterator<Page> pages) {
+            this.pages = pages;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!ids.hasNext() && pages.hasNext()) {
+                ids = pages.next().ids().iterator();
+            }
+            return ids.hasNext();
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return ids.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright (c) 2015 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.couchbase.client.jcache;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.cache.Cache;
+import javax.cache.configuration.FactoryBuilder;
+import javax.cache.configuration.MutableCacheEntryListenerConfiguration;
+import javax.cache.configuration.MutableConfiguration;
+import javax.cache.event.CacheEntryCreatedListener;
+import javax.cache.event.CacheEntryEvent;
+import javax.cache.event.CacheEntryListenerException;
+import javax.cache.event.CacheEntryRemovedListener;
+import javax.cache.event.CacheEntryUpdatedListener;
+import javax.cache.expiry.Duration;
+import javax.cache.expiry.ModifiedExpiryPolicy;
+
+import com.couchbase.client.java.AsyncBucket;
+import com.couchbase.client.java.Bucket;
+import com.couchbase.client.java.document.JsonDocument;
+import com.couchbase.client.java.error.DocumentAlreadyExistsException;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import rx.Observable;
+import rx.Subscription;
+import rx.functions.Action1;
+import rx.functions.Func1;
+
+/**
+ * Unit tests of the {@link AsyncCouchbaseCache} against a mocked {@link Bucket}.
+ */
+public class AsyncCouchbaseCacheTest {
+
+    private static final List<String> EVENTS = new ArrayList<String>();
+    private static final List<String> THREADS = new ArrayList<String>();
+
+    private static final Answer<Observable> ECHO = new Answer<Observable>() {
+        @Override
+        public Observable answer(InvocationOnMock invocation) throws Throwable {
+            return Observable.just(invocation.getArguments()[0]);
+        }
+    };
+
+    public static class RecordingListener implements CacheEntryCreatedListener<String, String>,
+            CacheEntryUpdatedListener<String, String>, CacheEntryRemovedListener<String, String>, Serializable {
+
+        @Override
+        public void onCreated(Iterable<CacheEntryEvent<? extends String, ? extends String>> events)
+                throws CacheEntryListenerException {
+            record(events);
+        }
+
+        @Override
+        public void onUpdated(Iterable<CacheEntryEvent<? extends String, ? extends String>> events)
+                throws CacheEntryListenerException {
+            record(events);
+        }
+
+        @Override
+        public void onRemoved(Iterable<CacheEntryEvent<? extends String, ? extends String>> events)
+                throws CacheEntryListenerException {
+            record(events);
+        }
+
+        private static synchronized void record(Iterable<CacheEntryEvent<? extends String, ? extends String>> events) {
+            for (CacheEntryEvent<? extends String, ? extends String> event : events) {
+                EVENTS.add(event.getEventType() + " " + event.getKey());
+                THREADS.add(Thread.currentThread().getName());
+            }
+        }
+    }
+
+    private Bucket bucket;
+    private AsyncBucket asyncBucket;
+
+    @Before
+    public void init() {
+        EVENTS.clear();
+        THREADS.clear();
+        bucket = MockedCaches.bucket();
+        asyncBucket = bucket.async();
+    }
+
+    private AsyncCouchbaseCache<String, String> cache() {
+        return MockedCaches.cache(bucket).async();
+    }
+
+    private AsyncCouchbaseCache<String, String> listenedCache() {
+        MutableConfiguration<String, String> base = new MutableConfiguration<String, String>()
+                .addCacheEntryListenerConfiguration(new MutableCacheEntryListenerConfiguration<String, String>(
+                        FactoryBuilder.factoryOf(new RecordingListener()), null, false, true));
+        return MockedCaches.cache(bucket, MockedCaches.configuration().useBase(base).build()).async();
+    }
+
+    private void assertDispatchedOnIoScheduler() {
+        assertFalse(THREADS.isEmpty());
+        for (String thread : THREADS) {
+            assertTrue(thread, thread.startsWith("RxCachedThreadScheduler"));
+        }
+    }
+
+    @Test
+    public void shouldGetValue() {
+        when(asyncBucket.get(eq("cache_key"), eq(CacheDocument.class)))
+                .thenReturn(Observable.just(CacheDocument.create("cache_key", "value", 1L)));
+
+        assertEquals("value", cache().getAsync("key").toBlocking().single());
+    }
+
+    @Test
+    public void shouldGetNothingOnMiss() {
+        when(asyncBucket.get(eq("cache_key"), eq(CacheDocument.class)))
+                .thenReturn(Observable.<CacheDocument>empty());
+
+        assertNull(cache().getAsync("key").toBlocking().singleOrDefault(null));
+    }
+
+    @Test
+    public void shouldGetAllFoundValues() {
+        when(asyncBucket.get(eq("cache_a"), eq(CacheDocument.class)))
+                .thenReturn(Observable.just(CacheDocument.create("cache_a", "valueA", 1L)));
+        when(asyncBucket.get(eq("cache_b"), eq(CacheDocument.class)))
+                .thenReturn(Observable.<CacheDocument>empty());
+
+        Map<String, String> values = cache().getAllAsync(new HashSet<String>(Arrays.asList("a", "b")))
+                .toBlocking().single();
+
+        assertEquals(1, values.size());
+        assertEquals("valueA", values.get("a"));
+    }
+
+    @Test
+    public void shouldPutAndDispatchCreatedOnIoScheduler() {
+        when(asyncBucket.insert(any(CacheDocument.class))).then(ECHO);
+
+        listenedCache().putAsync("key", "value").toBlocking().lastOrDefault(null);
+
+        assertEquals(Arrays.asList("CREATED key"), EVENTS);
+        assertDispatchedOnIoScheduler();
+    }
+
+    @Test
+    public void shouldPutExistingAndDispatchUpdated() {
+        when(asyncBucket.insert(any(CacheDocument.class)))
+                .thenReturn(Observable.<CacheDocument>error(new DocumentAlreadyExistsException()));
+        when(asyncBucket.upsert(any(CacheDocument.class))).then(ECHO);
+
+        listenedCache().putAsync("key", "value").toBlocking().lastOrDefault(null);
+
+        assertEquals(Arrays.asList("UPDATED key"), EVENTS);
+        assertDispatchedOnIoScheduler();
+    }
+
+    @Test
+    public void shouldRemoveAndDispatchRemovedOnIoScheduler() {
+        when(asyncBucket.get(eq("cache_key"), eq(CacheDocument.class)))
+                .thenReturn(Observable.just(CacheDocument.create("cache_key", "value", 1L)));
+        when(asyncBucket.remove("cache_key")).thenReturn(Observable.just(JsonDocument.create("cache_key")));
+
+        assertTrue(listenedCache().removeAsync("key").toBlocking().single());
+        assertEquals(Arrays.asList("REMOVED key"), EVENTS);
+        assertDispatchedOnIoScheduler();
+    }
+
+    @Test
+    public void shouldNotRemoveMissingKey() {
+        when(asyncBucket.get(eq("cache_key"), eq(CacheDocument.class)))
+                .thenReturn(Observable.<CacheDocument>empty());
+
+        assertFalse(listenedCache().removeAsync("key").toBlocking().single());
+        assertTrue(EVENTS.isEmpty());
+        verify(asyncBucket, never()).remove("cache_key");
+    }
+
+    @Test
+    public void shouldReplaceGuardedByCasAndDispatchUpdatedOnIoScheduler() {
+        when(asyncBucket.get(eq("cache_key"), eq(CacheDocument.class)))
+                .thenReturn(Observable.just(CacheDocument.create("cache_key", "old", 12L)));
+        when(asyncBucket.replace(any(CacheDocument.class))).then(ECHO);
+
+        assertTrue(listenedCache().replaceAsync("key", "new").toBlocking().single());
+
+        ArgumentCaptor<CacheDocument> replaced = ArgumentCaptor.forClass(CacheDocument.class);
+        verify(asyncBucket).replace(replaced.capture());
+        assertEquals("new", TimedValue.unwrap(replaced.getValue().content()));
+        assertEquals(12L, replaced.getValue().cas());
+        assertEquals(Arrays.asList("UPDATED key"), EVENTS);
+        assertDispatchedOnIoScheduler();
+    }
+
+    @Test
+    public void shouldNotReplaceMissingKey() {
+        when(asyncBucket.get(eq("cache_key"), eq(CacheDocument.class)))
+                .thenReturn(Observable.<CacheDocument>empty());
+
+        assertFalse(cache().replaceAsync("key", "new").toBlocking().single());
+        verify(asyncBucket, never()).replace(any(CacheDocument.class));
+    }
+
+    @Test
+    public void shouldRemoveInsteadOfReplacingWhenUpdateExpiresEntry() {
+        CacheDocument old = CacheDocument.create("cache_key", "old", 12L);
+        when(asyncBucket.get(eq("cache_key"), eq(CacheDocument.class))).thenReturn(Observable.just(old));
+        when(asyncBucket.remove(old)).thenReturn(Observable.just(old));
+        MutableConfiguration<String, String> base = new MutableConfiguration<String, String>()
+                .setExpiryPolicyFactory(FactoryBuilder.factoryOf(new ModifiedExpiryPolicy(Duration.ZERO)));
+        AsyncCouchbaseCache<String, String> cache = MockedCaches.cache(bucket,
+                MockedCaches.configuration().useBase(base).build()).async();
+
+        assertTrue(cache.replaceAsync("key", "new").toBlocking().single());
+        verify(asyncBucket).remove(old);
+        verify(asyncBucket, never()).replace(any(CacheDocument.class));
+    }
+
+    @Test
+    public void shouldStreamFoundEntries() {
+        when(asyncBucket.get(eq("cache_a"), eq(CacheDocument.class)))
+                .thenReturn(Observable.just(CacheDocument.create("cache_a", "valueA", 1L)));
+        when(asyncBucket.get(eq("cache_b"), eq(CacheDocument.class)))
+                .thenReturn(Observable.<CacheDocument>empty());
+
+        List<Cache.Entry<String, String>> entries = cache().getAllAsync(Observable.just("a", "b"))
+                .toList().toBlocking().single();
+
+        assertEquals(1, entries.size());
+        assertEquals("a", entries.get(0).getKey());
+        assertEquals("valueA", entries.get(0).getValue());
+    }
+
+    @Test
+    public void shouldStreamPutsAndDispatchEachEvent() {
+        when(asyncBucket.insert(any(CacheDocument.class))).then(ECHO);
+        Map<String, String> entries = new HashMap<String, String>();
+        entries.put("a", "1");
+        entries.put("b", "2");
+
+        List<String> stored = listenedCache().putAllAsync(Observable.from(entries.entrySet()))
+                .toList().toBlocking().single();
+
+        assertEquals(new HashSet<String>(Arrays.asList("a", "b")), new HashSet<String>(stored));
+        assertEquals(new HashSet<String>(Arrays.asList("CREATED a", "CREATED b")), new HashSet<String>(EVENTS));
+    }
+
+    @Test
+    public void shouldStreamOnlyRemovedKeys() {
+        when(asyncBucket.get(eq("cache_a"), eq(CacheDocument.class)))
+                .thenReturn(Observable.just(CacheDocument.create("cache_a", "valueA", 1L)));
+        when(asyncBucket.get(eq("cache_b"), eq(CacheDocument.class)))
+                .thenReturn(Observable.<CacheDocument>empty());
+        when(asyncBucket.remove("cache_a")).thenReturn(Observable.just(JsonDocument.create("cache_a")));
+
+        List<String> removed = listenedCache().removeAllAsync(Observable.just("a", "b"))
+                .toList().toBlocking().single();
+
+        assertEquals(Arrays.asList("a"), removed);
+        assertEquals(Arrays.asList("REMOVED a"), EVENTS);
+    }
+
+    @Test
+    public void shouldBoundUpstreamDemandToBulkConcurrency() {
+        //gets never complete, so the range only emits the keys that were requested
+        when(asyncBucket.get(any(String.class), eq(CacheDocument.class)))
+                .thenReturn(Observable.<CacheDocument>never());
+        final AtomicLong emitted = new AtomicLong();
+        Observable<String> keys = Observable.range(0, 1000)
+                .map(new Func1<Integer, String>() {
+                    @Override
+                    public String call(Integer i) {
+                        return "key" + i;
+                    }
+                })
+                .doOnNext(new Action1<String>() {
+                    @Override
+                    public void call(String key) {
+                        emitted.incrementAndGet();
+                    }
+                });
+        CouchbaseCache<String, String> cache = MockedCaches.cache(bucket,
+                MockedCaches.configuration().withBulkConcurrency(4).build());
+
+        Subscription subscription = cache.async().getAllAsync(keys).subscribe();
+
+        assertEquals(4L, emitted.get());
+        verify(asyncBucket, times(4)).get(any(String.class), eq(CacheDocument.class));
+        subscription.unsubscribe();
+    }
+}
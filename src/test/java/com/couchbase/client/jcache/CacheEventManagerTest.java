@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2015 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.couchbase.client.jcache;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.cache.configuration.FactoryBuilder;
+import javax.cache.configuration.MutableCacheEntryListenerConfiguration;
+import javax.cache.event.CacheEntryCreatedListener;
+import javax.cache.event.CacheEntryEvent;
+import javax.cache.event.CacheEntryListenerException;
+import javax.cache.event.EventType;
+
+import org.junit.Test;
+
+public class CacheEventManagerTest {
+
+    private static final List<String> CREATED = new ArrayList<String>();
+
+    public static class RecordingListener implements CacheEntryCreatedListener<String, String>, Serializable {
+
+        @Override
+        public void onCreated(Iterable<CacheEntryEvent<? extends String, ? extends String>> events)
+                throws CacheEntryListenerException {
+            for (CacheEntryEvent<? extends String, ? extends String> event : events) {
+                CREATED.add(event.getKey());
+            }
+        }
+    }
+
+    @Test
+    public void shouldDispatchEachEventOnlyOnce() {
+        CREATED.clear();
+        CouchbaseCache source = mock(CouchbaseCache.class);
+        CacheEventManager<String, String> eventManager = new CacheEventManager<String, String>();
+        eventManager.addListener(new MutableCacheEntryListenerConfiguration<String, String>(
+                FactoryBuilder.factoryOf(new RecordingListener()), null, false, true));
+
+        eventManager.queueEvent(new CouchbaseCacheEntryEvent<String, String>(EventType.CREATED, "a", "1", source));
+        eventManager.queueEvent(new CouchbaseCacheEntryEvent<String, String>(EventType.CREATED, "b", "2", source));
+        eventManager.dispatch();
+        eventManager.queueEvent(new CouchbaseCacheEntryEvent<String, String>(EventType.CREATED, "c", "3", source));
+        eventManager.dispatch();
+        eventManager.dispatch();
+
+        assertEquals(3, CREATED.size());
+        assertEquals("a", CREATED.get(0));
+        assertEquals("b", CREATED.get(1));
+        assertEquals("c", CREATED.get(2));
+    }
+
+    @Test
+    public void shouldReportListenersByEventType() {
+        CacheEventManager<String, String> eventManager = new CacheEventManager<String, String>();
+        assertFalse(eventManager.hasListenerFor(EventType.CREATED));
+        assertFalse(eventManager.hasListenerFor(EventType.UPDATED));
+
+        eventManager.addListener(new MutableCacheEntryListenerConfiguration<String, String>(
+                FactoryBuilder.factoryOf(new RecordingListener()), null, true, true));
+
+        assertTrue(eventManager.hasListenerFor(EventType.CREATED));
+        assertFalse(eventManager.hasListenerFor(EventType.UPDATED));
+        assertTrue(eventManager.isOldValueRequired(EventType.CREATED));
+        assertFalse(eventManager.isOldValueRequired(EventType.UPDATED));
+    }
+}
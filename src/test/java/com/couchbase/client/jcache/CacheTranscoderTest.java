@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2015 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.couchbase.client.jcache;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.couchbase.client.core.lang.Tuple2;
+import com.couchbase.client.core.message.ResponseStatus;
+import com.couchbase.client.deps.io.netty.buffer.ByteBuf;
+import com.couchbase.client.deps.io.netty.buffer.Unpooled;
+import org.junit.Test;
+
+public class CacheTranscoderTest {
+
+    private static final ValueCodec<String> REVERSED = new ValueCodec<String>() {
+        @Override
+        public int id() {
+            return 16;
+        }
+
+        @Override
+        public byte[] encode(String value) {
+            return new StringBuilder(value).reverse().toString().getBytes();
+        }
+
+        @Override
+        public String decode(byte[] bytes, int offset, int length) {
+            return new StringBuilder(new String(bytes, offset, length)).reverse().toString();
+        }
+    };
+
+    private static CacheDocument roundTrip(CacheTranscoder encoder, CacheTranscoder decoder, Object content) {
+        Tuple2<ByteBuf, Integer> encoded = encoder.encode(CacheDocument.create("id", content));
+        return decoder.decode("id", encoded.value1(), 0L, 0, encoded.value2(), ResponseStatus.SUCCESS);
+    }
+
+    @Test
+    public void shouldUseJavaSerializationWithoutCodec() {
+        CacheTranscoder transcoder = new CacheTranscoder(null);
+        Tuple2<ByteBuf, Integer> encoded = transcoder.encode(CacheDocument.create("id", "value"));
+
+        assertEquals(CacheTranscoder.SERIALIZED_FLAGS, encoded.value2().intValue());
+        assertEquals("value", transcoder.decode("id", encoded.value1(), 0L, 0, encoded.value2(),
+                ResponseStatus.SUCCESS).content());
+    }
+
+    @Test
+    public void shouldRoundTripCompactValues() {
+        CacheTranscoder transcoder = new CacheTranscoder(ValueCodecs.compact());
+
+        assertEquals("value", roundTrip(transcoder, transcoder, "value").content());
+        assertEquals(Long.MIN_VALUE, roundTrip(transcoder, transcoder, Long.MIN_VALUE).content());
+        assertEquals(-12, roundTrip(transcoder, transcoder, -12).content());
+        assertEquals(1.5d, roundTrip(transcoder, transcoder, 1.5d).content());
+        assertEquals(Boolean.TRUE, roundTrip(transcoder, transcoder, true).content());
+        assertArrayEquals(new byte[] { 1, 2 }, (byte[]) roundTrip(transcoder, transcoder, new byte[] { 1, 2 })
+                .content());
+    }
+
+    @Test
+    public void shouldKeepTimedValueHeader() {
+        CacheTranscoder transcoder = new CacheTranscoder(ValueCodecs.string());
+        TimedValue timed = new TimedValue("value", 123L, 60, 456L);
+
+        TimedValue decoded = (TimedValue) roundTrip(transcoder, transcoder, timed).content();
+        assertEquals("value", decoded.value());
+        assertEquals(123L, decoded.createdMillis());
+        assertEquals(60, decoded.ttlSeconds());
+        assertEquals(456L, decoded.loadCostNanos());
+    }
+
+    @Test
+    public void shouldDecodeDocumentsOfOtherCodecs() {
+        CacheTranscoder legacy = new CacheTranscoder(null);
+        CacheTranscoder string = new CacheTranscoder(ValueCodecs.string());
+        CacheTranscoder compact = new CacheTranscoder(ValueCodecs.compact());
+
+        assertEquals("value", roundTrip(legacy, string, "value").content());
+        assertEquals("value", roundTrip(compact, string, "value").content());
+        assertEquals("value", roundTrip(string, compact, "value").content());
+    }
+
+    @Test
+    public void shouldCompressLargeValuesOnly() {
+        char[] chars = new char[2000];
+        Arrays.fill(chars, 'a');
+        String large = new String(chars);
+        CacheTranscoder transcoder = new CacheTranscoder(ValueCodecs.string(), 100, 6);
+
+        Tuple2<ByteBuf, Integer> encoded = transcoder.encode(CacheDocument.create("id", large));
+        assertTrue((encoded.value2() & CacheTranscoder.COMPRESSED_FLAG) != 0);
+        assertTrue(encoded.value1().readableBytes() < 200);
+        assertEquals(large, transcoder.decode("id", encoded.value1(), 0L, 0, encoded.value2(),
+                ResponseStatus.SUCCESS).content());
+
+        Tuple2<ByteBuf, Integer> small = transcoder.encode(CacheDocument.create("id", "small"));
+        assertEquals(0, small.value2() & CacheTranscoder.COMPRESSED_FLAG);
+    }
+
+    @Test
+    public void shouldCompressSerializedValuesAndDecodeMixedEntries() {
+        char[] chars = new char[2000];
+        Arrays.fill(chars, 'b');
+        String large = new String(chars);
+        CacheTranscoder compressing = new CacheTranscoder(null, 100, 9);
+        CacheTranscoder plain = new CacheTranscoder(null);
+
+        assertEquals(large, roundTrip(compressing, plain, large).content());
+        assertEquals(large, roundTrip(plain, compressing, large).content());
+        TimedValue timed = (TimedValue) roundTrip(compressing, compressing, new TimedValue(large, 1L, 2, 3L))
+                .content();
+        assertEquals(large, timed.value());
+    }
+
+    @Test
+    public void shouldSupportByteArrayCodecs() {
+        CacheTranscoder transcoder = new CacheTranscoder(REVERSED);
+
+        Tuple2<ByteBuf, Integer> encoded = transcoder.encode(CacheDocument.create("id", "abc"));
+        assertEquals("cba", encoded.value1().toString(Charset.forName("UTF-8")));
+        assertEquals("abc", transcoder.decode("id", encoded.value1(), 0L, 0, encoded.value2(),
+                ResponseStatus.SUCCESS).content());
+    }
+
+    @Test
+    public void shouldDecodeFromDirectBuffers() {
+        CacheTranscoder transcoder = new CacheTranscoder(ValueCodecs.compact(), 10, 1);
+        Tuple2<ByteBuf, Integer> encoded = transcoder.encode(CacheDocument.create("id", "aaaaaaaaaaaaaaaaaaaa"));
+        ByteBuf direct = Unpooled.directBuffer().writeBytes(encoded.value1());
+
+        assertEquals("aaaaaaaaaaaaaaaaaaaa", transcoder.decode("id", direct, 0L, 0, encoded.value2(),
+                ResponseStatus.SUCCESS).content());
+    }
+
+    @Test
+    public void shouldDecodeLazyValuesOnFirstRead() {
+        CacheTranscoder transcoder = new CacheTranscoder(ValueCodecs.string());
+        LazyCacheTranscoder lazyTranscoder = new LazyCacheTranscoder(transcoder);
+        Tuple2<ByteBuf, Integer> encoded = transcoder.encode(CacheDocument.create("id", "value"));
+
+        LazyCacheDocument doc = lazyTranscoder.decode("id", encoded.value1(), 0L, 0, encoded.value2(),
+                ResponseStatus.SUCCESS);
+        CouchbaseCacheEntry<String, String> entry = new CouchbaseCacheEntry<String, String>("key", doc.content());
+        assertEquals("key", entry.getKey());
+        assertFalse(doc.content().isDecoded());
+
+        assertEquals("value", entry.getValue());
+        assertTrue(doc.content().isDecoded());
+    }
+
+    @Test
+    public void shouldKeepOriginalKeyOfCompactedDocuments() {
+        char[] chars = new char[2000];
+        Arrays.fill(chars, 'c');
+        String large = new String(chars);
+        CacheTranscoder transcoder = new CacheTranscoder(null, 100, 6);
+        LazyCacheTranscoder lazyTranscoder = new LazyCacheTranscoder(transcoder);
+
+        for (String value : Arrays.asList("small", large)) {
+            Tuple2<ByteBuf, Integer> encoded = transcoder.encode(CacheDocument.create("p#digest", 0, value, 0L,
+                    "p_original"));
+            assertTrue((encoded.value2() & CacheTranscoder.KEYED_FLAG) != 0);
+
+            CacheDocument doc = transcoder.decode("p#digest", encoded.value1().duplicate(), 0L, 0,
+                    encoded.value2(), ResponseStatus.SUCCESS);
+            assertEquals(value, doc.content());
+            assertEquals("p_original", doc.internalKey());
+
+            LazyCacheDocument lazyDoc = lazyTranscoder.decode("p#digest", encoded.value1(), 0L, 0,
+                    encoded.value2(), ResponseStatus.SUCCESS);
+            assertEquals("p_original", lazyDoc.internalKey());
+            assertEquals(value, lazyDoc.content().get());
+        }
+    }
+
+    @Test
+    public void shouldEncodeWithTheTranscoderOfTheCacheThroughTheSharedOne() {
+        CacheTranscoder cacheTranscoder = new CacheTranscoder(REVERSED);
+        Tuple2<ByteBuf, Integer> encoded = CacheTranscoder.SHARED.encode(CacheDocument.create("id", 0, "abc", 0L,
+                null, cacheTranscoder));
+        assertEquals("cba", encoded.value1().toString(Charset.forName("UTF-8")));
+
+        CacheDocument received = CacheTranscoder.SHARED.decode("id", encoded.value1().duplicate(), 0L, 0,
+                encoded.value2(), ResponseStatus.SUCCESS);
+        assertTrue(received.content() instanceof LazyValue);
+        assertEquals("abc", cacheTranscoder.decoded(received).content());
+
+        LazyCacheTranscoder lazyTranscoder = (LazyCacheTranscoder) CacheTranscoder.BUCKET_TRANSCODERS.get(1);
+        LazyCacheDocument lazyDoc = lazyTranscoder.decode("id", encoded.value1(), 0L, 0, encoded.value2(),
+                ResponseStatus.SUCCESS);
+        assertEquals("abc", lazyDoc.boundTo(cacheTranscoder).content().get());
+    }
+
+    @Test
+    public void shouldDecodeBuiltInCodecsThroughTheSharedTranscoder() {
+        CacheTranscoder cacheTranscoder = new CacheTranscoder(ValueCodecs.string(), 10, 1);
+        Tuple2<ByteBuf, Integer> encoded = CacheTranscoder.SHARED.encode(CacheDocument.create("id", 0,
+                "aaaaaaaaaaaaaaaaaaaa", 0L, null, cacheTranscoder));
+        assertTrue((encoded.value2() & CacheTranscoder.COMPRESSED_FLAG) != 0);
+
+        CacheDocument received = CacheTranscoder.SHARED.decode("id", encoded.value1(), 0L, 0, encoded.value2(),
+                ResponseStatus.SUCCESS);
+        assertEquals("aaaaaaaaaaaaaaaaaaaa", received.content());
+        assertSame(received, new CacheTranscoder(null).decoded(received));
+    }
+
+    @Test
+    public void shouldReadOriginalKeyOfCompressedDocumentsWithoutDecoding() {
+        char[] chars = new char[2000];
+        Arrays.fill(chars, 'd');
+        String large = new String(chars);
+        CacheTranscoder transcoder = new CacheTranscoder(null, 100, 6);
+        Tuple2<ByteBuf, Integer> encoded = transcoder.encode(CacheDocument.create("p#digest", 0, large, 0L,
+                "p_original"));
+        assertTrue((encoded.value2() & CacheTranscoder.COMPRESSED_FLAG) != 0);
+        assertEquals(10, encoded.value1().getUnsignedShort(0));
+        assertEquals("p_original", encoded.value1().toString(2, 10, Charset.forName("UTF-8")));
+
+        LazyCacheDocument lazyDoc = new LazyCacheTranscoder(transcoder).decode("p#digest", encoded.value1(), 0L, 0,
+                encoded.value2(), ResponseStatus.SUCCESS);
+        assertEquals("p_original", lazyDoc.internalKey());
+        assertFalse(lazyDoc.content().isDecoded());
+        assertEquals(large, lazyDoc.content().get());
+    }
+
+    @Test
+    public void shouldCopyMutableValuesOnly() throws Exception {
+        CacheTranscoder transcoder = new CacheTranscoder(null);
+        List<String> list = new ArrayList<String>(Arrays.asList("a", "b"));
+        String string = new String("value");
+
+        Object copy = transcoder.copy("id", list);
+        assertNotSame(list, copy);
+        assertEquals(list, copy);
+        assertSame(string, transcoder.copy("id", string));
+        assertSame(Thread.State.NEW, transcoder.copy("id", Thread.State.NEW));
+    }
+
+    @Test
+    public void shouldCopyValuesWithTheCodec() throws Exception {
+        CacheTranscoder transcoder = new CacheTranscoder(ValueCodecs.compact(), 1, 6);
+        byte[] bytes = new byte[] { 1, 2, 3 };
+
+        Object copy = transcoder.copy("id", bytes);
+        assertNotSame(bytes, copy);
+        assertArrayEquals(bytes, (byte[]) copy);
+    }
+
+    @Test
+    public void shouldEncodeStringsInBuffersLikeGetBytes() {
+        BufferValueCodec<String> codec = (BufferValueCodec<String>) ValueCodecs.string();
+        Charset utf8 = Charset.forName("UTF-8");
+        for (String value : Arrays.asList("", "ascii", "caf\u00e9", "\u20ac10", "clef \uD834\uDD1E", "bad \uD800x",
+                "end \uDC00")) {
+            ByteBuf out = Unpooled.buffer(1);
+            out.writeByte(42);
+            codec.encode(value, out);
+
+            byte[] expected = value.getBytes(utf8);
+            assertEquals(value, 1 + expected.length, out.readableBytes());
+            byte[] actual = new byte[expected.length];
+            out.getBytes(1, actual);
+            assertArrayEquals(value, expected, actual);
+        }
+    }
+}
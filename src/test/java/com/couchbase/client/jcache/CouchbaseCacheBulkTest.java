@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2015 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.couchbase.client.jcache;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.cache.CacheException;
+import javax.cache.configuration.FactoryBuilder;
+import javax.cache.configuration.MutableCacheEntryListenerConfiguration;
+import javax.cache.event.CacheEntryCreatedListener;
+import javax.cache.event.CacheEntryEvent;
+import javax.cache.event.CacheEntryListenerException;
+import javax.cache.event.CacheEntryRemovedListener;
+import javax.cache.event.CacheEntryUpdatedListener;
+
+import com.couchbase.client.java.AsyncBucket;
+import com.couchbase.client.java.Bucket;
+import com.couchbase.client.java.document.JsonDocument;
+import com.couchbase.client.java.error.DocumentDoesNotExistException;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import rx.Observable;
+
+/**
+ * Unit tests of the bulk operations of {@link CouchbaseCache} against a mocked {@link Bucket}.
+ */
+public class CouchbaseCacheBulkTest {
+
+    private static final List<String> EVENTS = Collections.synchronizedList(new ArrayList<String>());
+
+    public static class RecordingListener implements CacheEntryCreatedListener<String, String>,
+            CacheEntryUpdatedListener<String, String>, CacheEntryRemovedListener<String, String>, Serializable {
+
+        @Override
+        public void onCreated(Iterable<CacheEntryEvent<? extends String, ? extends String>> events)
+                throws CacheEntryListenerException {
+            record(events);
+        }
+
+        @Override
+        public void onUpdated(Iterable<CacheEntryEvent<? extends String, ? extends String>> events)
+                throws CacheEntryListenerException {
+            record(events);
+        }
+
+        @Override
+        public void onRemoved(Iterable<CacheEntryEvent<? extends String, ? extends String>> events)
+                throws CacheEntryListenerException {
+            record(events);
+        }
+
+        private static void record(Iterable<CacheEntryEvent<? extends String, ? extends String>> events) {
+            for (CacheEntryEvent<? extends String, ? extends String> event : events) {
+                EVENTS.add(event.getEventType() + " " + event.getKey() + "=" + event.getValue()
+                        + (event.getOldValue() == null ? "" : " was " + event.getOldValue()));
+            }
+        }
+    }
+
+    @Before
+    public void clearEvents() {
+        EVENTS.clear();
+    }
+
+    private static Set<String> keys(String... keys) {
+        return new HashSet<String>(Arrays.asList(keys));
+    }
+
+    private static Map<String, String> entries(String... keys) {
+        Map<String, String> entries = new HashMap<String, String>(keys.length);
+        for (String key : keys) {
+            entries.put(key, "value" + key);
+        }
+        return entries;
+    }
+
+    private static void listen(CouchbaseCache<String, String> cache, boolean oldValueRequired) {
+        cache.registerCacheEntryListener(new MutableCacheEntryListenerConfiguration<String, String>(
+                FactoryBuilder.factoryOf(new RecordingListener()), null, oldValueRequired, true));
+    }
+
+    /**
+     * @param failingIds the ids of the documents that fail to be stored.
+     * @return an answer storing documents with a CAS of 1, or failing for the given ids.
+     */
+    private static Answer<Observable<CacheDocument>> stored(final String... failingIds) {
+        return new Answer<Observable<CacheDocument>>() {
+            @Override
+            public Observable<CacheDocument> answer(InvocationOnMock invocation) {
+                CacheDocument doc = (CacheDocument) invocation.getArguments()[0];
+                if (Arrays.asList(failingIds).contains(doc.id())) {
+                    return Observable.error(new IllegalStateException("Could not store " + doc.id()));
+                }
+                return Observable.just(CacheDocument.create(doc.id(), doc.content(), 1L));
+            }
+        };
+    }
+
+    @Test
+    public void shouldGetAllThroughTheAsyncBucket() {
+        Bucket bucket = MockedCaches.bucket();
+        AsyncBucket async = bucket.async();
+        when(async.get(eq("cache_a"), eq(CacheDocument.class)))
+                .thenReturn(Observable.just(CacheDocument.create("cache_a", "valueA", 1L)));
+        when(async.get(eq("cache_b"), eq(CacheDocument.class)))
+                .thenReturn(Observable.just(CacheDocument.create("cache_b", "valueB", 2L)));
+        when(async.get(eq("cache_c"), eq(CacheDocument.class))).thenReturn(Observable.<CacheDocument>empty());
+        CouchbaseCache<String, String> cache = MockedCaches.cache(bucket);
+
+        Map<String, String> expected = new HashMap<String, String>();
+        expected.put("a", "valueA");
+        expected.put("b", "valueB");
+        assertEquals(expected, cache.getAll(keys("a", "b", "c")));
+        assertEquals(expected, cache.getAllAsync(keys("a", "b", "c")).toBlocking().single());
+        verify(bucket, never()).get(eq("cache_a"), eq(CacheDocument.class));
+    }
+
+    @Test
+    public void shouldFailGetAllWhenAFetchFails() {
+        Bucket bucket = MockedCaches.bucket();
+        AsyncBucket async = bucket.async();
+        IllegalStateException failure = new IllegalStateException("fetch failed");
+        when(async.get(eq("cache_a"), eq(CacheDocument.class)))
+                .thenReturn(Observable.just(CacheDocument.create("cache_a", "valueA", 1L)));
+        when(async.get(eq("cache_b"), eq(CacheDocument.class))).thenReturn(Observable.<CacheDocument>error(failure));
+        CouchbaseCache<String, String> cache = MockedCaches.cache(bucket);
+
+        try {
+            cache.getAll(keys("a", "b"));
+            fail("expected CacheException");
+        } catch (CacheException e) {
+            assertEquals("GetAll of 2 keys failed", e.getMessage());
+            assertSame(failure, e.getCause());
+        }
+        try {
+            cache.getAllAsync(keys("a", "b")).toBlocking().single();
+            fail("expected CacheException");
+        } catch (CacheException e) {
+            assertEquals("GetAll of 2 keys failed", e.getMessage());
+            assertSame(failure, e.getCause());
+        }
+    }
+
+    @Test
+    public void shouldPutAllThroughTheAsyncBucket() {
+        Bucket bucket = MockedCaches.bucket();
+        AsyncBucket async = bucket.async();
+        when(async.upsert(any(CacheDocument.class))).thenAnswer(stored());
+        CouchbaseCache<String, String> cache = MockedCaches.cache(bucket);
+
+        cache.putAll(entries("a", "b", "c"));
+
+        verify(async, times(3)).upsert(any(CacheDocument.class));
+        verify(async, never()).insert(any(CacheDocument.class));
+        verify(bucket, never()).upsert(any(CacheDocument.class));
+    }
+
+    @Test
+    public void shouldReportAllFailuresOfPutAll() {
+        Bucket bucket = MockedCaches.bucket();
+        AsyncBucket async = bucket.async();
+        when(async.upsert(any(CacheDocument.class))).thenAnswer(stored("cache_b", "cache_c"));
+        CouchbaseCache<String, String> cache = MockedCaches.cache(bucket);
+
+        try {
+            cache.putAll(entries("a", "b", "c", "d"));
+            fail("expected CacheException");
+        } catch (CacheException e) {
+            assertTrue(e.getMessage(), e.getMessage().equals("Error during putAll of 2 keys: [b, c]")
+                    || e.getMessage().equals("Error during putAll of 2 keys: [c, b]"));
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        //the other entries are stored anyway
+        verify(async, times(4)).upsert(any(CacheDocument.class));
+    }
+
+    @Test
+    public void shouldFetchOldValuesOfPutAllForListeners() {
+        Bucket bucket = MockedCaches.bucket();
+        AsyncBucket async = bucket.async();
+        when(async.get(eq("cache_a"), eq(CacheDocument.class))).thenReturn(Observable.<CacheDocument>empty());
+        when(async.get(eq("cache_b"), eq(CacheDocument.class)))
+                .thenReturn(Observable.just(CacheDocument.create("cache_b", "old", 1L)));
+        when(async.upsert(any(CacheDocument.class))).thenAnswer(stored());
+        CouchbaseCache<String, String> cache = MockedCaches.cache(bucket);
+        listen(cache, true);
+
+        cache.putAll(entries("a", "b"));
+
+        assertEquals(new HashSet<String>(Arrays.asList("CREATED a=valuea", "UPDATED b=valueb was old")),
+                new HashSet<String>(EVENTS));
+        verify(async, never()).insert(any(CacheDocument.class));
+    }
+
+    @Test
+    public void shouldRemoveAllThroughTheAsyncBucket() {
+        Bucket bucket = MockedCaches.bucket();
+        AsyncBucket async = bucket.async();
+        when(async.remove("cache_a")).thenReturn(Observable.just(JsonDocument.create("cache_a")));
+        when(async.remove("cache_b")).thenReturn(Observable.<JsonDocument>error(new DocumentDoesNotExistException()));
+        CouchbaseCache<String, String> cache = MockedCaches.cache(bucket);
+
+        cache.removeAll(keys("a", "b"));
+
+        verify(async).remove("cache_a");
+        verify(async).remove("cache_b");
+        verify(async, never()).get(anyString(), eq(CacheDocument.class));
+    }
+
+    @Test
+    public void shouldReportAllFailuresOfRemoveAll() {
+        Bucket bucket = MockedCaches.bucket();
+        AsyncBucket async = bucket.async();
+        when(async.remove("cache_a")).thenReturn(Observable.just(JsonDocument.create("cache_a")));
+        when(async.remove("cache_b")).thenReturn(Observable.<JsonDocument>error(new IllegalStateException()));
+        when(async.remove("cache_c")).thenReturn(Observable.just(JsonDocument.create("cache_c")));
+        CouchbaseCache<String, String> cache = MockedCaches.cache(bucket);
+
+        try {
+            cache.removeAll(keys("a", "b", "c"));
+            fail("expected CacheException");
+        } catch (CacheException e) {
+            assertEquals("Error during removeAll of 1 keys: [b]", e.getMessage());
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        //the other keys are removed anyway
+        verify(async).remove("cache_a");
+        verify(async).remove("cache_c");
+    }
+
+    @Test
+    public void shouldFetchRemovedValuesOfRemoveAllForListeners() {
+        Bucket bucket = MockedCaches.bucket();
+        AsyncBucket async = bucket.async();
+        when(async.get(eq("cache_a"), eq(CacheDocument.class)))
+                .thenReturn(Observable.just(CacheDocument.create("cache_a", "valuea", 1L)));
+        when(async.get(eq("cache_b"), eq(CacheDocument.class))).thenReturn(Observable.<CacheDocument>empty());
+        when(async.remove("cache_a")).thenReturn(Observable.just(JsonDocument.create("cache_a")));
+        CouchbaseCache<String, String> cache = MockedCaches.cache(bucket);
+        listen(cache, false);
+
+        cache.removeAll(keys("a", "b"));
+
+        assertEquals(Arrays.asList("REMOVED a=valuea"), EVENTS);
+        //a key that is not in the cache is neither removed nor notified
+        verify(async, never()).remove("cache_b");
+    }
+}
@@ -24,13 +24,14 @@ import static org.mockito.Mockito.when;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.cache.Cache;
 
 import com.couchbase.client.core.lang.Tuple2;
 import com.couchbase.client.java.AsyncBucket;
 import com.couchbase.client.java.Bucket;
-import com.couchbase.client.java.document.SerializableDocument;
 import com.couchbase.client.jcache.CouchbaseCacheIterator.TimeAndDocHook;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -38,6 +39,7 @@ import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import rx.Observable;
 import rx.Subscriber;
+import rx.functions.Action0;
 
 public class CouchbaseCacheIteratorTest {
 
@@ -71,16 +73,16 @@ public class CouchbaseCacheIteratorTest {
         AsyncBucket mockAsyncBucket = mock(AsyncBucket.class);
         when(mockBucket.async()).thenReturn(mockAsyncBucket);
 
-        when(mockAsyncBucket.get(anyString(), eq(SerializableDocument.class))).then(new Answer<Observable>() {
+        when(mockAsyncBucket.get(anyString(), eq(LazyCacheDocument.class))).then(new Answer<Observable>() {
             @Override
             public Observable answer(InvocationOnMock invocation) throws Throwable {
                 String id = (String) invocation.getArguments()[0];
                 Double value = CONVERTER.fromString(id) + 0.4d;
-                return Observable.just(SerializableDocument.create(id, value));
+                return Observable.just(LazyCacheDocument.create(id, LazyValue.decoded(value)));
             }
         });
 
-        when(mockAsyncBucket.remove(any(SerializableDocument.class))).then(new Answer<Observable>() {
+        when(mockAsyncBucket.remove(any(LazyCacheDocument.class))).then(new Answer<Observable>() {
             @Override
             public Observable answer(InvocationOnMock invocation) throws Throwable {
                 return Observable.just(invocation.getArguments()[0]);
@@ -91,20 +93,20 @@ public class CouchbaseCacheIteratorTest {
 
     @Test
     public void shouldIterateFullyAndRemove() {
-        final List<SerializableDocument> removed = new ArrayList<SerializableDocument>(10);
-        final List<SerializableDocument> visited = new ArrayList<SerializableDocument>(10);
+        final List<LazyCacheDocument> removed = new ArrayList<LazyCacheDocument>(10);
+        final List<LazyCacheDocument> visited = new ArrayList<LazyCacheDocument>(10);
         List<Double> extractedValues = new ArrayList<Double>(10);
 
         Observable<String> ids = Observable.from(keyList);
         TimeAndDocHook onRemoveAction = new TimeAndDocHook() {
             @Override
-            public void call(Tuple2<Long, SerializableDocument> timeAndDoc) {
+            public void call(Tuple2<Long, LazyCacheDocument> timeAndDoc) {
                 removed.add(timeAndDoc.value2());
             }
         };
         TimeAndDocHook onEachAction = new TimeAndDocHook() {
             @Override
-            public void call(Tuple2<Long, SerializableDocument> timeAndDoc) {
+            public void call(Tuple2<Long, LazyCacheDocument> timeAndDoc) {
                 visited.add(timeAndDoc.value2());
             }
         };
@@ -129,14 +131,14 @@ public class CouchbaseCacheIteratorTest {
         for (int i = 0; i < 10; i++) {
             Double extractedValue = extractedValues.get(i);
             String expectedKey = "s" + i;
-            SerializableDocument removedDoc = removed.get(i);
-            SerializableDocument visitedDoc = visited.get(i);
+            LazyCacheDocument removedDoc = removed.get(i);
+            LazyCacheDocument visitedDoc = visited.get(i);
 
             assertEquals(i + 0.4d, extractedValue, 0d);
             assertEquals(expectedKey, visitedDoc.id());
-            assertEquals(extractedValue, visitedDoc.content());
+            assertEquals(extractedValue, visitedDoc.content().get());
             assertEquals(expectedKey, removedDoc.id());
-            assertEquals(extractedValue, removedDoc.content());
+            assertEquals(extractedValue, removedDoc.content().get());
         }
     }
 
@@ -214,4 +216,66 @@ public class CouchbaseCacheIteratorTest {
         //trigger NoSuchElementException
         iterator.next();
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldOnlyFetchPrefetchWindowAheadAndStopWhenClosed() {
+        final AtomicInteger fetched = new AtomicInteger();
+        TimeAndDocHook onEachAction = new TimeAndDocHook() {
+            @Override
+            public void call(Tuple2<Long, LazyCacheDocument> timeAndDoc) {
+                fetched.incrementAndGet();
+            }
+        };
+
+        CouchbaseCacheIterator<Integer, Double> iterator = new CouchbaseCacheIterator<Integer, Double>(
+                mockBucket, CONVERTER, Observable.from(keyList), CouchbaseCacheIterator.NO_TOUCH, 3,
+                onEachAction, null);
+        assertEquals(3, fetched.get());
+
+        assertEquals(0.4d, iterator.next().getValue(), 0d);
+        assertEquals(1.4d, iterator.next().getValue(), 0d);
+        assertEquals(5, fetched.get());
+
+        iterator.close();
+        assertFalse(iterator.hasNext());
+        assertEquals(5, fetched.get());
+    }
+
+    @Test
+    public void shouldCancelSubscriptionWhenClosed() {
+        final AtomicBoolean unsubscribed = new AtomicBoolean();
+        Observable<String> ids = Observable.<String>never().doOnUnsubscribe(new Action0() {
+            @Override
+            public void call() {
+                unsubscribed.set(true);
+            }
+        });
+        CouchbaseCacheIterator<Integer, Double> iterator = new CouchbaseCacheIterator<Integer, Double>(
+                mockBucket, CONVERTER, ids);
+        int open = CouchbaseCacheIterator.openIterators();
+
+        iterator.close();
+        assertTrue(unsubscribed.get());
+        assertEquals(open - 1, CouchbaseCacheIterator.openIterators());
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void shouldCancelSubscriptionOfUnreachableIterator() throws InterruptedException {
+        final AtomicBoolean unsubscribed = new AtomicBoolean();
+        Observable<String> ids = Observable.<String>never().doOnUnsubscribe(new Action0() {
+            @Override
+            public void call() {
+                unsubscribed.set(true);
+            }
+        });
+        new CouchbaseCacheIterator<Integer, Double>(mockBucket, CONVERTER, ids);
+
+        for (int i = 0; i < 100 && !unsubscribed.get(); i++) {
+            System.gc();
+            Thread.sleep(10L);
+            CouchbaseCacheIterator.expungeUnreachable();
+        }
+        assertTrue(unsubscribed.get());
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright (c) 2015 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.couchbase.client.jcache;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.cache.CacheException;
+import javax.cache.expiry.CreatedExpiryPolicy;
+import javax.cache.expiry.Duration;
+import javax.cache.expiry.ModifiedExpiryPolicy;
+import javax.cache.processor.EntryProcessor;
+import javax.cache.processor.EntryProcessorException;
+import javax.cache.processor.MutableEntry;
+
+import com.couchbase.client.core.ClusterFacade;
+import com.couchbase.client.core.message.CouchbaseRequest;
+import com.couchbase.client.core.message.kv.ObserveResponse;
+import com.couchbase.client.java.Bucket;
+import com.couchbase.client.java.error.CASMismatchException;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import rx.Observable;
+
+/**
+ * Unit tests of the {@link CouchbaseCache} against a mocked {@link Bucket}.
+ */
+public class CouchbaseCacheTest {
+
+    private static final String LONG_KEY = new String(new char[100]).replace('\0', 'k');
+
+    private static final EntryProcessor<String, String, Void> SET_V2 = new EntryProcessor<String, String, Void>() {
+        @Override
+        public Void process(MutableEntry<String, String> entry, Object... arguments) throws EntryProcessorException {
+            entry.setValue("v2");
+            return null;
+        }
+    };
+
+    /**
+     * @return a cache compacting long keys, whose bucket returns a document holding another key for any id.
+     */
+    private static CouchbaseCache<String, String> collidingCache(Bucket bucket) {
+        when(bucket.get(anyString(), eq(CacheDocument.class))).thenReturn(
+                CacheDocument.create("cache#digest", 0, "other", 1L, "cache_other"));
+        return MockedCaches.cache(bucket, MockedCaches.configuration().withKeyCompaction(80).build());
+    }
+
+    @Test
+    public void shouldRetryGetAndPutOnConcurrentModification() {
+        Bucket bucket = MockedCaches.bucket();
+        when(bucket.get(eq("cache_key"), eq(CacheDocument.class))).thenReturn(
+                CacheDocument.create("cache_key", "v1", 1L),
+                CacheDocument.create("cache_key", "v2", 2L));
+        when(bucket.replace(any(CacheDocument.class)))
+                .thenThrow(new CASMismatchException())
+                .thenReturn(CacheDocument.create("cache_key", "v3", 3L));
+        CouchbaseCache<String, String> cache = MockedCaches.cache(bucket);
+
+        assertEquals("v2", cache.getAndPut("key", "v3"));
+        verify(bucket, times(2)).get(eq("cache_key"), eq(CacheDocument.class));
+        verify(bucket, times(2)).replace(any(CacheDocument.class));
+    }
+
+    @Test
+    public void shouldStopRetryingGetAndPutAfterMaxAttempts() {
+        Bucket bucket = MockedCaches.bucket();
+        when(bucket.get(eq("cache_key"), eq(CacheDocument.class)))
+                .thenReturn(CacheDocument.create("cache_key", "v1", 1L));
+        when(bucket.replace(any(CacheDocument.class))).thenThrow(new CASMismatchException());
+        CouchbaseCache<String, String> cache = MockedCaches.cache(bucket);
+
+        try {
+            cache.getAndPut("key", "v2");
+            fail("expected CacheException");
+        } catch (CacheException e) {
+            assertTrue(e.getCause() instanceof CASMismatchException);
+        }
+        verify(bucket, times(10)).replace(any(CacheDocument.class));
+    }
+
+    @Test
+    public void shouldNotReplaceDocumentHoldingAnotherCompactedKey() {
+        Bucket bucket = MockedCaches.bucket();
+        CouchbaseCache<String, String> cache = collidingCache(bucket);
+
+        assertFalse(cache.replace(LONG_KEY, "v"));
+        assertNull(cache.getAndReplace(LONG_KEY, "v"));
+        verify(bucket, never()).replace(any(CacheDocument.class));
+    }
+
+    @Test
+    public void shouldNotRemoveDocumentHoldingAnotherCompactedKey() {
+        Bucket bucket = MockedCaches.bucket();
+        CouchbaseCache<String, String> cache = collidingCache(bucket);
+
+        assertFalse(cache.remove(LONG_KEY));
+        assertNull(cache.getAndRemove(LONG_KEY));
+        verify(bucket, never()).remove(anyString());
+        verify(bucket, never()).remove(any(CacheDocument.class));
+    }
+
+    @Test
+    public void shouldNotReadShortKeyNamedLikeACompactedKey() {
+        Bucket bucket = MockedCaches.bucket();
+        //a short key stored as is, whose internal form happens to be the compacted form of the long key
+        when(bucket.get(anyString(), eq(CacheDocument.class))).thenAnswer(new Answer<CacheDocument>() {
+            @Override
+            public CacheDocument answer(InvocationOnMock invocation) {
+                return CacheDocument.create((String) invocation.getArguments()[0], "short", 1L);
+            }
+        });
+        CouchbaseCache<String, String> cache = MockedCaches.cache(bucket,
+                MockedCaches.configuration().withKeyCompaction(80).build());
+
+        assertNull(cache.get(LONG_KEY));
+        assertFalse(cache.containsKey(LONG_KEY));
+        assertEquals("short", cache.get("key"));
+    }
+
+    @Test
+    public void shouldOverwriteDocumentHoldingAnotherCompactedKeyOnGetAndPut() {
+        Bucket bucket = MockedCaches.bucket();
+        CouchbaseCache<String, String> cache = collidingCache(bucket);
+        ArgumentCaptor<CacheDocument> replaced = ArgumentCaptor.forClass(CacheDocument.class);
+        when(bucket.replace(replaced.capture())).thenReturn(CacheDocument.create("cache#digest", "v", 2L));
+
+        assertNull(cache.getAndPut(LONG_KEY, "v"));
+        assertEquals(1L, replaced.getValue().cas());
+        assertEquals("cache_" + LONG_KEY, replaced.getValue().originalId());
+    }
+
+    @Test
+    public void shouldCopyValuesOfTheNearCache() {
+        Bucket bucket = MockedCaches.bucket();
+        when(bucket.get(eq("cache_key"), eq(CacheDocument.class))).thenReturn(
+                CacheDocument.create("cache_key", new ArrayList<String>(Arrays.asList("a", "b")), 1L));
+        CouchbaseCache<String, ArrayList<String>> cache = MockedCaches.cache(bucket,
+                CouchbaseConfiguration.<String, ArrayList<String>>builder("cache", KeyConverter.STRING_KEY_CONVERTER)
+                        .withNearCache(10, new Duration(TimeUnit.MINUTES, 1))
+                        .build());
+
+        List<String> first = cache.get("key");
+        first.add("c");
+        List<String> second = cache.get("key");
+
+        assertEquals(Arrays.asList("a", "b"), second);
+        assertNotSame(first, second);
+        assertNotSame(second, cache.get("key"));
+        verify(bucket, times(1)).get(eq("cache_key"), eq(CacheDocument.class));
+    }
+
+    /**
+     * Makes the observe requests of a mocked bucket get the given response, or never complete if it is null.
+     *
+     * @return the mocked core of the bucket.
+     */
+    private static ClusterFacade observing(Bucket bucket, ObserveResponse response) {
+        ClusterFacade core = mock(ClusterFacade.class);
+        when(bucket.core()).thenReturn(core);
+        when(bucket.name()).thenReturn("bucket");
+        when(core.<ObserveResponse>send(any(CouchbaseRequest.class))).thenReturn(response == null
+                ? Observable.<ObserveResponse>never() : Observable.just(response));
+        return core;
+    }
+
+    private static CouchbaseCache<String, String> nearCached(Bucket bucket, long localTtlMillis) {
+        return MockedCaches.cache(bucket, MockedCaches.configuration()
+                .withNearCache(10, new Duration(TimeUnit.MILLISECONDS, localTtlMillis))
+                .build());
+    }
+
+    @Test
+    public void shouldServeStaleNearCacheEntriesWhileValidating() throws InterruptedException {
+        Bucket bucket = MockedCaches.bucket();
+        ClusterFacade core = observing(bucket, null);
+        when(bucket.get(eq("cache_key"), eq(CacheDocument.class))).thenReturn(
+                CacheDocument.create("cache_key", "v1", 1L),
+                CacheDocument.create("cache_key", "v2", 2L));
+        CouchbaseCache<String, String> cache = nearCached(bucket, 10L);
+
+        assertEquals("v1", cache.get("key"));
+        Thread.sleep(20L);
+        assertEquals("v1", cache.get("key"));
+        assertEquals("v1", cache.get("key"));
+        verify(bucket, times(1)).get(eq("cache_key"), eq(CacheDocument.class));
+        verify(core, times(1)).send(any(CouchbaseRequest.class));
+    }
+
+    @Test
+    public void shouldFetchAgainWhenValidationFindsAnotherCas() throws InterruptedException {
+        Bucket bucket = MockedCaches.bucket();
+        ObserveResponse response = mock(ObserveResponse.class);
+        when(response.observeStatus()).thenReturn(ObserveResponse.ObserveStatus.FOUND_NOT_PERSISTED);
+        when(response.cas()).thenReturn(2L);
+        observing(bucket, response);
+        when(bucket.get(eq("cache_key"), eq(CacheDocument.class))).thenReturn(
+                CacheDocument.create("cache_key", "v1", 1L),
+                CacheDocument.create("cache_key", "v2", 2L));
+        CouchbaseCache<String, String> cache = nearCached(bucket, 10L);
+
+        assertEquals("v1", cache.get("key"));
+        Thread.sleep(20L);
+        //served while validating, the validation then drops the entry
+        assertEquals("v1", cache.get("key"));
+        assertEquals("v2", cache.get("key"));
+        verify(bucket, times(2)).get(eq("cache_key"), eq(CacheDocument.class));
+    }
+
+    @Test
+    public void shouldNotServeNearCacheEntriesPastTheirDocumentExpiry() {
+        Bucket bucket = MockedCaches.bucket();
+        long created = System.currentTimeMillis() - 61000L;
+        when(bucket.get(eq("cache_key"), eq(CacheDocument.class))).thenReturn(
+                CacheDocument.create("cache_key", 0, new TimedValue("v1", created, 60, 0L), 1L));
+        CouchbaseCache<String, String> cache = nearCached(bucket, 60000L);
+
+        assertEquals("v1", cache.get("key"));
+        assertEquals("v1", cache.get("key"));
+        verify(bucket, times(2)).get(eq("cache_key"), eq(CacheDocument.class));
+    }
+
+    @Test
+    public void shouldKeepRemainingTtlWhenProcessorUpdatesWithUnchangedExpiry() {
+        Bucket bucket = MockedCaches.bucket();
+        long created = System.currentTimeMillis() - 30000L;
+        when(bucket.async().get(eq("cache_key"), eq(CacheDocument.class))).thenReturn(Observable.just(
+                CacheDocument.create("cache_key", 0, new TimedValue("v1", created, 60, 0L), 1L)));
+        ArgumentCaptor<CacheDocument> replaced = ArgumentCaptor.forClass(CacheDocument.class);
+        when(bucket.async().replace(replaced.capture()))
+                .thenReturn(Observable.just(CacheDocument.create("cache_key", "v2", 2L)));
+        CouchbaseConfiguration<String, String> configuration = MockedCaches.configuration().build();
+        configuration.setExpiryPolicyFactory(CreatedExpiryPolicy.factoryOf(new Duration(TimeUnit.MINUTES, 1)));
+        CouchbaseCache<String, String> cache = MockedCaches.cache(bucket, configuration);
+
+        cache.invoke("key", SET_V2);
+
+        CacheDocument doc = replaced.getValue();
+        assertEquals(1L, doc.cas());
+        assertTrue("expiry " + doc.expiry(), doc.expiry() > 0 && doc.expiry() <= 30);
+        assertEquals("v2", TimedValue.unwrap(doc.content()));
+    }
+
+    @Test
+    public void shouldRemoveEntryWhenProcessorUpdatesWithExpiredDuration() {
+        Bucket bucket = MockedCaches.bucket();
+        CacheDocument current = CacheDocument.create("cache_key", "v1", 1L);
+        when(bucket.async().get(eq("cache_key"), eq(CacheDocument.class))).thenReturn(Observable.just(current));
+        ArgumentCaptor<CacheDocument> removed = ArgumentCaptor.forClass(CacheDocument.class);
+        when(bucket.async().remove(removed.capture())).thenReturn(Observable.just(current));
+        CouchbaseConfiguration<String, String> configuration = MockedCaches.configuration().build();
+        configuration.setExpiryPolicyFactory(ModifiedExpiryPolicy.factoryOf(Duration.ZERO));
+        CouchbaseCache<String, String> cache = MockedCaches.cache(bucket, configuration);
+
+        cache.invoke("key", SET_V2);
+
+        assertEquals("cache_key", removed.getValue().id());
+        assertEquals(1L, removed.getValue().cas());
+        verify(bucket.async(), never()).replace(any(CacheDocument.class));
+    }
+}
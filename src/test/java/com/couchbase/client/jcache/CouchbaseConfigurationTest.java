@@ -14,7 +14,15 @@
 package com.couchbase.client.jcache;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.cache.expiry.Duration;
 
 import org.junit.Test;
 
@@ -86,4 +94,61 @@ public class CouchbaseConfigurationTest {
         assertEquals("tata", conf.getCachePrefix());
     }
 
+    @Test
+    public void shouldHaveNearCacheDisabledByDefault() {
+        CouchbaseConfiguration conf = CouchbaseConfiguration.builder(CACHE, KeyConverter.STRING_KEY_CONVERTER).build();
+
+        assertFalse(conf.isNearCacheEnabled());
+        assertNull(conf.getNearCacheTtl());
+    }
+
+    @Test
+    public void shouldKeepNearCacheSettingsWhenCopied() {
+        Duration ttl = new Duration(TimeUnit.SECONDS, 5);
+        CouchbaseConfiguration<String, String> conf = CouchbaseConfiguration
+                .<String, String>builder(CACHE, KeyConverter.STRING_KEY_CONVERTER)
+                .withNearCache(100, ttl)
+                .build();
+        CouchbaseConfiguration<String, String> copy = new CouchbaseConfiguration<String, String>(conf);
+
+        assertTrue(copy.isNearCacheEnabled());
+        assertEquals(100L, copy.getNearCacheMaxWeight());
+        assertEquals(ttl, copy.getNearCacheTtl());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldIllegalArgumentOnNearCacheWithoutTtl() {
+        CouchbaseConfiguration.builder(CACHE, KeyConverter.STRING_KEY_CONVERTER).withNearCache(100, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldIllegalArgumentOnCustomCodecWithReservedId() {
+        CouchbaseConfiguration.<String, String>builder(CACHE, KeyConverter.STRING_KEY_CONVERTER)
+                .withValueCodec(new ValueCodec<String>() {
+                    @Override
+                    public int id() {
+                        return ValueCodecs.STRING_ID;
+                    }
+
+                    @Override
+                    public byte[] encode(String value) {
+                        return value.getBytes();
+                    }
+
+                    @Override
+                    public String decode(byte[] bytes, int offset, int length) {
+                        return new String(bytes, offset, length);
+                    }
+                });
+    }
+
+    @Test
+    public void shouldAcceptBuiltInCodecs() {
+        CouchbaseConfiguration<String, String> conf = CouchbaseConfiguration
+                .<String, String>builder(CACHE, KeyConverter.STRING_KEY_CONVERTER)
+                .withValueCodec(ValueCodecs.string())
+                .build();
+
+        assertSame(ValueCodecs.string(), conf.getValueCodec());
+    }
 }
@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2015 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.couchbase.client.jcache;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.net.URI;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import javax.cache.CacheException;
+import javax.cache.configuration.MutableConfiguration;
+import javax.cache.expiry.CreatedExpiryPolicy;
+import javax.cache.expiry.Duration;
+
+import com.couchbase.client.java.Bucket;
+import com.couchbase.client.java.Cluster;
+import com.couchbase.client.java.document.JsonLongDocument;
+import com.couchbase.client.java.error.DocumentDoesNotExistException;
+import com.couchbase.client.jcache.spi.CouchbaseCachingProvider;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests of the {@link CouchbaseCounterCache} and its creation by the {@link CouchbaseCacheManager}, against a
+ * mocked {@link Bucket}.
+ */
+public class CouchbaseCounterCacheTest {
+
+    private Bucket bucket;
+    private Cluster cluster;
+    private CouchbaseCacheManager manager;
+
+    @Before
+    public void init() {
+        bucket = mock(Bucket.class);
+        cluster = mock(Cluster.class);
+        when(cluster.openBucket(anyString(), anyString(), anyList())).thenReturn(bucket);
+        manager = new CouchbaseCacheManager(mock(CouchbaseCachingProvider.class), URI.create("couchbase://test"),
+                null, new Properties(), cluster);
+    }
+
+    private static CouchbaseConfiguration.Builder<String, Long> configuration() {
+        return CouchbaseConfiguration.builder("counters", KeyConverter.STRING_KEY_CONVERTER);
+    }
+
+    private CouchbaseCounterCache<String> counters() {
+        return manager.createCounterCache("counters", configuration().build());
+    }
+
+    @Test
+    public void shouldOpenBucketWithTheTranscodersOfRegularCaches() {
+        counters();
+
+        verify(cluster).openBucket(anyString(), anyString(), eq(CacheTranscoder.BUCKET_TRANSCODERS));
+    }
+
+    @Test
+    public void shouldGetCreatedCounterCache() {
+        CouchbaseCounterCache<String> counters = counters();
+
+        assertSame(counters, manager.<String>getCounterCache("counters"));
+        assertNull(manager.<String>getCounterCache("other"));
+    }
+
+    @Test(expected = CacheException.class)
+    public void shouldRejectDuplicateCounterCache() {
+        counters();
+        counters();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectConfigurationForAnotherName() {
+        manager.createCounterCache("other", configuration().build());
+    }
+
+    @Test
+    public void shouldForgetClosedCounterCache() {
+        when(bucket.close()).thenReturn(true);
+        CouchbaseCounterCache<String> counters = counters();
+
+        counters.close();
+
+        assertTrue(counters.isClosed());
+        assertNull(manager.<String>getCounterCache("counters"));
+        verify(bucket).close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRejectOperationsOnceClosed() {
+        when(bucket.close()).thenReturn(true);
+        CouchbaseCounterCache<String> counters = counters();
+        counters.close();
+
+        counters.incrementAndGet("hits");
+    }
+
+    @Test
+    public void shouldAddWithDeltaAsInitialValue() {
+        when(bucket.counter("counters_hits", 5L, 5L, 0)).thenReturn(JsonLongDocument.create("counters_hits", 12L));
+
+        assertEquals(12L, counters().addAndGet("hits", 5L));
+    }
+
+    @Test
+    public void shouldGetValueBeforeAddition() {
+        when(bucket.counter("counters_hits", 5L, 5L, 0)).thenReturn(
+                JsonLongDocument.create("counters_hits", 12L),
+                JsonLongDocument.create("counters_hits", 5L));
+        CouchbaseCounterCache<String> counters = counters();
+
+        assertEquals(7L, counters.getAndAdd("hits", 5L));
+        //created with the delta
+        assertEquals(0L, counters.getAndAdd("hits", 5L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectNegativeDeltaForGetAndAdd() {
+        counters().getAndAdd("hits", -1L);
+    }
+
+    @Test
+    public void shouldDecrementWithZeroAsInitialValue() {
+        when(bucket.counter("counters_hits", -1L, 0L, 0)).thenReturn(JsonLongDocument.create("counters_hits", 0L));
+
+        assertEquals(0L, counters().decrementAndGet("hits"));
+    }
+
+    @Test
+    public void shouldCreateCountersWithCreationExpiry() {
+        MutableConfiguration<String, Long> base = new MutableConfiguration<String, Long>()
+                .setExpiryPolicyFactory(CreatedExpiryPolicy.factoryOf(new Duration(TimeUnit.SECONDS, 60L)));
+        CouchbaseCounterCache<String> counters = manager.createCounterCache("counters",
+                configuration().useBase(base).build());
+        when(bucket.counter("counters_hits", 1L, 1L, 60)).thenReturn(JsonLongDocument.create("counters_hits", 1L));
+
+        assertEquals(1L, counters.incrementAndGet("hits"));
+    }
+
+    @Test
+    public void shouldGetDefaultValueOfMissingCounter() {
+        when(bucket.get("counters_hits", JsonLongDocument.class)).thenReturn(null);
+
+        assertEquals(-1L, counters().get("hits", -1L));
+    }
+
+    @Test
+    public void shouldGetCounterValue() {
+        when(bucket.get("counters_hits", JsonLongDocument.class))
+                .thenReturn(JsonLongDocument.create("counters_hits", 42L));
+
+        assertEquals(42L, counters().get("hits", -1L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectNegativeValue() {
+        counters().set("hits", -1L);
+    }
+
+    @Test
+    public void shouldNotRemoveMissingCounter() {
+        when(bucket.remove("counters_hits")).thenThrow(new DocumentDoesNotExistException());
+
+        assertFalse(counters().remove("hits"));
+    }
+
+    @Test
+    public void shouldWrapErrorsInCacheException() {
+        IllegalStateException failure = new IllegalStateException();
+        when(bucket.counter("counters_hits", 1L, 1L, 0)).thenThrow(failure);
+
+        try {
+            counters().incrementAndGet("hits");
+            fail("expected CacheException");
+        } catch (CacheException e) {
+            assertSame(failure, e.getCause());
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2015 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.couchbase.client.jcache;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import javax.cache.integration.CacheLoader;
+
+import org.junit.Test;
+
+public class CouchbaseMutableEntryTest {
+
+    @Test
+    public void shouldStayUnchangedWhenOnlyRead() {
+        CouchbaseMutableEntry<String, String> entry = new CouchbaseMutableEntry<String, String>("a", "1", null);
+
+        assertTrue(entry.exists());
+        assertEquals("1", entry.getValue());
+        assertEquals(CouchbaseMutableEntry.State.UNCHANGED, entry.state());
+        assertTrue(entry.isAccessed());
+    }
+
+    @Test
+    public void shouldRecordSetThenRemove() {
+        CouchbaseMutableEntry<String, String> entry = new CouchbaseMutableEntry<String, String>("a", "1", null);
+
+        entry.setValue("2");
+        assertEquals(CouchbaseMutableEntry.State.SET, entry.state());
+        assertEquals("2", entry.getValue());
+        assertFalse(entry.isAccessed());
+
+        entry.remove();
+        assertEquals(CouchbaseMutableEntry.State.REMOVED, entry.state());
+        assertFalse(entry.exists());
+        assertEquals("1", entry.originalValue());
+    }
+
+    @Test
+    public void shouldLoadAbsentValueOnRead() {
+        @SuppressWarnings("unchecked")
+        CacheLoader<String, String> loader = mock(CacheLoader.class);
+        when(loader.load("a")).thenReturn("loaded");
+        CouchbaseMutableEntry<String, String> entry = new CouchbaseMutableEntry<String, String>("a", null, loader);
+
+        assertFalse(entry.exists());
+        assertEquals("loaded", entry.getValue());
+        assertEquals(CouchbaseMutableEntry.State.LOADED, entry.state());
+        assertNull(entry.originalValue());
+    }
+
+    @Test
+    public void shouldNotLoadPresentValue() {
+        @SuppressWarnings("unchecked")
+        CacheLoader<String, String> loader = mock(CacheLoader.class);
+        CouchbaseMutableEntry<String, String> entry = new CouchbaseMutableEntry<String, String>("a", "1", loader);
+
+        assertEquals("1", entry.getValue());
+        verifyZeroInteractions(loader);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void shouldRejectNullValue() {
+        new CouchbaseMutableEntry<String, String>("a", "1", null).setValue(null);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2015 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.couchbase.client.jcache;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class KeyBloomFilterTest {
+
+    @Test
+    public void shouldNeverGiveFalseNegatives() {
+        KeyBloomFilter filter = new KeyBloomFilter(1000, 0.01d);
+        for (int i = 0; i < 1000; i++) {
+            filter.put("key" + i);
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(filter.mightContain("key" + i));
+        }
+    }
+
+    @Test
+    public void shouldHaveFewFalsePositives() {
+        KeyBloomFilter filter = new KeyBloomFilter(1000, 0.01d);
+        for (int i = 0; i < 1000; i++) {
+            filter.put("key" + i);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (filter.mightContain("other" + i)) {
+                falsePositives++;
+            }
+        }
+        //expected around 1%, leave some margin
+        assertTrue("too many false positives: " + falsePositives, falsePositives < 300);
+    }
+
+    @Test
+    public void shouldForgetKeysWhenCleared() {
+        KeyBloomFilter filter = new KeyBloomFilter(10, 0.01d);
+        filter.put("key");
+        assertTrue(filter.mightContain("key"));
+
+        filter.clear();
+        assertFalse(filter.mightContain("key"));
+    }
+
+    @Test
+    public void shouldContainKeysOfMergedFilter() {
+        KeyBloomFilter filter = new KeyBloomFilter(10, 0.01d);
+        KeyBloomFilter other = new KeyBloomFilter(10, 0.01d);
+        filter.put("key");
+        other.put("otherKey");
+
+        filter.putAll(other);
+        assertTrue(filter.mightContain("key"));
+        assertTrue(filter.mightContain("otherKey"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectMergingFilterOfDifferentSize() {
+        new KeyBloomFilter(10, 0.01d).putAll(new KeyBloomFilter(1000, 0.01d));
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2015 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.couchbase.client.jcache;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class KeyCompactorTest {
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    @Test
+    public void shouldKeepShortKeys() {
+        KeyCompactor compactor = new KeyCompactor("cache_", 100);
+        String key = "cache_" + repeat('a', 94);
+
+        assertSame(key, compactor.compact(key));
+    }
+
+    @Test
+    public void shouldCompactLongKeysUnderPrefix() {
+        KeyCompactor compactor = new KeyCompactor("cache_", 100);
+        String key = "cache_" + repeat('a', 95);
+        String otherKey = "cache_" + repeat('b', 95);
+
+        String compacted = compactor.compact(key);
+        assertTrue(compacted.startsWith("cache_" + KeyCompactor.MARKER));
+        assertEquals("cache_".length() + 1 + 64, compacted.length());
+        assertEquals(compacted, compactor.compact(key));
+        assertFalse(compacted.equals(compactor.compact(otherKey)));
+    }
+
+    @Test
+    public void shouldMeasureKeysInUtf8Bytes() {
+        assertEquals(3, KeyCompactor.utf8Length("abc"));
+        assertEquals(2, KeyCompactor.utf8Length("\u00e9"));
+        assertEquals(3, KeyCompactor.utf8Length("\u20ac"));
+        assertEquals(4, KeyCompactor.utf8Length("\ud83d\ude00"));
+
+        KeyCompactor compactor = new KeyCompactor("", 70);
+        String key = repeat('\u00e9', 36);
+        assertFalse(key.equals(compactor.compact(key)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectThresholdBelowCompactedLength() {
+        new KeyCompactor("cache_", 70);
+    }
+}
@@ -16,6 +16,10 @@ package com.couchbase.client.jcache;
 
 import static org.junit.Assert.*;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
 import org.junit.Test;
 
 public class KeyConverterTest {
@@ -76,4 +80,55 @@ public class KeyConverterTest {
         assertNotNull(convertedBack);
         assertEquals(123.45, convertedBack, 0d);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testPrefixedConversionWithRegexCharacters() {
+        KeyConverter<Double> prefixedConverter = new KeyConverter.PrefixedKeyConverter<Double>(
+                DOUBLE_KEY_CONVERTER, "a.b*(");
+
+        assertEquals("a.b*(123.45", prefixedConverter.asString(123.45));
+        assertEquals(123.45, prefixedConverter.fromString("a.b*(123.45"), 0d);
+    }
+
+    @Test
+    public void testPrefixedTypedConversions() {
+        KeyConverter<Long> longs = new KeyConverter.PrefixedKeyConverter<Long>(KeyConverters.longs(), "p_");
+        KeyConverter<Integer> integers = new KeyConverter.PrefixedKeyConverter<Integer>(KeyConverters.integers(),
+                "p_");
+        KeyConverter<UUID> uuids = new KeyConverter.PrefixedKeyConverter<UUID>(KeyConverters.uuids(), "p_");
+        UUID uuid = UUID.randomUUID();
+
+        assertEquals("p_" + Long.MIN_VALUE, longs.asString(Long.MIN_VALUE));
+        assertEquals(Long.MIN_VALUE, longs.fromString("p_" + Long.MIN_VALUE).longValue());
+        assertEquals(Long.MAX_VALUE, longs.fromString("p_" + Long.MAX_VALUE).longValue());
+        assertEquals(-42, integers.fromString(integers.asString(-42)).intValue());
+        assertEquals("p_" + uuid, uuids.asString(uuid));
+        assertEquals(uuid, uuids.fromString("p_" + uuid));
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testLongConversionOverflow() {
+        KeyConverters.longs().fromString("9223372036854775808");
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testIntegerConversionOverflow() {
+        KeyConverters.integers().fromString("2147483648");
+    }
+
+    @Test
+    public void testCompositeConversion() {
+        KeyConverter<List<Object>> composite = KeyConverters.composite(':', KeyConverters.longs(),
+                KeyConverter.STRING_KEY_CONVERTER);
+        List<Object> key = Arrays.<Object>asList(12L, "a:b");
+
+        assertEquals("12:a:b", composite.asString(key));
+        assertEquals(key, composite.fromString("12:a:b"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCompositeConversionRejectsSeparatorInParts() {
+        KeyConverters.composite(':', KeyConverter.STRING_KEY_CONVERTER, KeyConverters.longs())
+                .asString(Arrays.<Object>asList("a:b", 12L));
+    }
+}
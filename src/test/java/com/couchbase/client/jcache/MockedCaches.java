@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2015 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.couchbase.client.jcache;
+
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.couchbase.client.java.AsyncBucket;
+import com.couchbase.client.java.Bucket;
+import com.couchbase.client.java.Cluster;
+
+/**
+ * Creates caches backed by a mocked {@link Bucket}, for unit tests that don't need a Couchbase server.
+ */
+final class MockedCaches {
+
+    private MockedCaches() {
+    }
+
+    /**
+     * @return a mocked {@link Bucket} whose {@link Bucket#async()} is a mocked {@link AsyncBucket}.
+     */
+    static Bucket bucket() {
+        Bucket bucket = mock(Bucket.class);
+        AsyncBucket asyncBucket = mock(AsyncBucket.class);
+        when(bucket.async()).thenReturn(asyncBucket);
+        return bucket;
+    }
+
+    /**
+     * @return a mocked {@link CouchbaseCacheManager} whose cluster opens the given bucket.
+     */
+    static CouchbaseCacheManager manager(Bucket bucket) {
+        Cluster cluster = mock(Cluster.class);
+        when(cluster.openBucket(anyString(), anyString())).thenReturn(bucket);
+        when(cluster.openBucket(anyString(), anyString(), anyList())).thenReturn(bucket);
+        CouchbaseCacheManager manager = mock(CouchbaseCacheManager.class);
+        when(manager.getCluster()).thenReturn(cluster);
+        return manager;
+    }
+
+    static <K, V> CouchbaseCache<K, V> cache(Bucket bucket, CouchbaseConfiguration<K, V> configuration) {
+        return new CouchbaseCache<K, V>(manager(bucket), configuration);
+    }
+
+    /**
+     * @return a builder for a configuration of String keys, prefixed by "cache_".
+     */
+    static CouchbaseConfiguration.Builder<String, String> configuration() {
+        return CouchbaseConfiguration.builder("cache", KeyConverter.STRING_KEY_CONVERTER);
+    }
+
+    static CouchbaseCache<String, String> cache(Bucket bucket) {
+        return cache(bucket, configuration().build());
+    }
+}
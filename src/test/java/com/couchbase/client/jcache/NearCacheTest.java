@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2015 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.couchbase.client.jcache;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.cache.expiry.Duration;
+
+import org.junit.Test;
+
+public class NearCacheTest {
+
+    private static final Duration ONE_MINUTE = new Duration(TimeUnit.MINUTES, 1);
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedWhenFull() {
+        NearCache<String> nearCache = new NearCache<String>(2, null, ONE_MINUTE);
+        nearCache.put("a", "valueA", 1L);
+        nearCache.put("b", "valueB", 2L);
+        //access a so that b becomes the eldest
+        assertNotNull(nearCache.get("a"));
+        nearCache.put("c", "valueC", 3L);
+
+        assertEquals(2, nearCache.size());
+        assertNotNull(nearCache.get("a"));
+        assertNull(nearCache.get("b"));
+        assertEquals("valueC", nearCache.get("c").value());
+        assertEquals(3L, nearCache.get("c").cas());
+    }
+
+    @Test
+    public void shouldBoundByWeight() {
+        ValueWeigher<String> lengthWeigher = new ValueWeigher<String>() {
+            @Override
+            public long weigh(String value) {
+                return value.length();
+            }
+        };
+        NearCache<String> nearCache = new NearCache<String>(10, lengthWeigher, ONE_MINUTE);
+        nearCache.put("a", "12345", 1L);
+        nearCache.put("b", "1234", 1L);
+        assertEquals(9L, nearCache.weight());
+
+        nearCache.put("c", "123", 1L);
+        assertNull(nearCache.get("a"));
+        assertEquals(7L, nearCache.weight());
+
+        //too heavy to ever fit
+        nearCache.put("d", "12345678901", 1L);
+        assertNull(nearCache.get("d"));
+        assertEquals(7L, nearCache.weight());
+    }
+
+    @Test
+    public void shouldReplaceAndInvalidate() {
+        NearCache<String> nearCache = new NearCache<String>(10, null, ONE_MINUTE);
+        nearCache.put("a", "old", 1L);
+        nearCache.put("a", "new", 2L);
+        assertEquals(1, nearCache.size());
+        assertEquals("new", nearCache.get("a").value());
+
+        nearCache.invalidate("a");
+        assertNull(nearCache.get("a"));
+        assertEquals(0L, nearCache.weight());
+    }
+
+    @Test
+    public void shouldNotBeFreshAfterLocalTtl() throws InterruptedException {
+        NearCache<String> nearCache = new NearCache<String>(10, null, new Duration(TimeUnit.MILLISECONDS, 10));
+        nearCache.put("a", "value", 1L);
+        NearCache.Entry<String> entry = nearCache.get("a");
+        assertTrue(nearCache.isFresh(entry));
+
+        Thread.sleep(20L);
+        assertFalse(nearCache.isFresh(entry));
+        nearCache.revalidate(entry);
+        assertTrue(nearCache.isFresh(entry));
+    }
+
+    @Test
+    public void shouldValidateEntryOnceAtATime() {
+        NearCache<String> nearCache = new NearCache<String>(10, null, ONE_MINUTE);
+        nearCache.put("a", "value", 1L);
+        NearCache.Entry<String> entry = nearCache.get("a");
+
+        assertTrue(nearCache.startValidation(entry));
+        assertFalse(nearCache.startValidation(entry));
+        nearCache.revalidate(entry);
+        assertTrue(nearCache.startValidation(entry));
+    }
+
+    @Test
+    public void shouldOnlyInvalidateTheGivenEntry() {
+        NearCache<String> nearCache = new NearCache<String>(10, null, ONE_MINUTE);
+        nearCache.put("a", "old", 1L);
+        NearCache.Entry<String> old = nearCache.get("a");
+        nearCache.put("a", "new", 2L);
+
+        nearCache.invalidate("a", old);
+        assertEquals("new", nearCache.get("a").value());
+
+        nearCache.invalidate("a", nearCache.get("a"));
+        assertNull(nearCache.get("a"));
+        assertEquals(0L, nearCache.weight());
+    }
+
+    @Test
+    public void shouldNotReturnEntriesPastTheirExpiry() {
+        NearCache<String> nearCache = new NearCache<String>(10, null, ONE_MINUTE);
+        nearCache.put("a", "value", 1L, System.currentTimeMillis() - 1L);
+        nearCache.put("b", "value", 1L, System.currentTimeMillis() + 60000L);
+
+        assertNull(nearCache.get("a"));
+        assertEquals(1L, nearCache.weight());
+        assertNotNull(nearCache.get("b"));
+
+        nearCache.expireAt("b", System.currentTimeMillis() - 1L);
+        assertNull(nearCache.get("b"));
+        assertEquals(0L, nearCache.weight());
+    }
+}
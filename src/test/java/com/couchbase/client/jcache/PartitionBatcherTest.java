@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2015 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.couchbase.client.jcache;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.couchbase.client.core.ClusterFacade;
+import com.couchbase.client.core.config.CouchbaseBucketConfig;
+import com.couchbase.client.core.config.Partition;
+import com.couchbase.client.core.message.CouchbaseRequest;
+import com.couchbase.client.core.message.internal.GetClusterConfigResponse;
+import com.couchbase.client.java.Bucket;
+import org.junit.Test;
+import rx.Observable;
+import rx.functions.Func1;
+
+public class PartitionBatcherTest {
+
+    private static final Func1<String, String> IDENTITY = new Func1<String, String>() {
+        @Override
+        public String call(String id) {
+            return id;
+        }
+    };
+
+    @Test
+    public void shouldComputeStablePartitionsInRange() {
+        for (int i = 0; i < 1000; i++) {
+            int partition = PartitionBatcher.partition("key" + i, 1024);
+            assertTrue(partition >= 0 && partition < 1024);
+            assertEquals(partition, PartitionBatcher.partition("key" + i, 1024));
+        }
+    }
+
+    @Test
+    public void shouldGroupKeysByMasterNode() {
+        List<Partition> partitions = new ArrayList<Partition>();
+        for (int i = 0; i < 64; i++) {
+            Partition partition = mock(Partition.class);
+            when(partition.master()).thenReturn((short) (i % 2));
+            partitions.add(partition);
+        }
+        CouchbaseBucketConfig config = mock(CouchbaseBucketConfig.class);
+        when(config.partitions()).thenReturn(partitions);
+        when(config.partitionHosts()).thenReturn(Arrays.asList("node0", "node1"));
+
+        List<String> keys = new ArrayList<String>();
+        for (int i = 0; i < 100; i++) {
+            keys.add("key" + i);
+        }
+        Map<String, List<String>> groups = PartitionBatcher.groupByNode(config, keys, IDENTITY);
+
+        int total = 0;
+        for (Map.Entry<String, List<String>> group : groups.entrySet()) {
+            assertTrue(group.getKey().equals("node0") || group.getKey().equals("node1"));
+            for (String key : group.getValue()) {
+                int expectedMaster = PartitionBatcher.partition(key, 64) % 2;
+                assertEquals("node" + expectedMaster, group.getKey());
+            }
+            total += group.getValue().size();
+        }
+        assertEquals(100, total);
+    }
+
+    @Test
+    public void shouldUseSingleGroupWithoutConfiguration() {
+        Map<String, List<String>> groups = PartitionBatcher.groupByNode(null, Arrays.asList("a", "b", "c"), IDENTITY);
+
+        assertEquals(1, groups.size());
+        assertEquals(Arrays.asList("a", "b", "c"), groups.get(PartitionBatcher.UNKNOWN_NODE));
+    }
+
+    @Test
+    public void shouldUseBulkConcurrencyWithoutConfiguration() {
+        Bucket bucket = mock(Bucket.class);
+        ClusterFacade core = mock(ClusterFacade.class);
+        when(bucket.core()).thenReturn(core);
+        when(core.<GetClusterConfigResponse>send(any(CouchbaseRequest.class)))
+                .thenReturn(Observable.<GetClusterConfigResponse>error(new IllegalStateException("no config")));
+        final AtomicInteger inFlight = new AtomicInteger();
+        List<String> keys = new ArrayList<String>();
+        for (int i = 0; i < 10; i++) {
+            keys.add("key" + i);
+        }
+
+        new PartitionBatcher(bucket, 1, 4).dispatch(keys, IDENTITY, new Func1<String, Observable<String>>() {
+            @Override
+            public Observable<String> call(String key) {
+                inFlight.incrementAndGet();
+                return Observable.never();
+            }
+        }).subscribe();
+
+        assertEquals(4, inFlight.get());
+    }
+}
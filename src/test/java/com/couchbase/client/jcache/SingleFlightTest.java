@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2015 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.couchbase.client.jcache;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class SingleFlightTest {
+
+    /**
+     * Waits until a thread is blocked without timeout, like a caller waiting for an execution in flight.
+     */
+    private static void awaitWaiting(Thread thread) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (thread.getState() != Thread.State.WAITING) {
+            assertTrue("Thread " + thread.getName() + " is not waiting", System.nanoTime() < deadline);
+            Thread.yield();
+        }
+    }
+
+    @Test
+    public void shouldExecuteOnceForConcurrentCallers() throws Exception {
+        final int waiters = 3;
+        final SingleFlight<String> singleFlight = new SingleFlight<String>();
+        final AtomicInteger executions = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch arrived = new CountDownLatch(waiters);
+        final List<Thread> waiting = new CopyOnWriteArrayList<Thread>();
+        final Callable<String> task = new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                executions.incrementAndGet();
+                started.countDown();
+                //only complete once every other caller waits for this execution
+                assertTrue(arrived.await(5, TimeUnit.SECONDS));
+                for (Thread waiter : waiting) {
+                    awaitWaiting(waiter);
+                }
+                return "loaded";
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(waiters + 1);
+        try {
+            List<Future<String>> results = new ArrayList<Future<String>>();
+            results.add(executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return singleFlight.execute("key", task);
+                }
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            assertTrue(singleFlight.isInFlight("key"));
+            for (int i = 0; i < waiters; i++) {
+                results.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        waiting.add(Thread.currentThread());
+                        arrived.countDown();
+                        return singleFlight.execute("key", task);
+                    }
+                }));
+            }
+
+            for (Future<String> result : results) {
+                assertEquals("loaded", result.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, executions.get());
+            assertFalse(singleFlight.isInFlight("key"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldPropagateRuntimeException() {
+        new SingleFlight<String>().execute("key", new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                throw new IllegalStateException();
+            }
+        });
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2015 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.couchbase.client.jcache;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.cache.configuration.Factory;
+import javax.cache.configuration.FactoryBuilder;
+import javax.cache.configuration.MutableConfiguration;
+import javax.cache.expiry.AccessedExpiryPolicy;
+import javax.cache.expiry.CreatedExpiryPolicy;
+import javax.cache.expiry.Duration;
+import javax.cache.expiry.ExpiryPolicy;
+import javax.cache.integration.CacheLoader;
+import javax.cache.integration.CacheLoaderException;
+
+import com.couchbase.client.java.Bucket;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Unit tests of refresh-ahead and early recomputation, which rely on the {@link TimedValue} stored with values.
+ */
+public class TimedValueTest {
+
+    private static final Duration ONE_MINUTE = new Duration(TimeUnit.SECONDS, 60L);
+    private static final long ONE_SECOND_NANOS = 1000000000L;
+
+    private static final AtomicInteger LOADS = new AtomicInteger();
+    private static volatile CountDownLatch loaded;
+
+    private static final Answer<CacheDocument> ECHO = new Answer<CacheDocument>() {
+        @Override
+        public CacheDocument answer(InvocationOnMock invocation) throws Throwable {
+            return (CacheDocument) invocation.getArguments()[0];
+        }
+    };
+
+    public static class CountingLoader implements CacheLoader<String, String>, Serializable {
+
+        @Override
+        public String load(String key) throws CacheLoaderException {
+            LOADS.incrementAndGet();
+            loaded.countDown();
+            return "fresh";
+        }
+
+        @Override
+        public Map<String, String> loadAll(Iterable<? extends String> keys) throws CacheLoaderException {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private Bucket bucket;
+
+    @Before
+    public void init() {
+        LOADS.set(0);
+        loaded = new CountDownLatch(1);
+        bucket = MockedCaches.bucket();
+        when(bucket.replace(any(CacheDocument.class))).then(ECHO);
+    }
+
+    private static MutableConfiguration<String, String> base(Factory<ExpiryPolicy> expiryPolicyFactory) {
+        return new MutableConfiguration<String, String>()
+                .setCacheLoaderFactory(FactoryBuilder.factoryOf(new CountingLoader()))
+                .setExpiryPolicyFactory(expiryPolicyFactory);
+    }
+
+    private static CacheDocument stored(long ageMillis, long loadCostNanos) {
+        TimedValue value = new TimedValue("stale", System.currentTimeMillis() - ageMillis, 60, loadCostNanos);
+        return CacheDocument.create("cache_key", value, 1L);
+    }
+
+    @Test
+    public void shouldRefreshAheadWhenCloseToExpiry() throws InterruptedException {
+        when(bucket.get(eq("cache_key"), eq(CacheDocument.class))).thenReturn(stored(55000L, 0L));
+        CouchbaseCache<String, String> cache = MockedCaches.cache(bucket, MockedCaches.configuration()
+                .useBase(base(CreatedExpiryPolicy.factoryOf(ONE_MINUTE)))
+                .withRefreshAhead(0.5f)
+                .build());
+
+        assertEquals("stale", cache.get("key"));
+        assertTrue(loaded.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void shouldNotRefreshAheadEntryJustTouched() {
+        when(bucket.getAndTouch(eq("cache_key"), eq(60), eq(CacheDocument.class))).thenReturn(stored(55000L, 0L));
+        CouchbaseCache<String, String> cache = MockedCaches.cache(bucket, MockedCaches.configuration()
+                .useBase(base(AccessedExpiryPolicy.factoryOf(ONE_MINUTE)))
+                .withRefreshAhead(0.5f)
+                .build());
+
+        assertEquals("stale", cache.get("key"));
+        assertEquals(0, LOADS.get());
+    }
+
+    @Test
+    public void shouldRecomputeEarlyPastStoredExpiry() {
+        when(bucket.get(eq("cache_key"), eq(CacheDocument.class))).thenReturn(stored(120000L, ONE_SECOND_NANOS));
+        CouchbaseCache<String, String> cache = MockedCaches.cache(bucket, MockedCaches.configuration()
+                .useBase(base(CreatedExpiryPolicy.factoryOf(ONE_MINUTE)))
+                .withEarlyExpiration(1d)
+                .build());
+
+        assertEquals("fresh", cache.get("key"));
+        assertEquals(1, LOADS.get());
+    }
+
+    @Test
+    public void shouldNotRecomputeEarlyEntryJustTouched() {
+        when(bucket.getAndTouch(eq("cache_key"), eq(60), eq(CacheDocument.class)))
+                .thenReturn(stored(120000L, ONE_SECOND_NANOS));
+        CouchbaseCache<String, String> cache = MockedCaches.cache(bucket, MockedCaches.configuration()
+                .useBase(base(AccessedExpiryPolicy.factoryOf(ONE_MINUTE)))
+                .withEarlyExpiration(1d)
+                .build());
+
+        assertEquals("stale", cache.get("key"));
+        assertEquals(0, LOADS.get());
+    }
+
+    @Test
+    public void shouldKeepTimingWhenReplacing() {
+        CacheDocument old = stored(10000L, ONE_SECOND_NANOS);
+        when(bucket.get(eq("cache_key"), eq(CacheDocument.class))).thenReturn(old);
+        CouchbaseCache<String, String> cache = MockedCaches.cache(bucket, MockedCaches.configuration()
+                .useBase(base(CreatedExpiryPolicy.factoryOf(ONE_MINUTE)))
+                .withRefreshAhead(0.5f)
+                .build());
+
+        assertTrue(cache.replace("key", "new"));
+
+        ArgumentCaptor<CacheDocument> replaced = ArgumentCaptor.forClass(CacheDocument.class);
+        verify(bucket).replace(replaced.capture());
+        TimedValue oldValue = (TimedValue) old.content();
+        TimedValue newValue = (TimedValue) replaced.getValue().content();
+        assertEquals("new", newValue.value());
+        assertEquals(oldValue.expiresMillis(), newValue.expiresMillis());
+        assertTrue(replaced.getValue().expiry() > 0 && replaced.getValue().expiry() <= 50);
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2015 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.couchbase.client.jcache;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.cache.CacheException;
+
+import com.couchbase.client.java.AsyncBucket;
+import com.couchbase.client.java.view.AsyncViewResult;
+import com.couchbase.client.java.view.AsyncViewRow;
+import com.couchbase.client.java.view.ViewQuery;
+import org.junit.Test;
+import rx.Observable;
+
+public class ViewScannerTest {
+
+    private static AsyncViewRow row(Object key, String id) {
+        AsyncViewRow row = mock(AsyncViewRow.class);
+        when(row.key()).thenReturn(key);
+        when(row.id()).thenReturn(id);
+        return row;
+    }
+
+    private static Observable<AsyncViewResult> result(AsyncViewRow... rows) {
+        AsyncViewResult result = mock(AsyncViewResult.class);
+        when(result.rows()).thenReturn(Observable.from(rows));
+        return Observable.just(result);
+    }
+
+    @Test
+    public void shouldStartNextPageAfterLastRow() {
+        ViewScanner.Page page = ViewScanner.Page.of(ViewScanner.Cursor.START,
+                Arrays.asList(row("a", "id1"), row("b", "id2")), 2, false);
+
+        assertEquals(Arrays.asList("id1", "id2"), page.ids());
+        assertFalse(page.isLast());
+        assertEquals("b", page.next().key);
+        assertEquals("id2", page.next().docId);
+        assertEquals(1, page.next().skip);
+    }
+
+    @Test
+    public void shouldSkipRowsWithoutUsableKey() {
+        ViewScanner.Cursor from = new ViewScanner.Cursor("a", "id1", 1);
+        ViewScanner.Page page = ViewScanner.Page.of(from, Arrays.asList(row(null, "id2"), row(null, "id3")), 3, false);
+
+        assertTrue(page.isLast());
+        assertEquals("a", page.next().key);
+        assertEquals("id1", page.next().docId);
+        assertEquals(3, page.next().skip);
+    }
+
+    @Test
+    public void shouldStartNextRemovalPageAtLastRow() {
+        ViewScanner.Page page = ViewScanner.Page.of(ViewScanner.Cursor.START,
+                Arrays.asList(row("a", "id1"), row("b", "id2")), 2, true);
+
+        assertFalse(page.isLast());
+        assertEquals("b", page.next().key);
+        assertEquals("id2", page.next().docId);
+        assertEquals(0, page.next().skip);
+    }
+
+    @Test(expected = CacheException.class)
+    public void shouldRejectRemovalPageEndingWithoutUsableKey() {
+        ViewScanner.Page.of(ViewScanner.Cursor.START, Arrays.asList(row("a", "id1"), row(null, "id2")), 2, true);
+    }
+
+    @Test
+    public void shouldAcceptLastRemovalPageEndingWithoutUsableKey() {
+        ViewScanner.Page page = ViewScanner.Page.of(ViewScanner.Cursor.START,
+                Arrays.asList(row("a", "id1"), row(null, "id2")), 3, true);
+
+        assertTrue(page.isLast());
+        assertEquals(Arrays.asList("id1", "id2"), page.ids());
+    }
+
+    @Test
+    public void shouldScanAllPages() {
+        AsyncBucket bucket = mock(AsyncBucket.class);
+        when(bucket.query(any(ViewQuery.class))).thenReturn(
+                result(row("a", "id1"), row("b", "id2")),
+                result(row("c", "id3"), row("d", "id4")),
+                result(row("e", "id5")));
+        ViewScanner scanner = new ViewScanner(bucket, "design", "view", 2);
+
+        List<String> ids = new ArrayList<String>();
+        for (String id : scanner.ids().toBlocking().toIterable()) {
+            ids.add(id);
+        }
+
+        assertEquals(Arrays.asList("id1", "id2", "id3", "id4", "id5"), ids);
+        verify(bucket, times(3)).query(any(ViewQuery.class));
+    }
+
+    @Test
+    public void shouldResumeFromCursor() {
+        AsyncBucket bucket = mock(AsyncBucket.class);
+        when(bucket.query(any(ViewQuery.class))).thenReturn(result(row("c", "id3")));
+        ViewScanner scanner = new ViewScanner(bucket, "design", "view", 2);
+
+        List<String> ids = new ArrayList<String>();
+        for (ViewScanner.Page page : scanner.pages(new ViewScanner.Cursor("b", "id2", 1))) {
+            ids.addAll(page.ids());
+        }
+
+        assertEquals(Arrays.asList("id3"), ids);
+        verify(bucket, times(1)).query(any(ViewQuery.class));
+    }
+}